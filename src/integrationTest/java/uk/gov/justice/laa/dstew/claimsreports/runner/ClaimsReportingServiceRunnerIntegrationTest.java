@@ -1,28 +1,39 @@
 package uk.gov.justice.laa.dstew.claimsreports.runner;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import java.io.File;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
 import java.time.Clock;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.testcontainers.containers.localstack.LocalStackContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -33,10 +44,21 @@ import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
 import software.amazon.awssdk.services.s3.model.S3Object;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.dataformat.csv.CsvMapper;
+import tools.jackson.dataformat.csv.CsvReadFeature;
+import uk.gov.justice.laa.dstew.claimsreports.config.AppConfig;
 import uk.gov.justice.laa.dstew.claimsreports.config.TestConfig;
 import uk.gov.justice.laa.dstew.claimsreports.dto.ReplicationHealthReport;
 import uk.gov.justice.laa.dstew.claimsreports.service.AbstractReportService;
+import uk.gov.justice.laa.dstew.claimsreports.service.ExportEngine;
+import uk.gov.justice.laa.dstew.claimsreports.service.RefreshMode;
+import uk.gov.justice.laa.dstew.claimsreports.service.Report000Service;
+import uk.gov.justice.laa.dstew.claimsreports.service.Report012Service;
+import uk.gov.justice.laa.dstew.claimsreports.service.Report013Service;
 import uk.gov.justice.laa.dstew.claimsreports.service.ReplicationHealthCheckService;
+import uk.gov.justice.laa.dstew.claimsreports.service.SharedSnapshotService;
+import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
 
 /**
  * Integration tests for the ClaimsReportingServiceRunner.
@@ -89,9 +111,24 @@ public class ClaimsReportingServiceRunnerIntegrationTest {
   @Autowired
   private List<AbstractReportService> reportServices;
 
+  @Autowired
+  private Report000Service report000Service;
+
+  @Autowired
+  private Report012Service report012Service;
+
+  @Autowired
+  private Report013Service report013Service;
+
   @Autowired
   private S3Client s3Client;
 
+  @Autowired
+  private AppConfig appConfig;
+
+  @Autowired
+  private SharedSnapshotService sharedSnapshotService;
+
   @Autowired
   private Clock staticClock;
 
@@ -232,6 +269,442 @@ public class ClaimsReportingServiceRunnerIntegrationTest {
     }
   }
 
+  @Test
+  void shouldUploadReportsOutsideTheExportTransaction() {
+    insertHealthyReplicationData();
+    List<Boolean> transactionActiveDuringUpload = new CopyOnWriteArrayList<>();
+    Map<Object, Object> originalWrappers = new HashMap<>();
+    for (AbstractReportService service : reportServices) {
+      // The services are transactional proxies, so the wrapper has to be replaced on the target bean
+      Object target = AopTestUtils.getUltimateTargetObject(service);
+      S3ClientWrapper original = (S3ClientWrapper) ReflectionTestUtils.getField(target, "s3ClientWrapper");
+      S3ClientWrapper recording = Mockito.spy(original);
+      Mockito.doAnswer(invocation -> {
+        transactionActiveDuringUpload.add(TransactionSynchronizationManager.isActualTransactionActive());
+        return invocation.callRealMethod();
+      }).when(recording).uploadFile(any(), any());
+      originalWrappers.put(target, original);
+      ReflectionTestUtils.setField(target, "s3ClientWrapper", recording);
+    }
+
+    try {
+      serviceRunner.run(null);
+    } finally {
+      originalWrappers.forEach((target, original) -> ReflectionTestUtils.setField(target, "s3ClientWrapper", original));
+    }
+
+    assertThat(transactionActiveDuringUpload).hasSize(NUMBER_OF_REPORTS).containsOnly(false);
+  }
+
+  // ------------------------------------------------------------
+  // Export Engine Tests
+  // ------------------------------------------------------------
+
+  @Test
+  void shouldExportSameReportDataWithCopyAndJdbcEngines() throws Exception {
+    for (AbstractReportService service : List.of(report000Service, report012Service)) {
+      service.refreshDataSource();
+
+      List<List<String>> jdbcRows = exportWithEngine(service, ExportEngine.JDBC);
+      List<List<String>> copyRows = exportWithEngine(service, ExportEngine.COPY);
+
+      assertThat(jdbcRows)
+          .as("Report data for " + service.getClass().getSimpleName())
+          .hasSizeGreaterThan(1)
+          .isEqualTo(copyRows);
+    }
+  }
+
+  @Test
+  void shouldExportReport000InRangesIdenticallyToSingleCursor() throws Exception {
+    report000Service.refreshDataSource();
+    List<List<String>> jdbcRows = exportWithEngine(report000Service, ExportEngine.JDBC);
+
+    // The test data covers two submission periods, so REPORT000 is read as two ranges over the same snapshot
+    List<List<String>> parallelRows = exportWithEngine(report000Service, ExportEngine.PARALLEL);
+
+    assertThat(parallelRows).hasSizeGreaterThan(1).isEqualTo(jdbcRows);
+  }
+
+  @Test
+  void shouldExportReportsInKeysetPagesIdenticallyToSingleCursor() throws Exception {
+    ReflectionTestUtils.setField(appConfig, "keysetPageSize", 2);
+    try {
+      for (AbstractReportService service : List.of(report012Service, report013Service)) {
+        service.refreshDataSource();
+        List<List<String>> jdbcRows = exportWithEngine(service, ExportEngine.JDBC);
+
+        List<List<String>> keysetRows = exportWithEngine(service, ExportEngine.KEYSET);
+
+        assertThat(keysetRows)
+            .as("Report data for " + service.getClass().getSimpleName())
+            .hasSizeGreaterThan(1)
+            .isEqualTo(jdbcRows);
+      }
+
+      // Rows of REPORT000 that tie on the export order may come out in either order, so only the header is compared in order
+      report000Service.refreshDataSource();
+      List<List<String>> jdbcRows = exportWithEngine(report000Service, ExportEngine.JDBC);
+      List<List<String>> keysetRows = exportWithEngine(report000Service, ExportEngine.KEYSET);
+      assertThat(keysetRows.getFirst()).isEqualTo(jdbcRows.getFirst());
+      assertThat(keysetRows).hasSizeGreaterThan(1).containsExactlyInAnyOrderElementsOf(jdbcRows);
+    } finally {
+      ReflectionTestUtils.setField(appConfig, "keysetPageSize", 10000);
+    }
+  }
+
+  @Test
+  void shouldExportReportsSortedInTheApplicationIdenticallyToSingleCursor() throws Exception {
+    // A run size of zero spills every row to its own run, and a fan-in of two forces several merge passes
+    ReflectionTestUtils.setField(appConfig, "externalSortRunSizeMb", 0);
+    ReflectionTestUtils.setField(appConfig, "externalSortMergeFanIn", 2);
+    try {
+      for (AbstractReportService service : List.of(report012Service, report013Service)) {
+        service.refreshDataSource();
+        List<List<String>> jdbcRows = exportWithEngine(service, ExportEngine.JDBC);
+
+        List<List<String>> sortedRows = exportWithEngine(service, ExportEngine.EXTERNAL_SORT);
+
+        assertThat(sortedRows)
+            .as("Report data for " + service.getClass().getSimpleName())
+            .hasSizeGreaterThan(1)
+            .isEqualTo(jdbcRows);
+      }
+
+      // Rows of REPORT000 that tie on the export order may come out in either order, so only the header is compared in order
+      report000Service.refreshDataSource();
+      List<List<String>> jdbcRows = exportWithEngine(report000Service, ExportEngine.JDBC);
+      List<List<String>> sortedRows = exportWithEngine(report000Service, ExportEngine.EXTERNAL_SORT);
+      assertThat(sortedRows.getFirst()).isEqualTo(jdbcRows.getFirst());
+      assertThat(sortedRows).hasSizeGreaterThan(1).containsExactlyInAnyOrderElementsOf(jdbcRows);
+    } finally {
+      ReflectionTestUtils.setField(appConfig, "externalSortRunSizeMb", 64);
+      ReflectionTestUtils.setField(appConfig, "externalSortMergeFanIn", 64);
+    }
+  }
+
+  @Test
+  void shouldWriteNothingForAnEmptyReportWhateverTheEngine() throws Exception {
+    Object target = AopTestUtils.getUltimateTargetObject(report000Service);
+    try {
+      // The incrementally maintained table can be emptied, unlike the materialized view
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.INCREMENTAL);
+      report000Service.refreshDataSource();
+      jdbcTemplate.update("DELETE FROM claims.report_000");
+
+      for (ExportEngine engine : List.of(ExportEngine.JDBC, ExportEngine.PIPELINED, ExportEngine.KEYSET,
+          ExportEngine.EXTERNAL_SORT)) {
+        assertThat(exportWithEngine(report000Service, engine)).as("Report data for " + engine).isEmpty();
+      }
+    } finally {
+      jdbcTemplate.update("UPDATE claims.report_000_maintenance SET full_rebuild_required = TRUE");
+      report000Service.refreshDataSource();
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.STANDARD);
+      report000Service.refreshDataSource();
+    }
+  }
+
+  @Test
+  void shouldBuildReportsFromTheSharedSnapshotWhateverIsReplicatedAfterIt() throws Exception {
+    report012Service.refreshDataSource();
+    List<List<String>> rowsAtSnapshot = exportWithEngine(report012Service, ExportEngine.JDBC);
+    Map<String, Object> submission = jdbcTemplate.queryForMap(
+        "SELECT row_key AS id, \"Provider office account number\" AS office FROM claims.mvw_report_012 LIMIT 1");
+    String movedOffice = "SNAPSHOT-TEST";
+
+    sharedSnapshotService.open();
+    try {
+      // Replicated after the snapshot was taken, so the refresh must not see it
+      jdbcTemplate.update("UPDATE claims.submission SET office_account_number = ? WHERE id = ?", movedOffice,
+          submission.get("id"));
+      report012Service.refreshDataSource();
+    } finally {
+      sharedSnapshotService.close();
+    }
+
+    try {
+      assertThat(exportWithEngine(report012Service, ExportEngine.JDBC)).isEqualTo(rowsAtSnapshot);
+
+      report012Service.refreshDataSource();
+      assertThat(exportWithEngine(report012Service, ExportEngine.JDBC))
+          .anySatisfy(row -> assertThat(row).first().isEqualTo(movedOffice));
+    } finally {
+      jdbcTemplate.update("UPDATE claims.submission SET office_account_number = ? WHERE id = ?", submission.get("office"),
+          submission.get("id"));
+      report012Service.refreshDataSource();
+    }
+  }
+
+  // ------------------------------------------------------------
+  // Refresh Mode Tests
+  // ------------------------------------------------------------
+
+  @Test
+  void shouldRefreshConcurrentlyWithoutChangingReportData() throws Exception {
+    for (AbstractReportService service : List.of(report000Service, report012Service)) {
+      service.refreshDataSource();
+      List<List<String>> standardRows = exportWithEngine(service, ExportEngine.JDBC);
+
+      // The services are transactional proxies, so the refresh mode has to be set on the target bean
+      Object target = AopTestUtils.getUltimateTargetObject(service);
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.CONCURRENT);
+      try {
+        service.refreshDataSource();
+        assertThat(exportWithEngine(service, ExportEngine.JDBC))
+            .as("Report data for " + service.getClass().getSimpleName())
+            .hasSizeGreaterThan(1)
+            .isEqualTo(standardRows);
+      } finally {
+        ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.STANDARD);
+      }
+    }
+  }
+
+  @Test
+  void shouldSwapInShadowCopyWithoutChangingReportData() throws Exception {
+    for (AbstractReportService service : List.of(report000Service, report012Service)) {
+      service.refreshDataSource();
+      List<List<String>> standardRows = exportWithEngine(service, ExportEngine.JDBC);
+      String dataSourceName = (String) ReflectionTestUtils.invokeMethod(service, "getDataSourceName");
+      List<String> standardIndexes = getIndexNames(dataSourceName);
+
+      Object target = AopTestUtils.getUltimateTargetObject(service);
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.SHADOW_SWAP);
+      try {
+        service.refreshDataSource();
+        assertThat(exportWithEngine(service, ExportEngine.JDBC))
+            .as("Report data for " + service.getClass().getSimpleName())
+            .hasSizeGreaterThan(1)
+            .isEqualTo(standardRows);
+        assertThat(getIndexNames(dataSourceName)).isNotEmpty().isEqualTo(standardIndexes);
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass(?)::text", String.class, dataSourceName + "_shadow"))
+            .isNull();
+      } finally {
+        ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.STANDARD);
+      }
+    }
+  }
+
+  @Test
+  void shouldSwapInLoggedShadowTableForReport013() {
+    String selectReport013 = "SELECT * FROM claims.report_013 ORDER BY 1, 2";
+    report013Service.refreshDataSource();
+    List<Map<String, Object>> standardRows = jdbcTemplate.queryForList(selectReport013);
+
+    Object target = AopTestUtils.getUltimateTargetObject(report013Service);
+    ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.SHADOW_SWAP);
+    try {
+      report013Service.refreshDataSource();
+      assertThat(jdbcTemplate.queryForList(selectReport013)).isEqualTo(standardRows);
+      assertThat(getIndexNames("claims.report_013")).containsExactly("ix_report_013_export_order");
+      // The swapped in table must survive a crash, so it has to be a logged table
+      assertThat(jdbcTemplate.queryForObject(
+          "SELECT relpersistence::text FROM pg_class WHERE oid = 'claims.report_013'::regclass", String.class))
+          .isEqualTo("p");
+    } finally {
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.STANDARD);
+    }
+  }
+
+  @Test
+  void shouldPivotReport013WithoutBuildingTheTable() throws Exception {
+    report013Service.refreshDataSource();
+    List<List<String>> tableRows = exportWithEngine(report013Service, ExportEngine.JDBC);
+
+    List<List<String>> pivotedRows = exportWithEngine(report013Service, ExportEngine.PIVOT);
+
+    assertThat(pivotedRows).hasSizeGreaterThan(1).isEqualTo(tableRows);
+  }
+
+  @Test
+  void shouldKeepLatestCalculatedFeeDetailUpToDateWhenChangesAreReplicated() {
+    Map<String, Object> current = jdbcTemplate.queryForMap("""
+        SELECT cfd.claim_id, cfd.claim_summary_fee_id, latest.calculated_fee_detail_id
+        FROM claims.latest_calculated_fee_detail AS latest
+        JOIN claims.calculated_fee_detail AS cfd ON cfd.id = latest.calculated_fee_detail_id
+        LIMIT 1
+        """);
+    Object claimId = current.get("claim_id");
+    String selectLatest = "SELECT calculated_fee_detail_id::text FROM claims.latest_calculated_fee_detail WHERE claim_id = ?";
+
+    // Apply the changes on one connection the way the replication worker does, which only fires triggers enabled ALWAYS
+    jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+      try (Statement statement = con.createStatement()) {
+        statement.execute("SET session_replication_role = replica");
+        try (PreparedStatement insert = con.prepareStatement("""
+            INSERT INTO claims.calculated_fee_detail (id, claim_summary_fee_id, claim_id, created_by_user_id, created_on)
+            VALUES ('00000000-0000-0000-0000-00000000fee1', ?, ?, 'integration-test', now() + INTERVAL '1 day')
+            """)) {
+          insert.setObject(1, current.get("claim_summary_fee_id"));
+          insert.setObject(2, claimId);
+          insert.executeUpdate();
+        }
+        assertThat(jdbcTemplate.queryForObject(selectLatest, String.class, claimId))
+            .isEqualTo("00000000-0000-0000-0000-00000000fee1");
+
+        statement.execute("DELETE FROM claims.calculated_fee_detail WHERE id = '00000000-0000-0000-0000-00000000fee1'");
+        assertThat(jdbcTemplate.queryForObject(selectLatest, String.class, claimId))
+            .isEqualTo(current.get("calculated_fee_detail_id").toString());
+      } finally {
+        try (Statement statement = con.createStatement()) {
+          statement.execute("SET session_replication_role = DEFAULT");
+        }
+      }
+      return null;
+    });
+  }
+
+  @Test
+  void shouldKeepSubmissionClaimTotalsUpToDateWhenChangesAreReplicated() {
+    Map<String, Object> fee = jdbcTemplate.queryForMap("""
+        SELECT cfd.claim_id, cfd.claim_summary_fee_id, c.status
+        FROM claims.calculated_fee_detail AS cfd
+        JOIN claims.claim AS c ON c.id = cfd.claim_id
+        LIMIT 1
+        """);
+    String countDifferences = """
+        SELECT count(*) FROM (
+            (SELECT submission_id, claim_count, valid_claim_count, total_fee, valid_total_fee
+             FROM claims.submission_claim_totals
+             EXCEPT
+             SELECT c.submission_id, COUNT(DISTINCT c.id), COUNT(DISTINCT c.id) FILTER (WHERE c.status = 'VALID'),
+                    COALESCE(SUM(cfd.total_amount), 0), COALESCE(SUM(cfd.total_amount) FILTER (WHERE c.status = 'VALID'), 0)
+             FROM claims.claim AS c
+             LEFT JOIN claims.calculated_fee_detail AS cfd ON cfd.claim_id = c.id
+             GROUP BY c.submission_id)
+            UNION ALL
+            (SELECT c.submission_id FROM claims.claim AS c
+             EXCEPT
+             SELECT submission_id FROM claims.submission_claim_totals)
+        ) AS differences
+        """;
+    assertThat(jdbcTemplate.queryForObject(countDifferences, Long.class)).isZero();
+
+    // Apply the changes on one connection the way the replication worker does, which only fires triggers enabled ALWAYS
+    jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+      try (Statement statement = con.createStatement()) {
+        statement.execute("SET session_replication_role = replica");
+        try (PreparedStatement insert = con.prepareStatement("""
+            INSERT INTO claims.calculated_fee_detail (id, claim_summary_fee_id, claim_id, total_amount, created_by_user_id,
+                                                      created_on)
+            VALUES ('00000000-0000-0000-0000-00000000fee2', ?, ?, 123.45, 'integration-test', now())
+            """)) {
+          insert.setObject(1, fee.get("claim_summary_fee_id"));
+          insert.setObject(2, fee.get("claim_id"));
+          insert.executeUpdate();
+        }
+        try (PreparedStatement update = con.prepareStatement("UPDATE claims.claim SET status = ? WHERE id = ?")) {
+          update.setString(1, "VALID".equals(fee.get("status")) ? "INVALID" : "VALID");
+          update.setObject(2, fee.get("claim_id"));
+          update.executeUpdate();
+        }
+        assertThat(jdbcTemplate.queryForObject(countDifferences, Long.class)).isZero();
+
+        statement.execute("DELETE FROM claims.calculated_fee_detail WHERE id = '00000000-0000-0000-0000-00000000fee2'");
+        try (PreparedStatement update = con.prepareStatement("UPDATE claims.claim SET status = ? WHERE id = ?")) {
+          update.setObject(1, fee.get("status"));
+          update.setObject(2, fee.get("claim_id"));
+          update.executeUpdate();
+        }
+        assertThat(jdbcTemplate.queryForObject(countDifferences, Long.class)).isZero();
+      } finally {
+        try (Statement statement = con.createStatement()) {
+          statement.execute("SET session_replication_role = DEFAULT");
+        }
+      }
+      return null;
+    });
+  }
+
+  @Test
+  void shouldParseEverySubmissionPeriodIntoTheDimensionOnce() {
+    assertThat(jdbcTemplate.queryForObject("""
+        SELECT count(*)
+        FROM (SELECT DISTINCT submission_period FROM claims.submission WHERE submission_period IS NOT NULL) AS periods
+        LEFT JOIN claims.submission_period_dim AS spd ON spd.submission_period = periods.submission_period
+        WHERE spd.submission_period IS NULL OR spd.period_start IS NULL
+        """, Long.class)).isZero();
+
+    Map<String, Object> parsed = jdbcTemplate.queryForMap("""
+        SELECT claims.parse_submission_period('MAY-2024')::text AS month_name,
+               claims.parse_submission_period('2024-05')::text AS year_month,
+               claims.parse_submission_period('2024-13')::text AS invalid_month,
+               claims.parse_submission_period('XYZ-2024')::text AS unknown_month_name
+        """);
+    assertThat(parsed)
+        .containsEntry("month_name", "2024-05-01")
+        .containsEntry("year_month", "2024-05-01")
+        .containsEntry("invalid_month", null)
+        .containsEntry("unknown_month_name", null);
+  }
+
+  @Test
+  void shouldMaintainReport000IncrementallyWithSameDataAsMaterializedView() throws Exception {
+    Object target = AopTestUtils.getUltimateTargetObject(report000Service);
+    try {
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.INCREMENTAL);
+      // The first incremental refresh is a full rebuild
+      report000Service.refreshDataSource();
+
+      String claimId = jdbcTemplate.queryForObject("SELECT claim_id::text FROM claims.report_000 LIMIT 1", String.class);
+      String originalLineNumber = jdbcTemplate.queryForObject(
+          "SELECT line_number::text FROM claims.claim WHERE id = ?::uuid", String.class, claimId);
+      jdbcTemplate.update("UPDATE claims.claim SET line_number = line_number + 1000 WHERE id = ?::uuid", claimId);
+      try {
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM claims.report_000_changed_claim WHERE claim_id = ?::uuid",
+            Long.class, claimId)).isEqualTo(1);
+
+        report000Service.refreshDataSource();
+        List<List<String>> incrementalRows = exportWithEngine(report000Service, ExportEngine.JDBC);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM claims.report_000_changed_claim", Long.class)).isZero();
+
+        ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.STANDARD);
+        report000Service.refreshDataSource();
+        assertThat(incrementalRows).hasSizeGreaterThan(1).isEqualTo(exportWithEngine(report000Service, ExportEngine.JDBC));
+      } finally {
+        jdbcTemplate.update("UPDATE claims.claim SET line_number = ?::integer WHERE id = ?::uuid", originalLineNumber, claimId);
+      }
+    } finally {
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.STANDARD);
+      report000Service.refreshDataSource();
+    }
+  }
+
+  @Test
+  void shouldKeepChangesReplicatedAfterTheSharedSnapshotWhenMaintainingReport000Incrementally() throws Exception {
+    Object target = AopTestUtils.getUltimateTargetObject(report000Service);
+    try {
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.INCREMENTAL);
+      // The first incremental refresh is a full rebuild
+      report000Service.refreshDataSource();
+
+      String claimId = jdbcTemplate.queryForObject("SELECT claim_id::text FROM claims.report_000 LIMIT 1", String.class);
+      String originalLineNumber = jdbcTemplate.queryForObject(
+          "SELECT line_number::text FROM claims.claim WHERE id = ?::uuid", String.class, claimId);
+      // Queued before the snapshot is taken
+      jdbcTemplate.update("UPDATE claims.claim SET line_number = line_number + 1000 WHERE id = ?::uuid", claimId);
+      try {
+        sharedSnapshotService.open();
+        try {
+          // Changed again after the snapshot, while the claim is already queued
+          jdbcTemplate.update("UPDATE claims.claim SET line_number = line_number + 1000 WHERE id = ?::uuid", claimId);
+          report000Service.refreshDataSource();
+        } finally {
+          sharedSnapshotService.close();
+        }
+
+        assertThat(jdbcTemplate.queryForObject("SELECT \"Line Number\" FROM claims.report_000 WHERE claim_id = ?::uuid",
+            String.class, claimId)).isEqualTo(String.valueOf(Integer.parseInt(originalLineNumber) + 2000));
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM claims.report_000_changed_claim", Long.class)).isZero();
+      } finally {
+        jdbcTemplate.update("UPDATE claims.claim SET line_number = ?::integer WHERE id = ?::uuid", originalLineNumber, claimId);
+      }
+    } finally {
+      ReflectionTestUtils.setField(target, "refreshMode", RefreshMode.STANDARD);
+      report000Service.refreshDataSource();
+    }
+  }
+
   // ------------------------------------------------------------
   // Helpers
   // ------------------------------------------------------------
@@ -273,4 +746,34 @@ public class ClaimsReportingServiceRunnerIntegrationTest {
           tableName, yesterday, recordCount, updatedCount, mockLsn, now);
     }
   }
-}
\ No newline at end of file
+
+  private List<String> getIndexNames(String relationName) {
+    return jdbcTemplate.queryForList(
+        "SELECT c.relname FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid WHERE i.indrelid = to_regclass(?) ORDER BY 1",
+        String.class, relationName);
+  }
+
+  /**
+   * Exports the report with the given engine and parses the CSV, so files that differ only in
+   * how values are quoted compare as equal.
+   */
+  private List<List<String>> exportWithEngine(AbstractReportService service, ExportEngine engine) throws Exception {
+    // The services are transactional proxies, so the engine has to be set on the target bean
+    Object target = AopTestUtils.getUltimateTargetObject(service);
+    ExportEngine originalEngine = (ExportEngine) ReflectionTestUtils.getField(target, "exportEngine");
+    ReflectionTestUtils.setField(target, "exportEngine", engine);
+    File reportFile = null;
+    try {
+      reportFile = service.exportReport();
+      CsvMapper csvMapper = CsvMapper.builder().enable(CsvReadFeature.WRAP_AS_ARRAY).build();
+      try (MappingIterator<List<String>> rows = csvMapper.readerFor(List.class).readValues(reportFile)) {
+        return rows.readAll();
+      }
+    } finally {
+      ReflectionTestUtils.setField(target, "exportEngine", originalEngine);
+      if (reportFile != null) {
+        Files.deleteIfExists(reportFile.toPath());
+      }
+    }
+  }
+}
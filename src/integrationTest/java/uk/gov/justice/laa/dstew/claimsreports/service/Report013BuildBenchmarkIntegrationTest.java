@@ -0,0 +1,187 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import uk.gov.justice.laa.dstew.claimsreports.config.TestConfig;
+
+/**
+ * Benchmarks building REPORT013 against a large synthetic submission table, comparing the single pass pivot with the
+ * crosstab based build it replaced, which is recreated from its migration under another name.
+ * Only run when RUN_BENCHMARKS=true, as generating the data takes a while.
+ */
+@Slf4j
+@SpringBootTest(classes = {TestConfig.class})
+@ActiveProfiles("test")
+@Testcontainers
+@EnabledIfEnvironmentVariable(named = "RUN_BENCHMARKS", matches = "true")
+class Report013BuildBenchmarkIntegrationTest {
+
+  private static final int SUBMISSIONS = 200_000;
+  private static final int TIMED_RUNS = 3;
+  private static final String PREVIOUS_BUILD_MIGRATION = "db/migration/schema/V23__create_build_function_for_rep013.sql";
+
+  @Container
+  static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17")
+      .withUsername("postgres")
+      .withPassword("password")
+      .withInitScript("init_extensions.sql")
+      .withExposedPorts(5432);
+
+  @Container
+  static final LocalStackContainer localstack =
+      new LocalStackContainer(DockerImageName.parse("localstack/localstack:3.4"))
+          .withServices(LocalStackContainer.Service.S3);
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  static {
+    postgres.start();
+    localstack.start();
+  }
+
+  @DynamicPropertySource
+  static void registerProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.datasource.url", postgres::getJdbcUrl);
+    registry.add("spring.datasource.username", postgres::getUsername);
+    registry.add("spring.datasource.password", postgres::getPassword);
+    registry.add("aws.region", localstack::getRegion);
+    registry.add("aws.accessKeyId", localstack::getAccessKey);
+    registry.add("aws.secretAccessKey", localstack::getSecretKey);
+    registry.add("aws.s3.endpoint",
+        () -> localstack.getEndpointOverride(LocalStackContainer.Service.S3).toString());
+  }
+
+  @BeforeEach
+  void setUp() throws IOException {
+    createPreviousBuildFunction();
+    insertSyntheticSubmissions();
+  }
+
+  @Test
+  void singlePassPivotShouldBuildTheSameReportFasterThanCrosstab() {
+    long previousMillis = timeBuild("claims.build_report013_before_single_pass", "claims.report_013_before");
+    long singlePassMillis = timeBuild("claims.build_report013", "claims.report_013_after");
+    log.info("REPORT013 build over {} submissions: crosstab {} ms, single pass {} ms", SUBMISSIONS, previousMillis,
+        singlePassMillis);
+
+    assertThat(getColumnNames("claims.report_013_after")).isEqualTo(getColumnNames("claims.report_013_before"));
+    assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM claims.report_013_after", Long.class))
+        .isGreaterThan(1);
+    assertThat(jdbcTemplate.queryForObject("""
+        SELECT count(*) FROM (
+            (TABLE claims.report_013_before EXCEPT ALL TABLE claims.report_013_after)
+            UNION ALL
+            (TABLE claims.report_013_after EXCEPT ALL TABLE claims.report_013_before)
+        ) AS differences
+        """, Long.class)).isZero();
+    assertThat(singlePassMillis).isLessThan(previousMillis);
+  }
+
+  /**
+   * Builds the report with the given function once to warm the cache, then returns the fastest of several timed runs.
+   */
+  private long timeBuild(String buildFunction, String targetTable) {
+    long fastestMillis = Long.MAX_VALUE;
+    for (int run = 0; run <= TIMED_RUNS; run++) {
+      jdbcTemplate.execute("DROP TABLE IF EXISTS " + targetTable);
+      long startTime = System.currentTimeMillis();
+      jdbcTemplate.execute("SELECT " + buildFunction + "('" + targetTable + "')");
+      long durationMilliseconds = System.currentTimeMillis() - startTime;
+      if (run > 0) {
+        fastestMillis = Math.min(fastestMillis, durationMilliseconds);
+      }
+    }
+    return fastestMillis;
+  }
+
+  private void createPreviousBuildFunction() throws IOException {
+    String migration = new ClassPathResource(PREVIOUS_BUILD_MIGRATION).getContentAsString(StandardCharsets.UTF_8);
+    String buildFunction = migration.substring(0, migration.indexOf("CREATE OR REPLACE FUNCTION claims.refresh_report013()"));
+    jdbcTemplate.execute(buildFunction.replace("claims.build_report013(", "claims.build_report013_before_single_pass("));
+  }
+
+  /**
+   * Spreads the submissions over three years of periods and four areas of law for each office, with one submission
+   * per office, area and period so both builds have a single value for every cell of the report.
+   * Every fifth submission replaces the one before it, every fiftieth is a nil return, and each has three claims
+   * (one invalid) with a calculated fee.
+   */
+  private void insertSyntheticSubmissions() {
+    jdbcTemplate.execute("DELETE FROM claims.calculated_fee_detail WHERE created_by_user_id = 'benchmark'; "
+        + "DELETE FROM claims.claim_summary_fee WHERE created_by_user_id = 'benchmark'; "
+        + "DELETE FROM claims.claim WHERE created_by_user_id = 'benchmark'; "
+        + "DELETE FROM claims.submission WHERE created_by_user_id = 'benchmark'");
+    jdbcTemplate.update("""
+        INSERT INTO claims.submission (id, bulk_submission_id, office_account_number, submission_period, area_of_law,
+                                       status, previous_submission_id, is_nil_submission, created_by_user_id, created_on)
+        SELECT md5('submission' || n)::uuid,
+               md5('bulk' || n / 50)::uuid,
+               'B' || lpad((n / 144)::text, 5, '0'),
+               upper(to_char(date '2023-01-01' + (n % 36) * interval '1 month', 'MON-YYYY')),
+               (ARRAY['CIVIL', 'CRIME LOWER', 'MEDIATION', 'LEGAL HELP'])[(n / 36) % 4 + 1],
+               'VALIDATION_SUCCEEDED',
+               CASE WHEN n % 5 = 0 THEN md5('submission' || (n - 1))::uuid END,
+               n % 50 = 0,
+               'benchmark',
+               now()
+        FROM generate_series(1, ?) AS n
+        """, SUBMISSIONS);
+    jdbcTemplate.update("""
+        INSERT INTO claims.claim (id, submission_id, status, line_number, matter_type_code, created_by_user_id, created_on)
+        SELECT md5('claim' || n || '-' || line)::uuid,
+               md5('submission' || n)::uuid,
+               CASE WHEN line = 3 THEN 'INVALID' ELSE 'VALID' END,
+               line,
+               'BENCHMARK',
+               'benchmark',
+               now()
+        FROM generate_series(1, ?) AS n, generate_series(1, 3) AS line
+        """, SUBMISSIONS);
+    jdbcTemplate.execute("""
+        INSERT INTO claims.claim_summary_fee (id, claim_id, created_by_user_id, created_on)
+        SELECT md5('fee' || id)::uuid, id, 'benchmark', now()
+        FROM claims.claim
+        WHERE created_by_user_id = 'benchmark'
+        """);
+    jdbcTemplate.execute("""
+        INSERT INTO claims.calculated_fee_detail (id, claim_summary_fee_id, claim_id, total_amount, created_by_user_id,
+                                                  created_on)
+        SELECT md5('detail' || id)::uuid, md5('fee' || id)::uuid, id, (abs(hashtext(id::text)) % 100000) / 100.0,
+               'benchmark', now()
+        FROM claims.claim
+        WHERE created_by_user_id = 'benchmark'
+        """);
+    jdbcTemplate.execute("ANALYZE claims.submission; ANALYZE claims.claim; ANALYZE claims.calculated_fee_detail");
+  }
+
+  private List<String> getColumnNames(String tableName) {
+    return jdbcTemplate.queryForList("""
+        SELECT attname
+        FROM pg_attribute
+        WHERE attrelid = to_regclass(?)
+          AND attnum > 0
+          AND NOT attisdropped
+        ORDER BY attnum
+        """, String.class, tableName);
+  }
+}
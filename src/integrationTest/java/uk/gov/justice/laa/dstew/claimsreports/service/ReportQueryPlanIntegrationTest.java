@@ -0,0 +1,134 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import uk.gov.justice.laa.dstew.claimsreports.config.TestConfig;
+
+/**
+ * Guards against the report refresh and replication health check queries losing the indexes added for them.
+ * The queries explained are the ones the application runs: the health check's count SQL and the report views.
+ * The test data is far too small for the planner to prefer an index on cost, so sequential scans are disabled
+ * while explaining each query, leaving the plan to show which indexes it is able to use.
+ */
+@SpringBootTest(classes = {TestConfig.class})
+@ActiveProfiles("test")
+@Testcontainers
+class ReportQueryPlanIntegrationTest {
+
+  private static final List<String> REPLICATED_TABLES = List.of("bulk_submission", "submission", "claim", "client",
+      "claim_case", "claim_summary_fee", "calculated_fee_detail", "matter_start");
+
+  @Container
+  static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:17")
+      .withUsername("postgres")
+      .withPassword("password")
+      .withInitScript("init_extensions.sql")
+      .withExposedPorts(5432);
+
+  @Container
+  static final LocalStackContainer localstack =
+      new LocalStackContainer(DockerImageName.parse("localstack/localstack:3.4"))
+          .withServices(LocalStackContainer.Service.S3);
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  static {
+    postgres.start();
+    localstack.start();
+  }
+
+  @DynamicPropertySource
+  static void registerProperties(DynamicPropertyRegistry registry) {
+    registry.add("spring.datasource.url", postgres::getJdbcUrl);
+    registry.add("spring.datasource.username", postgres::getUsername);
+    registry.add("spring.datasource.password", postgres::getPassword);
+    registry.add("aws.region", localstack::getRegion);
+    registry.add("aws.accessKeyId", localstack::getAccessKey);
+    registry.add("aws.secretAccessKey", localstack::getSecretKey);
+    registry.add("aws.s3.endpoint",
+        () -> localstack.getEndpointOverride(LocalStackContainer.Service.S3).toString());
+  }
+
+  @BeforeEach
+  void setUp() {
+    // Set the visibility maps, so index only scans are costed as they would be on the subscriber
+    REPLICATED_TABLES.forEach(table -> jdbcTemplate.execute("VACUUM ANALYZE claims." + table));
+  }
+
+  @Test
+  void healthCheckCountsShouldUseTimestampIndexes() {
+    Timestamp watermark = Timestamp.valueOf("2025-05-01 00:00:00");
+    Timestamp startOfDay = Timestamp.valueOf("2025-05-01 00:00:00");
+    Timestamp endOfDay = Timestamp.valueOf("2025-05-02 00:00:00");
+    for (String table : REPLICATED_TABLES) {
+      String plan = explain(ReplicationHealthCheckService.sinceWatermarkCountSql("claims." + table),
+          watermark, endOfDay, startOfDay, endOfDay);
+
+      assertThat(plan)
+          .contains("Bitmap Index Scan on ix_" + table + "_created_on_brin")
+          .contains("ix_" + table + "_updated_on");
+    }
+  }
+
+  @Test
+  void report013PeriodsShouldUseValidatedSubmissionIndex() {
+    assertThat(explain("SELECT * FROM claims.vw_report_013_periods"))
+        .contains("ix_submission_validation_succeeded_period");
+  }
+
+  @Test
+  void report013MonthlyTotalsShouldUsePreviousSubmissionIndex() {
+    assertThat(explain("SELECT * FROM claims.vw_report_013_monthly_totals"))
+        .contains("ix_submission_previous_submission_id");
+  }
+
+  @Test
+  void report000ShouldUseValidClaimIndex() {
+    // The view both the materialized view and the incrementally maintained table are built from
+    assertThat(explain("SELECT * FROM claims.vw_report_000"))
+        .contains("ix_claim_valid_submission_id");
+  }
+
+  private String explain(String sql, Object... parameters) {
+    return jdbcTemplate.execute((ConnectionCallback<String>) con -> {
+      try (Statement statement = con.createStatement()) {
+        statement.execute("SET enable_seqscan = off");
+        try (PreparedStatement explain = con.prepareStatement("EXPLAIN " + sql)) {
+          for (int i = 0; i < parameters.length; i++) {
+            explain.setObject(i + 1, parameters[i]);
+          }
+          List<String> lines = new ArrayList<>();
+          try (ResultSet rs = explain.executeQuery()) {
+            while (rs.next()) {
+              lines.add(rs.getString(1));
+            }
+          }
+          return String.join("\n", lines);
+        } finally {
+          statement.execute("RESET enable_seqscan");
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,105 @@
+package uk.gov.justice.laa.dstew.claimsreports.service.s3;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.containers.localstack.LocalStackContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+/**
+ * Integration tests for {@link S3MultipartUploadStream} against LocalStack, checking that a report streamed in
+ * several parts arrives intact and that an aborted upload leaves nothing behind.
+ */
+@Testcontainers
+class S3MultipartUploadStreamIntegrationTest {
+
+  private static final String BUCKET = "streaming-test-bucket";
+
+  @Container
+  static final LocalStackContainer localstack =
+      new LocalStackContainer(DockerImageName.parse("localstack/localstack:3.4"))
+          .withServices(LocalStackContainer.Service.S3);
+
+  private static S3Client s3Client;
+  private static S3ClientWrapper s3ClientWrapper;
+
+  @BeforeAll
+  static void setUp() {
+    s3Client = S3Client.builder()
+        .endpointOverride(localstack.getEndpointOverride(LocalStackContainer.Service.S3))
+        .region(Region.of(localstack.getRegion()))
+        .credentialsProvider(StaticCredentialsProvider.create(
+            AwsBasicCredentials.create(localstack.getAccessKey(), localstack.getSecretKey())))
+        .forcePathStyle(true)
+        .build();
+    s3Client.createBucket(CreateBucketRequest.builder().bucket(BUCKET).build());
+    s3ClientWrapper = new S3ClientWrapper(s3Client, BUCKET,
+        new S3UploadSettings(S3UploadSettings.MIN_PART_SIZE_BYTES, 2, S3UploadSettings.MIN_PART_SIZE_BYTES, 3));
+  }
+
+  @Test
+  void shouldStreamLargeReportInPartsAndReassembleIt() throws IOException {
+    // Roughly 12MB, so the report is split into three parts of the minimum part size
+    StringBuilder expected = new StringBuilder("Line Number,Description\n");
+    for (int i = 0; expected.length() < 12 * 1024 * 1024; i++) {
+      expected.append(i).append(",\"Description ").append(i).append("\"\n");
+    }
+
+    S3MultipartUploadStream uploadStream = s3ClientWrapper.openUploadStream("streamed_report.csv");
+    try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(uploadStream, StandardCharsets.UTF_8))) {
+      writer.write(expected.toString());
+    }
+    uploadStream.complete();
+
+    String uploaded = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+        .bucket(BUCKET)
+        .key("reports/streamed_report.csv")
+        .build()).asUtf8String();
+    assertThat(uploaded).isEqualTo(expected.toString());
+  }
+
+  @Test
+  void shouldUploadSmallReportWithSinglePut() throws IOException {
+    S3MultipartUploadStream uploadStream = s3ClientWrapper.openUploadStream("small_report.csv");
+    uploadStream.write("a,b\n1,2\n".getBytes(StandardCharsets.UTF_8));
+    uploadStream.close();
+    uploadStream.complete();
+
+    String uploaded = s3Client.getObjectAsBytes(GetObjectRequest.builder()
+        .bucket(BUCKET)
+        .key("reports/small_report.csv")
+        .build()).asUtf8String();
+    assertThat(uploaded).isEqualTo("a,b\n1,2\n");
+  }
+
+  @Test
+  void shouldLeaveNothingBehindWhenUploadIsAborted() throws IOException {
+    S3MultipartUploadStream uploadStream = s3ClientWrapper.openUploadStream("aborted_report.csv");
+    uploadStream.write(new byte[S3UploadSettings.MIN_PART_SIZE_BYTES + 1]);
+    uploadStream.abort();
+
+    assertThat(s3Client.listMultipartUploads(ListMultipartUploadsRequest.builder().bucket(BUCKET).build()).uploads())
+        .noneMatch(upload -> upload.key().equals("reports/aborted_report.csv"));
+    assertThatThrownBy(() -> s3Client.getObjectAsBytes(GetObjectRequest.builder()
+        .bucket(BUCKET)
+        .key("reports/aborted_report.csv")
+        .build()))
+        .isInstanceOf(NoSuchKeyException.class);
+  }
+}
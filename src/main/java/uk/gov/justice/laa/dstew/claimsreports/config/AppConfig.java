@@ -1,5 +1,6 @@
 package uk.gov.justice.laa.dstew.claimsreports.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import java.time.Clock;
 import javax.sql.DataSource;
 import lombok.Getter;
@@ -8,9 +9,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
-import tools.jackson.dataformat.csv.CsvMapper;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
+import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3UploadSettings;
 
 /**
  * Configuration class for application-level beans and settings.
@@ -23,14 +23,48 @@ import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
 @Configuration
 public class AppConfig {
   /**
-   * Configures a {@link DataSource} in the application's configuration file.
+   * Configures a pooled {@link DataSource} from the connection details in the application's configuration file.
+   * Pool, statement cache and socket settings are bound from {@code spring.datasource.hikari}.
+   * Unless configured, the pool is sized so every concurrent report worker gets its own connection, with two
+   * to spare for the health check, run state queries and shared snapshot, and enough more for the ranges of a
+   * parallel export.
    *
+   * @param url the JDBC url of the reporting database
+   * @param username the database user
+   * @param password the database password
+   * @param driverClassName the JDBC driver
+   * @param maxConcurrency the most reports run at the same time
+   * @param parallelRanges the most ranges a parallel export reads at the same time
+   * @param connectionPoolMetrics collects connection acquisition timings for the run
    * @return a configured {@link DataSource} for read-only operations.
    */
   @Bean
-  @ConfigurationProperties(prefix = "spring.datasource")
-  DataSource dataSource() {
-    return new DriverManagerDataSource();
+  @ConfigurationProperties(prefix = "spring.datasource.hikari")
+  HikariDataSource dataSource(@Value("${spring.datasource.url}") String url,
+      @Value("${spring.datasource.username}") String username,
+      @Value("${spring.datasource.password}") String password,
+      @Value("${spring.datasource.driver-class-name:org.postgresql.Driver}") String driverClassName,
+      @Value("${report-execution.max-concurrency:3}") int maxConcurrency,
+      @Value("${csv-creation.parallel-ranges:4}") int parallelRanges,
+      ConnectionPoolMetrics connectionPoolMetrics) {
+    HikariDataSource dataSource = new HikariDataSource();
+    dataSource.setJdbcUrl(url);
+    dataSource.setUsername(username);
+    dataSource.setPassword(password);
+    dataSource.setDriverClassName(driverClassName);
+    dataSource.setMaximumPoolSize(Math.max(maxConcurrency, 1) + 2 + Math.max(parallelRanges, 1));
+    dataSource.setMetricsTrackerFactory(connectionPoolMetrics);
+    return dataSource;
+  }
+
+  /**
+   * Collects connection pool timings so the runner can report them at the end of a run.
+   *
+   * @return the metrics tracker factory registered with the connection pool
+   */
+  @Bean
+  ConnectionPoolMetrics connectionPoolMetrics() {
+    return new ConnectionPoolMetrics();
   }
 
   /**
@@ -69,18 +103,63 @@ public class AppConfig {
   @Value("${csv-creation.data-chunk-size:1000}")
   private int dataChunkSize;
 
-  @Bean
-  public S3ClientWrapper createS3ClientWrapper(@Value("${AWS_REGION}") String awsRegion, @Value("${S3_REPORT_STORE}") String bucketName) {
-    return new S3ClientWrapper(awsRegion, bucketName);
-  }
+  /**
+   * Defines how many batches of fetched rows the pipelined export may hold at once, each of one data chunk.
+   * The fetching thread waits for the encoder once they are all in use, which bounds the memory used.
+   */
+  @Value("${csv-creation.pipeline-batch-count:4}")
+  private int pipelineBatchCount;
+
+  /**
+   * Defines how many ranges the parallel export splits a report into, each read over its own connection.
+   */
+  @Value("${csv-creation.parallel-ranges:4}")
+  private int parallelRanges;
+
+  /**
+   * Defines how many rows the keyset export reads in each page, each page being a short query of its own.
+   */
+  @Value("${csv-creation.keyset-page-size:10000}")
+  private int keysetPageSize;
+
+  /**
+   * Defines how many times the keyset export attempts a page before giving up, when reads fail with transient errors.
+   */
+  @Value("${csv-creation.keyset-max-attempts:3}")
+  private int keysetMaxAttempts;
+
+  /**
+   * Defines roughly how much heap the external sort export fills with rows before sorting them and spilling them to
+   * a temporary file as one sorted run.
+   */
+  @Value("${csv-creation.external-sort-run-size-mb:64}")
+  private int externalSortRunSizeMb;
+
+  /**
+   * Defines how many sorted runs the external sort export merges at once, each read through its own buffer.
+   * More runs than this are first merged into longer runs.
+   */
+  @Value("${csv-creation.external-sort-merge-fan-in:64}")
+  private int externalSortMergeFanIn;
 
   /**
-   * Defines CSV mapping instance for use in CSV creation.
+   * Configures the {@link S3ClientWrapper} used to upload reports.
    *
-   * @return csvMapper
+   * @param awsRegion the region of the report bucket
+   * @param bucketName the report bucket
+   * @param partSizeMegabytes the size of each part when reports are uploaded in parts
+   * @param maxInFlightParts the most parts uploaded at the same time
+   * @param multipartThresholdMegabytes staged reports larger than this are uploaded in parts
+   * @param maxPartAttempts how many times each part is attempted before the upload is abandoned
+   * @return a configured {@link S3ClientWrapper}
    */
   @Bean
-  public CsvMapper createCsvMapper() {
-    return new CsvMapper();
+  public S3ClientWrapper createS3ClientWrapper(@Value("${AWS_REGION}") String awsRegion, @Value("${S3_REPORT_STORE}") String bucketName,
+      @Value("${report-upload.part-size-mb:8}") int partSizeMegabytes,
+      @Value("${report-upload.max-in-flight-parts:4}") int maxInFlightParts,
+      @Value("${report-upload.multipart-threshold-mb:64}") long multipartThresholdMegabytes,
+      @Value("${report-upload.max-part-attempts:3}") int maxPartAttempts) {
+    return new S3ClientWrapper(awsRegion, bucketName, new S3UploadSettings(partSizeMegabytes * 1024 * 1024, maxInFlightParts,
+        multipartThresholdMegabytes * 1024 * 1024, maxPartAttempts));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package uk.gov.justice.laa.dstew.claimsreports.config;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects connection pool timings for a run, so we can see how long reports spent waiting for database
+ * connections and how much the pool saved over opening a new physical connection for every query.
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+  private final LongAdder acquisitions = new LongAdder();
+  private final LongAdder acquisitionNanos = new LongAdder();
+  private final LongAccumulator maxAcquisitionNanos = new LongAccumulator(Math::max, 0);
+  private final LongAdder connectionsCreated = new LongAdder();
+  private final LongAdder creationMillis = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+
+  @Override
+  public IMetricsTracker create(String poolName, PoolStats poolStats) {
+    return new IMetricsTracker() {
+      @Override
+      public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+        connectionsCreated.increment();
+        creationMillis.add(connectionCreatedMillis);
+      }
+
+      @Override
+      public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitions.increment();
+        acquisitionNanos.add(elapsedAcquiredNanos);
+        maxAcquisitionNanos.accumulate(elapsedAcquiredNanos);
+      }
+
+      @Override
+      public void recordConnectionTimeout() {
+        timeouts.increment();
+      }
+    };
+  }
+
+  public long getAcquisitions() {
+    return acquisitions.sum();
+  }
+
+  public long getConnectionsCreated() {
+    return connectionsCreated.sum();
+  }
+
+  /**
+   * Summarises the pool activity so far, including an estimate of the time saved against opening a new
+   * physical connection for every acquisition, based on the average time taken to open one.
+   *
+   * @return a single line summary suitable for logging
+   */
+  public String summary() {
+    long acquired = acquisitions.sum();
+    long created = connectionsCreated.sum();
+    long acquisitionMillis = TimeUnit.NANOSECONDS.toMillis(acquisitionNanos.sum());
+    long averageCreationMillis = created == 0 ? 0 : creationMillis.sum() / created;
+    long unpooledMillis = acquired * averageCreationMillis;
+
+    return String.format("%d connections acquired in %d ms (max %d ms, %d timeouts); %d physical connections opened in %d ms; "
+            + "opening one per acquisition would have taken about %d ms (saved %d ms)",
+        acquired, acquisitionMillis, TimeUnit.NANOSECONDS.toMillis(maxAcquisitionNanos.get()), timeouts.sum(),
+        created, creationMillis.sum(), unpooledMillis, Math.max(0, unpooledMillis - acquisitionMillis));
+  }
+}
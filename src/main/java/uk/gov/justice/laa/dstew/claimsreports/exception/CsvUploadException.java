@@ -13,4 +13,14 @@ public class CsvUploadException extends RuntimeException {
   public CsvUploadException(String message) {
     super(message);
   }
+
+  /**
+   * Constructor for CsvUploadException Exception that provides information on root cause of error.
+   *
+   * @param message the error message
+   * @param cause original source of error
+   */
+  public CsvUploadException(String message, Throwable cause) {
+    super(message, cause);
+  }
 }
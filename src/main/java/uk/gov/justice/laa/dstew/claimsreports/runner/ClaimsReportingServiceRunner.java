@@ -1,15 +1,25 @@
 package uk.gov.justice.laa.dstew.claimsreports.runner;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
+import uk.gov.justice.laa.dstew.claimsreports.config.ConnectionPoolMetrics;
 import uk.gov.justice.laa.dstew.claimsreports.dto.ReplicationHealthReport;
 import uk.gov.justice.laa.dstew.claimsreports.service.AbstractReportService;
 import uk.gov.justice.laa.dstew.claimsreports.service.ReplicationHealthCheckService;
+import uk.gov.justice.laa.dstew.claimsreports.service.ReportRunStateService;
+import uk.gov.justice.laa.dstew.claimsreports.service.SharedSnapshotService;
 
 
 /**
@@ -30,8 +40,14 @@ import uk.gov.justice.laa.dstew.claimsreports.service.ReplicationHealthCheckServ
  * - The `run` method is invoked at application startup and calls the internal `ensureReplicationHealthy` method
  * - This checks if the database replication is healthy and all the data is in sync with the source DB.
  * - If so, it calls the `generateReports` method, if not, it logs an error, throws an exception and terminates the process.
- * - The `generateReports` method iterates through the provided list of report services, ensuring each one
+ * - The `generateReports` method runs the provided list of report services, ensuring each one
  *   performs the refresh of its associated materialized view and generates the corresponding report.
+ *   Depending on the configured {@link ReportExecutionMode} the reports run one after another, in parallel,
+ *   or pipelined so the next refresh overlaps the current export and upload.
+ * - If skipping unchanged reports is enabled, reports whose source tables have not changed since their last
+ *   successful build are left out of the run, and the previously uploaded report stays in place.
+ * - If a shared snapshot is enabled, one snapshot is taken once replication has been confirmed healthy and
+ *   every report's data source is built from it, so all the reports of a run agree with each other.
  *
  */
 @Slf4j
@@ -41,9 +57,27 @@ public class ClaimsReportingServiceRunner  implements ApplicationRunner {
 
   @Value("${feature.ignore-replication-rowcount-mismatch:false}")
   private boolean ignoreRowCountMismatch;
+  @Value("${feature.skip-unchanged-reports:false}")
+  private boolean skipUnchangedReports;
+  @Value("${report-execution.mode:SEQUENTIAL}")
+  private ReportExecutionMode executionMode = ReportExecutionMode.SEQUENTIAL;
+  //Upper bound on the number of reports refreshed and generated at the same time in CONCURRENT mode
+  @Value("${report-execution.max-concurrency:3}")
+  private int maxConcurrency = 3;
+  //How many reports may be refreshed ahead of the report currently being exported in PIPELINED mode
+  @Value("${report-execution.refresh-ahead:1}")
+  private int refreshAhead = 1;
+  //When set, every report in the run is built from one snapshot, exported once replication has been confirmed healthy
+  @Value("${report-execution.shared-snapshot:false}")
+  private boolean sharedSnapshot;
   private final ReplicationHealthCheckService replicationHealthCheckService;
   //Spring will auto-inject all services that implement the AbstractReportService
   private final List<AbstractReportService> reportServices;
+  private final ReportRunStateService reportRunStateService;
+  private final ConnectionPoolMetrics connectionPoolMetrics;
+  private final SharedSnapshotService sharedSnapshotService;
+  //Change markers captured before each report is refreshed, recorded in the run state ledger once it is uploaded
+  private final Map<AbstractReportService, String> changeMarkers = new ConcurrentHashMap<>();
 
   @Override
   public void run(ApplicationArguments args) {
@@ -84,7 +118,7 @@ public class ClaimsReportingServiceRunner  implements ApplicationRunner {
   }
 
   /**
-   * Generates reports by iterating through a list of report services, performing the following tasks:
+   * Generates reports by running each report service, performing the following tasks:
    * - Refreshing the associated materialized view for each report service.
    * - Generating the report through the report service logic.
    *
@@ -92,20 +126,127 @@ public class ClaimsReportingServiceRunner  implements ApplicationRunner {
    * with the other services. If an exception occurs during the execution of a specific report service,
    * it logs an error message containing the name of the service and the details of the exception.
    *
+   * <p>Once all reports have finished, the wall-clock time of the run is logged against the sum of the
+   * individual report times, showing how much time concurrent or pipelined execution saved, along with the
+   * time spent acquiring database connections from the pool.
+   *
    * <p>The implementation assumes that the report services extend from the AbstractReportService base class,
    * which provides the necessary methods for refreshing materialized views and generating reports.
    */
   private void generateReports() {
-    log.info("Generating {} reports...", reportServices.size());
+    List<AbstractReportService> reportsToRun = skipUnchangedReports ? selectChangedReports() : reportServices;
+    log.info("Generating {} reports in {} mode...", reportsToRun.size(), executionMode);
+    long startTime = System.currentTimeMillis();
+
+    if (sharedSnapshot) {
+      sharedSnapshotService.open();
+    }
+    long sequentialDurationMilliseconds;
+    try {
+      sequentialDurationMilliseconds = switch (executionMode) {
+        case SEQUENTIAL -> generateReportsSequentially(reportsToRun);
+        case CONCURRENT -> generateReportsConcurrently(reportsToRun);
+        case PIPELINED -> new PipelinedReportScheduler(reportsToRun, refreshAhead, this::recordSuccessfulBuild).run();
+      };
+    } finally {
+      sharedSnapshotService.close();
+    }
+
+    long wallClockMilliseconds = System.currentTimeMillis() - startTime;
+    log.info("Generated {} reports in {} ms wall-clock against a sequential sum of {} ms (saved {} ms)",
+        reportsToRun.size(), wallClockMilliseconds, sequentialDurationMilliseconds,
+        Math.max(0, sequentialDurationMilliseconds - wallClockMilliseconds));
+    log.info("Connection pool: {}", connectionPoolMetrics.summary());
+  }
+
+  /**
+   * Captures the change marker of every report and leaves out the reports that are unchanged since
+   * their last successful build.
+   *
+   * @return the report services that need to be refreshed, exported and uploaded
+   */
+  private List<AbstractReportService> selectChangedReports() {
+    List<AbstractReportService> changedReports = new ArrayList<>();
     for (AbstractReportService service : reportServices) {
-      try {
-        service.refreshDataSource();
-        service.generateReport();
-      } catch (Exception e) {
-        log.error("Report generation failed for {}: {}",
-            service.getClass().getSimpleName(), e.getMessage(), e);
+      String changeMarker = reportRunStateService.captureChangeMarker(service);
+      if (reportRunStateService.isUnchanged(service, changeMarker)) {
+        log.info("Skipping {} as its source tables have not changed since it was last built",
+            service.getClass().getSimpleName());
+        continue;
+      }
+      if (changeMarker != null) {
+        changeMarkers.put(service, changeMarker);
+      }
+      changedReports.add(service);
+    }
+    return changedReports;
+  }
+
+  private void recordSuccessfulBuild(AbstractReportService service) {
+    String changeMarker = changeMarkers.get(service);
+    if (changeMarker != null) {
+      reportRunStateService.recordSuccessfulBuild(service, changeMarker);
+    }
+  }
+
+  private long generateReportsSequentially(List<AbstractReportService> reportsToRun) {
+    long totalDurationMilliseconds = 0;
+    for (AbstractReportService service : reportsToRun) {
+      totalDurationMilliseconds += generateReport(service);
+    }
+    return totalDurationMilliseconds;
+  }
+
+  /**
+   * Runs every report service on a fixed size pool of virtual threads, bounded by {@code maxConcurrency}
+   * so that we never hold more database connections open for reports than configured.
+   *
+   * @return the sum of the individual report durations, i.e. what the run would have taken sequentially.
+   */
+  private long generateReportsConcurrently(List<AbstractReportService> reportsToRun) {
+    int workerCount = Math.max(1, Math.min(maxConcurrency, reportsToRun.size()));
+    ThreadFactory workerFactory = Thread.ofVirtual().name("report-worker-", 1).factory();
+    LongAdder totalDurationMilliseconds = new LongAdder();
+
+    // Closing the executor waits for every submitted report to finish
+    try (ExecutorService executor = Executors.newFixedThreadPool(workerCount, workerFactory)) {
+      for (AbstractReportService service : reportsToRun) {
+        executor.execute(() -> totalDurationMilliseconds.add(generateReport(service)));
+      }
+    }
+    return totalDurationMilliseconds.sum();
+  }
+
+  /**
+   * Refreshes the data source of a single report service and generates its report, either streaming it to S3 or
+   * exporting it to a temporary file and then uploading it.
+   * Failures are logged rather than thrown so one failing report never stops the others.
+   *
+   * @param service the report service to run
+   * @return the time taken by the report in milliseconds, whether it succeeded or not
+   */
+  private long generateReport(AbstractReportService service) {
+    long startTime = System.currentTimeMillis();
+    try {
+      service.refreshDataSource();
+      // Each stage is called through the service's proxy, so the upload runs outside the export transaction and does
+      // not hold a database connection
+      boolean outsideTransaction = service.isExportedOutsideTransaction();
+      if (service.isStreamingUpload()) {
+        if (outsideTransaction) {
+          service.streamReportOutsideTransaction();
+        } else {
+          service.streamReport();
+        }
+      } else {
+        service.uploadReport(outsideTransaction ? service.exportReportOutsideTransaction() : service.exportReport());
       }
+      recordSuccessfulBuild(service);
+    } catch (Exception e) {
+      log.error("Report generation failed for {}: {}",
+          service.getClass().getSimpleName(), e.getMessage(), e);
     }
+    return System.currentTimeMillis() - startTime;
   }
 
 }
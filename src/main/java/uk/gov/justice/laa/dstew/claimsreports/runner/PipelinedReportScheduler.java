@@ -0,0 +1,135 @@
+package uk.gov.justice.laa.dstew.claimsreports.runner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import uk.gov.justice.laa.dstew.claimsreports.service.AbstractReportService;
+
+/**
+ * Runs report services as a three stage pipeline of refresh, export and upload, so the database is
+ * refreshing the next report's data source while the current report is being written and uploaded.
+ *
+ * <p>Each stage runs on its own virtual thread and handles reports in the order they were supplied.
+ * The refresh stage may only get {@code refreshAhead} reports ahead of the export stage, which stops us
+ * refreshing every view up front while the exports are still catching up.
+ *
+ * <p>A failure in any stage is logged and only affects that report; the later stages are skipped for it
+ * and the remaining reports carry on through the pipeline.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class PipelinedReportScheduler {
+
+  private final List<AbstractReportService> reportServices;
+  private final int refreshAhead;
+  //Called for each report once it has been uploaded successfully
+  private final Consumer<AbstractReportService> onReportBuilt;
+
+  /**
+   * Pushes every report service through the refresh, export and upload stages and waits for them all to finish.
+   *
+   * @return the sum of the time spent in every stage for every report, i.e. what the run would have taken sequentially.
+   */
+  long run() {
+    Semaphore refreshPermits = new Semaphore(Math.max(1, refreshAhead));
+    LongAdder totalDurationMilliseconds = new LongAdder();
+    List<CompletableFuture<Void>> reports = new ArrayList<>();
+
+    try (ExecutorService refreshStage = newStage("report-refresh");
+         ExecutorService exportStage = newStage("report-export");
+         ExecutorService uploadStage = newStage("report-upload")) {
+
+      for (AbstractReportService service : reportServices) {
+        CompletableFuture<Void> report = CompletableFuture
+            .runAsync(() -> refresh(service, refreshPermits, totalDurationMilliseconds), refreshStage)
+            .thenApplyAsync(ignored -> export(service, refreshPermits, totalDurationMilliseconds), exportStage)
+            .thenAcceptAsync(reportFile -> upload(service, reportFile, totalDurationMilliseconds), uploadStage)
+            .exceptionally(e -> logFailure(service, e));
+        reports.add(report);
+      }
+
+      // Wait for the whole pipeline to drain before the stages are shut down
+      CompletableFuture.allOf(reports.toArray(CompletableFuture[]::new)).join();
+    }
+    return totalDurationMilliseconds.sum();
+  }
+
+  private void refresh(AbstractReportService service, Semaphore refreshPermits, LongAdder totalDuration) {
+    try {
+      refreshPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to refresh " + service.getClass().getSimpleName(), e);
+    }
+
+    try {
+      timed(() -> {
+        service.refreshDataSource();
+        return null;
+      }, totalDuration);
+    } catch (RuntimeException e) {
+      // This report will never reach the export stage, so hand its slot to the next refresh
+      refreshPermits.release();
+      throw e;
+    }
+  }
+
+  private File export(AbstractReportService service, Semaphore refreshPermits, LongAdder totalDuration) {
+    // The report has left the queue of refreshed data sources, so the refresh stage may move on
+    refreshPermits.release();
+    boolean outsideTransaction = service.isExportedOutsideTransaction();
+    if (service.isStreamingUpload()) {
+      // Streamed reports are uploaded as they are written, so there is no file for the upload stage
+      return timed(() -> {
+        if (outsideTransaction) {
+          service.streamReportOutsideTransaction();
+        } else {
+          service.streamReport();
+        }
+        return null;
+      }, totalDuration);
+    }
+    return timed(outsideTransaction ? service::exportReportOutsideTransaction : service::exportReport, totalDuration);
+  }
+
+  private void upload(AbstractReportService service, File reportFile, LongAdder totalDuration) {
+    if (reportFile != null) {
+      timed(() -> {
+        service.uploadReport(reportFile);
+        return null;
+      }, totalDuration);
+    }
+    onReportBuilt.accept(service);
+  }
+
+  private Void logFailure(AbstractReportService service, Throwable failure) {
+    Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+        ? failure.getCause() : failure;
+    log.error("Report generation failed for {}: {}",
+        service.getClass().getSimpleName(), cause.getMessage(), cause);
+    return null;
+  }
+
+  private static <T> T timed(Supplier<T> stage, LongAdder totalDuration) {
+    long startTime = System.currentTimeMillis();
+    try {
+      return stage.get();
+    } finally {
+      totalDuration.add(System.currentTimeMillis() - startTime);
+    }
+  }
+
+  private static ExecutorService newStage(String name) {
+    return Executors.newSingleThreadExecutor(Thread.ofVirtual().name(name).factory());
+  }
+}
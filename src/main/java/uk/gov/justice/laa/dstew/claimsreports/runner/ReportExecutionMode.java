@@ -0,0 +1,24 @@
+package uk.gov.justice.laa.dstew.claimsreports.runner;
+
+/**
+ * Defines how the {@link ClaimsReportingServiceRunner} schedules the report services once
+ * replication has been confirmed as healthy.
+ */
+public enum ReportExecutionMode {
+
+  /**
+   * Reports are refreshed and generated one after another, so the run takes the sum of every report's time.
+   */
+  SEQUENTIAL,
+
+  /**
+   * Independent reports are refreshed and generated in parallel on a bounded pool of virtual threads.
+   */
+  CONCURRENT,
+
+  /**
+   * Reports flow through separate refresh, export and upload stages, so the next report's data source is
+   * refreshed while the current report is being exported and uploaded.
+   */
+  PIPELINED
+}
@@ -3,13 +3,22 @@ package uk.gov.justice.laa.dstew.claimsreports.service;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import lombok.AllArgsConstructor;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
+import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3MultipartUploadStream;
 
 /**
  * AbstractReportService serves as a base class for implementing report generation services
@@ -20,12 +29,19 @@ import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
  */
 @Slf4j
 @Transactional
-@AllArgsConstructor
+@RequiredArgsConstructor
 public abstract class AbstractReportService {
 
+  private static final String SHADOW_SUFFIX = "_shadow";
+  private static final Pattern INDEX_DEFINITION = Pattern.compile("^CREATE (UNIQUE )?INDEX \\S+ ON (?:ONLY )?\\S+ (USING .*)$");
+
   protected final JdbcTemplate jdbcTemplate;
   protected final S3ClientWrapper s3ClientWrapper;
   protected final CsvCreationService csvCreationService;
+  protected final SharedSnapshotService sharedSnapshotService;
+  //When set, reports are streamed to S3 as they are written rather than staged in /tmp first
+  @Value("${report-upload.streaming:false}")
+  private boolean streamingUpload;
 
   //Abstract methods (implemented by subclasses) to provide relevant details for individual reports
 
@@ -36,21 +52,193 @@ public abstract class AbstractReportService {
   protected abstract String getOrderByClause();
 
   /**
-   * Refreshes the associated materialized view.
+   * Gets the replicated tables the report's data source is built from.
+   * These are used by {@link ReportRunStateService} to decide whether the report needs rebuilding,
+   * so an empty list (the default) means the report is always rebuilt.
+   *
+   * @return the schema qualified names of the source tables
+   */
+  protected List<String> getSourceTables() {
+    return List.of();
+  }
+
+  /**
+   * Gets an optional query returning a single value that also forms part of the report's change marker.
+   * This is for reports whose content can change without their source tables changing, for example
+   * because they only cover a rolling window of dates.
+   *
+   * @return the query, or {@code null} if the source tables alone decide whether the report has changed
+   */
+  protected String getChangeMarkerSql() {
+    return null;
+  }
+
+  /**
+   * Gets the columns of the data source that exist only to support the report, such as sort keys
+   * backing the index used by {@link #getOrderByClause()}. They are left out of the exported CSV.
+   *
+   * @return the internal column names, an empty list (the default) exports every column
+   */
+  protected List<String> getInternalColumns() {
+    return List.of();
+  }
+
+  /**
+   * Gets the engine used to export the report's data source to CSV.
+   * Subclasses can override this to make the engine configurable for their report.
+   *
+   * @return the export engine, {@link ExportEngine#JDBC} by default
+   */
+  protected ExportEngine getExportEngine() {
+    return ExportEngine.JDBC;
+  }
+
+  /**
+   * Gets the queries used to export the report with {@link ExportEngine#PIVOT}.
+   *
+   * @return the pivot query, or {@code null} (the default) if the report cannot be pivoted by the application
+   */
+  protected PivotQuery getPivotQuery() {
+    return null;
+  }
+
+  /**
+   * Gets the column the export is split on by {@link ExportEngine#PARALLEL}. It must lead the report's sort order,
+   * ascending with nulls last, and be selectable from the data source.
+   *
+   * @return the range column, or {@code null} (the default) if the report cannot be exported in ranges
+   */
+  protected String getRangeColumn() {
+    return null;
+  }
+
+  /**
+   * Gets the columns that sort the export, used to page it with {@link ExportEngine#KEYSET} and to sort it with
+   * {@link ExportEngine#EXTERNAL_SORT}. Together they must be unique and sort the rows in the report's order, so they
+   * start with the columns of {@link #getOrderByClause()}. Only the first may be null, in which case it must sort
+   * nulls last.
+   *
+   * @return the sort key columns, an empty list (the default) if the report cannot be paged or sorted by them
+   */
+  protected List<String> getSortKeyColumns() {
+    return List.of();
+  }
+
+  /**
+   * Gets how the report's data source is refreshed.
+   * Subclasses can override this to make the mode configurable for their report.
+   *
+   * @return the refresh mode, {@link RefreshMode#STANDARD} by default
+   */
+  protected RefreshMode getRefreshMode() {
+    return RefreshMode.STANDARD;
+  }
+
+  /**
+   * Gets the command that builds a copy of the data source under another name, used by {@link RefreshMode#SHADOW_SWAP}.
+   * By default the copy is a materialized view built from the data source's own definition, so data sources that are
+   * tables need to override this. Indexes do not need to be created here, they are copied from the data source
+   * once the copy has been populated.
+   *
+   * @param shadowName the schema qualified name to build the copy under
+   * @return the command that builds the copy
+   */
+  protected String getShadowBuildCommand(String shadowName) {
+    String definition = jdbcTemplate.queryForObject("SELECT pg_get_viewdef(to_regclass(?), true)", String.class,
+        getDataSourceName());
+    return "CREATE MATERIALIZED VIEW " + shadowName + " AS " + definition.strip().replaceAll(";$", "");
+  }
+
+  /**
+   * Refreshes the associated data source, either in place with the refresh command or, for
+   * {@link RefreshMode#SHADOW_SWAP}, by building a copy and swapping it in.
+   * If the run holds a shared snapshot, the data source is built from it, so every report in the run is consistent.
+   * {@link RefreshMode#INCREMENTAL} refreshes are the exception, see {@link SharedSnapshotService}.
    */
   @Transactional
   public void refreshDataSource() {
-    String refreshCommand = getRefreshCommand();
     log.info("Refreshing data for {}", getReportName());
     long startTime = System.currentTimeMillis();
+    // An incremental refresh takes every queued change, so it has to read the changed rows as they are now. From the
+    // snapshot, a change made after it to a row already queued would be dropped with the queue entry and left out
+    if (getRefreshMode() != RefreshMode.INCREMENTAL) {
+      sharedSnapshotService.importInto(jdbcTemplate);
+    }
 
-    jdbcTemplate.execute(refreshCommand);
+    if (getRefreshMode() == RefreshMode.SHADOW_SWAP) {
+      refreshByShadowSwap();
+    } else {
+      jdbcTemplate.execute(getRefreshCommand());
+    }
 
     long endTime = System.currentTimeMillis();
     long durationMilliseconds = endTime - startTime;
     log.info("Refresh complete for {} in {} ms", getReportName(), durationMilliseconds);
   }
 
+  /**
+   * Builds a copy of the data source under a shadow name, copies the data source's indexes onto it and analyses it,
+   * then drops the data source and renames the copy in its place. Readers only wait for the drop and renames, which
+   * are run last so the exclusive lock they take is held for the moment before the refresh transaction commits.
+   */
+  private void refreshByShadowSwap() {
+    String dataSourceName = getDataSourceName();
+    String relationType = getRelationType(dataSourceName);
+    if (relationType == null) {
+      log.info("{} does not exist yet, so it is built in place", dataSourceName);
+      jdbcTemplate.execute(getRefreshCommand());
+      return;
+    }
+
+    String schema = dataSourceName.substring(0, dataSourceName.indexOf('.'));
+    String relationName = dataSourceName.substring(dataSourceName.indexOf('.') + 1);
+    String shadowName = dataSourceName + SHADOW_SUFFIX;
+
+    long buildStartTime = System.currentTimeMillis();
+    jdbcTemplate.execute("DROP " + relationType + " IF EXISTS " + shadowName);
+    jdbcTemplate.execute(getShadowBuildCommand(shadowName));
+    List<String[]> indexes = jdbcTemplate.query(
+        "SELECT indexname, indexdef FROM pg_indexes WHERE schemaname = ? AND tablename = ?",
+        (rs, rowNum) -> new String[] {rs.getString("indexname"), rs.getString("indexdef")}, schema, relationName);
+    for (String[] index : indexes) {
+      jdbcTemplate.execute(getShadowIndexDefinition(index[0], index[1], shadowName));
+    }
+    jdbcTemplate.execute("ANALYZE " + shadowName);
+    log.info("Built {} in {} ms", shadowName, System.currentTimeMillis() - buildStartTime);
+
+    long swapStartTime = System.currentTimeMillis();
+    StringBuilder swap = new StringBuilder("DROP " + relationType + " " + dataSourceName)
+        .append("; ALTER ").append(relationType).append(' ').append(shadowName).append(" RENAME TO ").append(relationName);
+    for (String[] index : indexes) {
+      swap.append("; ALTER INDEX ").append(schema).append('.').append(index[0]).append(SHADOW_SUFFIX)
+          .append(" RENAME TO ").append(index[0]);
+    }
+    jdbcTemplate.execute(swap.toString());
+    log.info("Swapped {} in for {} in {} ms", shadowName, dataSourceName, System.currentTimeMillis() - swapStartTime);
+  }
+
+  private String getRelationType(String relationName) {
+    List<String> relationKinds = jdbcTemplate.queryForList(
+        "SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, relationName);
+    if (relationKinds.isEmpty()) {
+      return null;
+    }
+    return switch (relationKinds.getFirst()) {
+      case "m" -> "MATERIALIZED VIEW";
+      case "r" -> "TABLE";
+      default -> throw new IllegalStateException(relationName + " cannot be refreshed by swapping in a copy");
+    };
+  }
+
+  private static String getShadowIndexDefinition(String indexName, String indexDefinition, String shadowName) {
+    Matcher matcher = INDEX_DEFINITION.matcher(indexDefinition);
+    if (!matcher.matches()) {
+      throw new IllegalStateException("Cannot copy index " + indexName + " onto " + shadowName + ": " + indexDefinition);
+    }
+    String unique = matcher.group(1) == null ? "" : matcher.group(1);
+    return "CREATE " + unique + "INDEX " + indexName + SHADOW_SUFFIX + " ON " + shadowName + " " + matcher.group(2);
+  }
+
   /**
    * Gets the intended name of the report.
    * This method is intended to be implemented by subclasses to define the name expected
@@ -68,29 +256,184 @@ public abstract class AbstractReportService {
   protected abstract String getReportFileName();
 
   /**
-   * Generates a CSV report.
+   * Whether the report is streamed to S3 while it is written, rather than exported to a temporary file and then uploaded.
+   *
+   * @return {@code true} if {@link #streamReport()} should be used
+   */
+  public boolean isStreamingUpload() {
+    return streamingUpload;
+  }
+
+  /**
+   * Whether the report's export engine reads over short connections of its own, so the export should be run with
+   * {@link #exportReportOutsideTransaction()} or {@link #streamReportOutsideTransaction()} rather than hold a pooled
+   * connection idle in a transaction for the length of the export.
+   *
+   * @return {@code true} for {@link ExportEngine#KEYSET}
+   */
+  public boolean isExportedOutsideTransaction() {
+    return getExportEngine() == ExportEngine.KEYSET;
+  }
+
+  /**
+   * Writes the report to a temporary CSV file the same as {@link #exportReport()}, but with no transaction, so no
+   * database connection is held by the export itself.
+   *
+   * @return the temporary file holding the CSV report
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public File exportReportOutsideTransaction() {
+    return exportReport();
+  }
+
+  /**
+   * Streams the report to S3 the same as {@link #streamReport()}, but with no transaction, so no database connection
+   * is held by the export itself.
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void streamReportOutsideTransaction() {
+    streamReport();
+  }
+
+  /**
+   * Writes the report to a temporary CSV file, ready to be handed to {@link #uploadReport(File)}.
+   * The temporary file is removed if the export fails.
+   *
+   * @return the temporary file holding the CSV report
    */
-  public void generateReport() {
+  public File exportReport() {
     log.info("Generating report from {}", getClass().getSimpleName());
     File tempFile = new File("/tmp/" + getReportFileName());
     long startTime = System.currentTimeMillis();
 
     try {
-      var sql = "SELECT * FROM " + getDataSourceName() + " ORDER BY " + getOrderByClause();
       try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath())) {
-        csvCreationService.buildCsvFromData(sql, writer, getReportName());
+        writeReport(writer);
       }
       long endTime = System.currentTimeMillis();
       long durationMilliseconds = endTime - startTime;
       log.info("Created {} file with filename {} in {} ms", getReportName(), getReportFileName(), durationMilliseconds);
+      return tempFile;
+    } catch (Exception e) {
+      log.error("Failed to generate {}: {}", getReportName(), e.getMessage());
+      deleteTempFile(tempFile);
+      throw new CsvCreationException("Failure to create " + getReportName(), e);
+    }
+  }
+
+  /**
+   * Writes the report straight into a multipart upload to S3, so parts are uploaded while later rows are still
+   * being read and no temporary file is needed. The upload is aborted if the report cannot be written.
+   */
+  public void streamReport() {
+    log.info("Generating and streaming report from {}", getClass().getSimpleName());
+    long startTime = System.currentTimeMillis();
+    S3MultipartUploadStream uploadStream = s3ClientWrapper.openUploadStream(getReportFileName());
 
-      s3ClientWrapper.uploadFile(tempFile, getReportFileName());
+    try {
+      try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(uploadStream, StandardCharsets.UTF_8))) {
+        writeReport(writer);
+      }
+      uploadStream.complete();
+      long durationMilliseconds = System.currentTimeMillis() - startTime;
+      log.info("Streamed {} to S3 with filename {} in {} ms", getReportName(), getReportFileName(), durationMilliseconds);
     } catch (Exception e) {
       log.error("Failed to generate {}: {}", getReportName(), e.getMessage());
+      uploadStream.abort();
       throw new CsvCreationException("Failure to create " + getReportName(), e);
+    }
+  }
+
+  /**
+   * Uploads a CSV file created by {@link #exportReport()} to S3 and deletes the temporary file afterwards.
+   * No transaction is needed here, so no database connection is held while the upload is in progress.
+   *
+   * @param reportFile the temporary file holding the CSV report
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void uploadReport(File reportFile) {
+    try {
+      s3ClientWrapper.uploadFile(reportFile, getReportFileName());
+    } catch (Exception e) {
+      log.error("Failed to upload {}: {}", getReportName(), e.getMessage());
+      throw new CsvCreationException("Failure to upload " + getReportName(), e);
     } finally {
-      deleteTempFile(tempFile);
+      deleteTempFile(reportFile);
+    }
+  }
+
+  private void writeReport(BufferedWriter writer) {
+    switch (getExportEngine()) {
+      case JDBC -> csvCreationService.buildCsvFromData(getExportQuery(), writer, getReportName());
+      case COPY -> csvCreationService.copyCsvFromData(getExportQuery(), writer, getReportName());
+      case PIPELINED -> csvCreationService.pipelineCsvFromData(getExportQuery(), writer, getReportName());
+      case PARALLEL -> {
+        String rangeColumn = getRangeColumn();
+        if (rangeColumn == null) {
+          throw new CsvCreationException(getReportName() + " cannot be exported with the parallel engine");
+        }
+        csvCreationService.parallelCsvFromData(
+            new RangePartitionedQuery(getSelectList(), getDataSourceName(), rangeColumn, getOrderByClause()),
+            writer, getReportName());
+      }
+      case KEYSET -> {
+        List<String> keysetColumns = getSortKeyColumns();
+        if (keysetColumns.isEmpty()) {
+          throw new CsvCreationException(getReportName() + " cannot be exported with the keyset engine");
+        }
+        csvCreationService.keysetCsvFromData(new KeysetQuery(getSelectList(), getDataSourceName(), keysetColumns),
+            writer, getReportName());
+      }
+      case EXTERNAL_SORT -> {
+        List<String> sortColumns = getSortKeyColumns();
+        if (sortColumns.isEmpty()) {
+          throw new CsvCreationException(getReportName() + " cannot be exported with the external sort engine");
+        }
+        csvCreationService.externalSortCsvFromData(
+            new ExternalSortQuery(getSelectList(), getDataSourceName(), sortColumns), writer, getReportName());
+      }
+      case PIVOT -> {
+        PivotQuery pivotQuery = getPivotQuery();
+        if (pivotQuery == null) {
+          throw new CsvCreationException(getReportName() + " cannot be exported with the pivot engine");
+        }
+        // The pivot reads the replicated tables rather than a refreshed data source, so it reads the shared snapshot
+        sharedSnapshotService.importInto(jdbcTemplate);
+        csvCreationService.pivotCsvFromData(pivotQuery, writer, getReportName());
+      }
+    }
+  }
+
+  private String getExportQuery() {
+    return "SELECT " + getSelectList() + " FROM " + getDataSourceName() + " ORDER BY " + getOrderByClause();
+  }
+
+  /**
+   * Lists the columns to export, in table order. The columns are looked up from the catalogue rather than
+   * hard coded, as some data sources (e.g. REPORT013) have columns that vary from one refresh to the next.
+   */
+  private String getSelectList() {
+    List<String> internalColumns = getInternalColumns();
+    if (internalColumns.isEmpty()) {
+      return "*";
+    }
+
+    List<String> columns = jdbcTemplate.queryForList("""
+            SELECT attname
+            FROM pg_attribute
+            WHERE attrelid = to_regclass(?)
+              AND attnum > 0
+              AND NOT attisdropped
+            ORDER BY attnum
+            """, String.class, getDataSourceName()).stream()
+        .filter(column -> !internalColumns.contains(column))
+        .toList();
+    if (columns.isEmpty()) {
+      throw new CsvCreationException("No columns to export from " + getDataSourceName());
     }
+    return columns.stream()
+        .map(column -> "\"" + column.replace("\"", "\"\"") + "\"")
+        .collect(Collectors.joining(", "));
   }
 
   private void deleteTempFile(File tempFile) {
@@ -0,0 +1,77 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
+
+/**
+ * Decodes the rows PostgreSQL sends for {@code COPY ... TO STDOUT} in its default text format: values separated by
+ * tabs, each row ending with a line feed, {@code \N} for null and backslash escapes for control characters.
+ * The values are the text output of each column, the same strings the JDBC driver returns from {@code getString}.
+ */
+final class CopyTextRowDecoder {
+
+  private static final byte TAB = '\t';
+  private static final byte LINE_FEED = '\n';
+  private static final byte BACKSLASH = '\\';
+
+  private final int columnCount;
+  private byte[] value = new byte[256];
+
+  CopyTextRowDecoder(int columnCount) {
+    this.columnCount = columnCount;
+  }
+
+  /**
+   * Decodes one row of copied data.
+   *
+   * @param data the row, as sent by the server
+   * @return the values of the row, null where the column is null
+   */
+  String[] decode(byte[] data) {
+    String[] row = new String[columnCount];
+    int column = 0;
+    int length = 0;
+    boolean isNull = false;
+    int end = data.length > 0 && data[data.length - 1] == LINE_FEED ? data.length - 1 : data.length;
+
+    for (int i = 0; i <= end; i++) {
+      if (i == end || data[i] == TAB) {
+        if (column >= columnCount) {
+          throw new CsvCreationException("Copied row has more than " + columnCount + " columns");
+        }
+        row[column++] = isNull ? null : new String(value, 0, length, StandardCharsets.UTF_8);
+        length = 0;
+        isNull = false;
+        continue;
+      }
+
+      byte b = data[i];
+      if (b == BACKSLASH && i + 1 < end) {
+        byte escaped = data[++i];
+        if (escaped == 'N' && length == 0) {
+          isNull = true;
+          continue;
+        }
+        b = switch (escaped) {
+          case 'b' -> '\b';
+          case 'f' -> '\f';
+          case 'n' -> '\n';
+          case 'r' -> '\r';
+          case 't' -> '\t';
+          case 'v' -> 0x0B;
+          default -> escaped;
+        };
+      }
+      if (length == value.length) {
+        value = Arrays.copyOf(value, length * 2);
+      }
+      value[length++] = b;
+    }
+
+    if (column != columnCount) {
+      throw new CsvCreationException("Copied row has " + column + " columns, expected " + columnCount);
+    }
+    return row;
+  }
+}
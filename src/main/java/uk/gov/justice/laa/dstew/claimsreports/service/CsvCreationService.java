@@ -2,18 +2,34 @@ package uk.gov.justice.laa.dstew.claimsreports.service;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.sql.DataSource;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyOut;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import tools.jackson.dataformat.csv.CsvMapper;
 import uk.gov.justice.laa.dstew.claimsreports.config.AppConfig;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
 
@@ -24,10 +40,13 @@ import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
 @Slf4j
 @AllArgsConstructor
 public class CsvCreationService {
+  private static final long KEYSET_RETRY_BACKOFF_MILLISECONDS = 500;
+  // The server shutting down, crashing or still starting up
+  private static final Set<String> TRANSIENT_SQL_STATES = Set.of("57P01", "57P02", "57P03");
+
   private final JdbcTemplate jdbcTemplate;
   private final DataSource dataSource;
   protected AppConfig appConfig;
-  private final CsvMapper csvMapper;
 
   /**
    * Builds CSV from data retrieved from SQL query
@@ -47,8 +66,7 @@ public class CsvCreationService {
     }
 
     try (writer) {
-      Map<String, String> row = new LinkedHashMap<>();
-      var handler = new CsvRowCallbackHandler(writer, row, appConfig.getBufferFlushFrequency(), csvMapper);
+      var handler = new CsvRowCallbackHandler(writer, appConfig.getBufferFlushFrequency());
 
       jdbcTemplate.query(
           (Connection con) -> buildPreparedStatement(sqlQuery, con, appConfig.getDataChunkSize()), handler
@@ -67,6 +85,587 @@ public class CsvCreationService {
     }
   }
 
+  /**
+   * Builds CSV from data retrieved from SQL query, fetching the rows on the calling thread while another thread
+   * encodes and writes the rows already fetched, so waiting on the database overlaps with writing the file.
+   * At most the configured number of batches, each of one fetch of rows, are held in memory at once.
+   * The output is identical to {@link #buildCsvFromData}.
+   *
+   * @param sqlQuery query for retrieving dataset
+   * @param writer writes string buffer into csv file
+   */
+  public void pipelineCsvFromData(String sqlQuery, BufferedWriter writer, String reportName) {
+    if (sqlQuery == null || sqlQuery.trim().isEmpty()) {
+      throw new CsvCreationException("SQL query is not provided");
+    }
+
+    if (writer == null) {
+      throw new CsvCreationException("BufferedWriter is null");
+    }
+
+    try (writer) {
+      var extractor = new CsvPipelinedResultSetExtractor(writer, appConfig.getBufferFlushFrequency(),
+          appConfig.getDataChunkSize(), Math.max(2, appConfig.getPipelineBatchCount()));
+
+      CsvPipelinedResultSetExtractor.PipelineStats stats = jdbcTemplate.query(
+          (Connection con) -> buildPreparedStatement(sqlQuery, con, appConfig.getDataChunkSize()), extractor
+      );
+
+      writer.flush();
+      log.info("CSV pipeline completed for {}", reportName);
+      log.info("Rows written for {}: {}", reportName, stats.rowCount());
+      log.info("Pipeline for {} took {} ms: fetching {} ms, encoding {} ms, waiting for the encoder {} ms, "
+              + "fetching hidden behind encoding {} ms", reportName,
+          TimeUnit.NANOSECONDS.toMillis(stats.elapsedNanos()), TimeUnit.NANOSECONDS.toMillis(stats.fetchNanos()),
+          TimeUnit.NANOSECONDS.toMillis(stats.encodeNanos()), TimeUnit.NANOSECONDS.toMillis(stats.fetchStallNanos()),
+          stats.hiddenFetchMillis());
+
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write to file for " + reportName, ex);
+    } catch (CsvCreationException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new CsvCreationException("Failure during CSV pipeline of " + reportName, ex);
+    }
+  }
+
+  /**
+   * Builds CSV by splitting the export into ranges of its leading sort column and reading the ranges at the same
+   * time, each over its own connection. Every connection imports one snapshot, exported by a coordinating
+   * transaction, so the ranges are read from the same data as a single query would be.
+   * The first range is written straight to the writer and the others to temporary files, which are appended
+   * in order once it is done, so the output is identical to {@link #buildCsvFromData}.
+   *
+   * @param query the export and the column to split it on
+   * @param writer writes string buffer into csv file
+   */
+  public void parallelCsvFromData(RangePartitionedQuery query, BufferedWriter writer, String reportName) {
+    if (query == null) {
+      throw new CsvCreationException("Range partitioned query is not provided");
+    }
+
+    if (writer == null) {
+      throw new CsvCreationException("BufferedWriter is null");
+    }
+
+    List<Path> rangeFiles = new ArrayList<>();
+    try (writer; Connection snapshotConnection = dataSource.getConnection()) {
+      beginRepeatableRead(snapshotConnection);
+      try {
+        String snapshotId;
+        try (Statement statement = snapshotConnection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT pg_export_snapshot()")) {
+          resultSet.next();
+          snapshotId = resultSet.getString(1);
+        }
+        List<Object> boundaries = findRangeBoundaries(snapshotConnection, query,
+            Math.max(1, appConfig.getParallelRanges()));
+        for (int i = 0; i < boundaries.size(); i++) {
+          rangeFiles.add(Files.createTempFile("report-range-", ".csv"));
+        }
+
+        long rowCount = exportRanges(query, snapshotId, boundaries, rangeFiles, writer);
+        writer.flush();
+        log.info("CSV parallel export completed for {} over {} ranges of {}", reportName, boundaries.size() + 1,
+            query.rangeColumn());
+        log.info("Rows written for {}: {}", reportName, rowCount);
+      } finally {
+        // The snapshot only needed to stay open while the ranges were read
+        snapshotConnection.rollback();
+      }
+
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write to file for " + reportName, ex);
+    } catch (CsvCreationException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new CsvCreationException("Failure during CSV parallel export of " + reportName, ex);
+    } finally {
+      rangeFiles.forEach(CsvCreationService::deleteRangeFile);
+    }
+  }
+
+  /**
+   * Chooses the values of the range column that start each range after the first, so the ranges hold similar
+   * numbers of rows. A value's rows are never split between ranges, so there may be fewer ranges than asked for.
+   *
+   * @param values the non-null values of the range column, in sort order
+   * @param rowCounts the number of rows for each value
+   * @param totalRows the number of rows in the export, including those where the range column is null
+   * @param ranges the number of ranges wanted
+   * @return the lower bound of every range but the first, in order
+   */
+  static List<Object> splitIntoRanges(List<Object> values, List<Long> rowCounts, long totalRows, int ranges) {
+    long rowsPerRange = Math.max(1, (totalRows + ranges - 1) / ranges);
+    List<Object> boundaries = new ArrayList<>();
+    long rowsBefore = 0;
+    for (int i = 0; i < values.size(); i++) {
+      if (boundaries.size() < ranges - 1 && rowsBefore >= rowsPerRange * (boundaries.size() + 1)) {
+        boundaries.add(values.get(i));
+      }
+      rowsBefore += rowCounts.get(i);
+    }
+    return boundaries;
+  }
+
+  private List<Object> findRangeBoundaries(Connection con, RangePartitionedQuery query, int ranges) throws SQLException {
+    List<Object> values = new ArrayList<>();
+    List<Long> rowCounts = new ArrayList<>();
+    long totalRows = 0;
+    try (Statement statement = con.createStatement();
+         ResultSet resultSet = statement.executeQuery(query.valueCountsQuery())) {
+      while (resultSet.next()) {
+        Object value = resultSet.getObject(1);
+        long rows = resultSet.getLong(2);
+        totalRows += rows;
+        if (value != null) {
+          values.add(value);
+          rowCounts.add(rows);
+        }
+      }
+    }
+    return splitIntoRanges(values, rowCounts, totalRows, ranges);
+  }
+
+  private long exportRanges(RangePartitionedQuery query, String snapshotId, List<Object> boundaries,
+      List<Path> rangeFiles, BufferedWriter writer) throws Exception {
+    int rangeCount = boundaries.size() + 1;
+    try (ExecutorService rangeReaders = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("csv-range-", 1).factory())) {
+      List<Future<RangeResult>> results = new ArrayList<>();
+      for (int i = 0; i < rangeCount; i++) {
+        Object lowerBound = i == 0 ? null : boundaries.get(i - 1);
+        Object upperBound = i == rangeCount - 1 ? null : boundaries.get(i);
+        boolean first = i == 0;
+        Path rangeFile = first ? null : rangeFiles.get(i - 1);
+        results.add(rangeReaders.submit(() -> first
+            ? exportRange(query, snapshotId, lowerBound, upperBound, false, writer)
+            : exportRangeToFile(query, snapshotId, lowerBound, upperBound, rangeFile)));
+      }
+
+      try {
+        RangeResult firstRange = results.get(0).get();
+        long rowCount = firstRange.rowCount();
+        for (int i = 1; i < rangeCount; i++) {
+          RangeResult range = results.get(i).get();
+          if (range.rowCount() == 0) {
+            continue;
+          }
+          if (rowCount == 0) {
+            // The first range had no rows to carry the header, so write it ahead of the first rows there are
+            writeHeader(writer, firstRange.columnNames());
+          }
+          try (Reader reader = Files.newBufferedReader(rangeFiles.get(i - 1))) {
+            reader.transferTo(writer);
+          }
+          rowCount += range.rowCount();
+        }
+        return rowCount;
+      } catch (ExecutionException ex) {
+        rangeReaders.shutdownNow();
+        throw ex.getCause() instanceof Exception cause ? cause : ex;
+      }
+    }
+  }
+
+  private RangeResult exportRangeToFile(RangePartitionedQuery query, String snapshotId, Object lowerBound,
+      Object upperBound, Path rangeFile) throws SQLException, IOException {
+    try (BufferedWriter rangeWriter = Files.newBufferedWriter(rangeFile)) {
+      return exportRange(query, snapshotId, lowerBound, upperBound, true, rangeWriter);
+    }
+  }
+
+  private RangeResult exportRange(RangePartitionedQuery query, String snapshotId, Object lowerBound,
+      Object upperBound, boolean appended, BufferedWriter rangeWriter) throws SQLException, IOException {
+    try (Connection con = dataSource.getConnection()) {
+      beginRepeatableRead(con);
+      try {
+        try (Statement statement = con.createStatement()) {
+          statement.execute("SET TRANSACTION SNAPSHOT '" + snapshotId + "'");
+        }
+
+        var handler = new CsvRowCallbackHandler(rangeWriter, appConfig.getBufferFlushFrequency(), !appended);
+        List<String> columnNames = new ArrayList<>();
+        try (PreparedStatement statement = buildPreparedStatement(
+            query.rangeQuery(lowerBound != null, upperBound != null), con, appConfig.getDataChunkSize())) {
+          int parameterIndex = 1;
+          if (lowerBound != null) {
+            statement.setObject(parameterIndex++, lowerBound);
+          }
+          if (upperBound != null) {
+            statement.setObject(parameterIndex, upperBound);
+          }
+          try (ResultSet resultSet = statement.executeQuery()) {
+            ResultSetMetaData meta = resultSet.getMetaData();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+              columnNames.add(meta.getColumnName(i));
+            }
+            while (resultSet.next()) {
+              handler.processRow(resultSet);
+            }
+          }
+        }
+        rangeWriter.flush();
+        return new RangeResult(handler.getRowCount(), columnNames);
+      } finally {
+        con.rollback();
+      }
+    }
+  }
+
+  private record RangeResult(int rowCount, List<String> columnNames) {
+  }
+
+  private static void beginRepeatableRead(Connection con) throws SQLException {
+    con.setAutoCommit(false);
+    con.setReadOnly(true);
+    con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+  }
+
+  private static void writeHeader(BufferedWriter writer, List<String> columnNames) throws IOException {
+    CsvRowEncoder headerEncoder = new CsvRowEncoder(writer);
+    columnNames.forEach(headerEncoder::appendValue);
+    headerEncoder.endRow();
+  }
+
+  private static void deleteRangeFile(Path rangeFile) {
+    try {
+      Files.deleteIfExists(rangeFile);
+    } catch (IOException ex) {
+      log.warn("Failed to delete temp file {}: {}", rangeFile, ex.getMessage());
+    }
+  }
+
+  /**
+   * Builds CSV by reading the export in pages, each starting after the key of the last row written. Every page is
+   * its own short read only query over a fresh connection, so no transaction or snapshot is held open for the length
+   * of the export and vacuum is not held back. A page that fails with a connection or other transient error is read
+   * again from the last key written, so nothing is written twice. Pages may see different snapshots, which is safe as
+   * the data source only changes when it is refreshed.
+   *
+   * @param query the export and the columns to page it by
+   * @param writer writes string buffer into csv file
+   */
+  public void keysetCsvFromData(KeysetQuery query, BufferedWriter writer, String reportName) {
+    if (query == null || query.keyColumns().isEmpty()) {
+      throw new CsvCreationException("Keyset query is not provided");
+    }
+
+    if (writer == null) {
+      throw new CsvCreationException("BufferedWriter is null");
+    }
+
+    int pageSize = Math.max(1, appConfig.getKeysetPageSize());
+    try (writer) {
+      CsvRowEncoder encoder = new CsvRowEncoder(writer);
+      long rowCount = 0;
+      int pageCount = 0;
+      boolean nullLeadingKey = false;
+      Object[] lastKey = null;
+      while (true) {
+        KeysetPage page = readKeysetPageWithRetries(query, nullLeadingKey, lastKey, pageSize, reportName);
+        pageCount++;
+        // The header goes with the first row, so an empty export writes nothing, the same as the JDBC engine
+        if (rowCount == 0 && !page.rows().isEmpty()) {
+          writeHeader(writer, page.columnNames());
+        }
+        for (String[] row : page.rows()) {
+          for (String value : row) {
+            encoder.appendValue(value);
+          }
+          encoder.endRow();
+
+          // Regular flush of buffer reduces memory usage when processing large files
+          if (++rowCount % appConfig.getBufferFlushFrequency() == 0) {
+            writer.flush();
+          }
+        }
+
+        if (page.rows().size() == pageSize) {
+          lastKey = page.lastKey();
+        } else if (!nullLeadingKey) {
+          // Rows with no leading key sort last, and are paged through on their own
+          nullLeadingKey = true;
+          lastKey = null;
+        } else {
+          break;
+        }
+      }
+
+      writer.flush();
+      log.info("CSV keyset export completed for {} in {} pages", reportName, pageCount);
+      log.info("Rows written for {}: {}", reportName, rowCount);
+
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write to file for " + reportName, ex);
+    } catch (CsvCreationException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new CsvCreationException("Failure during CSV keyset export of " + reportName, ex);
+    }
+  }
+
+  /**
+   * Whether a failed read is worth retrying on a new connection: the connection was lost or refused, the server is
+   * shutting down or still starting up.
+   *
+   * @param ex the failure
+   * @return {@code true} if the read can be retried
+   */
+  static boolean isTransientFailure(SQLException ex) {
+    if (ex instanceof SQLTransientException || ex instanceof SQLRecoverableException) {
+      return true;
+    }
+    String sqlState = ex.getSQLState();
+    return sqlState != null && (sqlState.startsWith("08") || TRANSIENT_SQL_STATES.contains(sqlState));
+  }
+
+  private KeysetPage readKeysetPageWithRetries(KeysetQuery query, boolean nullLeadingKey, Object[] lastKey,
+      int pageSize, String reportName) throws SQLException {
+    int maxAttempts = Math.max(1, appConfig.getKeysetMaxAttempts());
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return readKeysetPage(query, nullLeadingKey, lastKey, pageSize);
+      } catch (SQLException ex) {
+        if (attempt >= maxAttempts || !isTransientFailure(ex)) {
+          throw ex;
+        }
+        log.warn("Attempt {} to read a page of {} failed, resuming from the last row written: {}", attempt,
+            reportName, ex.getMessage());
+        backOff(attempt, reportName);
+      }
+    }
+  }
+
+  private KeysetPage readKeysetPage(KeysetQuery query, boolean nullLeadingKey, Object[] lastKey, int pageSize)
+      throws SQLException {
+    int keyCount = query.keyColumns().size();
+    try (Connection con = dataSource.getConnection()) {
+      // Each page is a transaction of its own, which ends as soon as the page has been read
+      con.setAutoCommit(true);
+      con.setReadOnly(true);
+      try (PreparedStatement statement = con.prepareStatement(query.pageQuery(nullLeadingKey, lastKey != null))) {
+        int parameterIndex = 1;
+        if (lastKey != null) {
+          for (int i = nullLeadingKey ? 1 : 0; i < keyCount; i++) {
+            statement.setObject(parameterIndex++, lastKey[i]);
+          }
+        }
+        statement.setInt(parameterIndex, pageSize);
+
+        try (ResultSet resultSet = statement.executeQuery()) {
+          ResultSetMetaData meta = resultSet.getMetaData();
+          int columnCount = meta.getColumnCount() - keyCount;
+          List<String> columnNames = new ArrayList<>(columnCount);
+          for (int i = 1; i <= columnCount; i++) {
+            columnNames.add(meta.getColumnName(i));
+          }
+
+          List<String[]> rows = new ArrayList<>();
+          Object[] pageLastKey = lastKey;
+          while (resultSet.next()) {
+            String[] row = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+              row[i] = resultSet.getString(i + 1);
+            }
+            rows.add(row);
+            pageLastKey = new Object[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+              pageLastKey[i] = resultSet.getObject(columnCount + i + 1);
+            }
+          }
+          return new KeysetPage(columnNames, rows, pageLastKey);
+        }
+      }
+    }
+  }
+
+  private record KeysetPage(List<String> columnNames, List<String[]> rows, Object[] lastKey) {
+  }
+
+  private static void backOff(int attempt, String reportName) {
+    try {
+      Thread.sleep(KEYSET_RETRY_BACKOFF_MILLISECONDS * (1L << (attempt - 1)));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new CsvCreationException("Interrupted while waiting to resume the export of " + reportName, ex);
+    }
+  }
+
+  /**
+   * Builds CSV by reading the export unordered and sorting it in the application, so the database can stream the data
+   * source with a parallel sequential scan rather than sort it. The rows are copied out in PostgreSQL's text format
+   * and sorted with an external merge sort, which spills sorted runs of the configured size to temporary files and
+   * merges them into the writer. The rows are written in the order of their sort columns, compared as the C collation
+   * would.
+   *
+   * @param query the export and the columns to sort it by
+   * @param writer writes string buffer into csv file
+   */
+  public void externalSortCsvFromData(ExternalSortQuery query, BufferedWriter writer, String reportName) {
+    if (query == null || query.sortColumns().isEmpty()) {
+      throw new CsvCreationException("External sort query is not provided");
+    }
+
+    if (writer == null) {
+      throw new CsvCreationException("BufferedWriter is null");
+    }
+
+    long maxRunBytes = appConfig.getExternalSortRunSizeMb() * 1024L * 1024L;
+    try (writer; ExternalRowSorter sorter = new ExternalRowSorter(query.sortColumns().size(), maxRunBytes,
+        appConfig.getExternalSortMergeFanIn())) {
+      long readStartTime = System.currentTimeMillis();
+      List<String> columnNames = jdbcTemplate.execute((ConnectionCallback<List<String>>) con ->
+          readUnordered(con, query, sorter));
+      log.info("Read {} unordered in {} ms, spilling {} sorted runs", reportName,
+          System.currentTimeMillis() - readStartTime, sorter.getRunCount());
+
+      int columnCount = columnNames.size() - query.sortColumns().size();
+      CsvRowEncoder encoder = new CsvRowEncoder(writer);
+      AtomicLong rowsWritten = new AtomicLong();
+      long rowCount = sorter.writeSorted(row -> {
+        // The header goes with the first row, so an empty export writes nothing, the same as the JDBC engine
+        if (rowsWritten.get() == 0) {
+          writeHeader(writer, columnNames.subList(0, columnCount));
+        }
+        for (int i = 0; i < columnCount; i++) {
+          encoder.appendValue(row[i]);
+        }
+        encoder.endRow();
+
+        // Regular flush of buffer reduces memory usage when processing large files
+        if (rowsWritten.incrementAndGet() % appConfig.getBufferFlushFrequency() == 0) {
+          writer.flush();
+        }
+      });
+
+      writer.flush();
+      log.info("CSV external sort completed for {}", reportName);
+      log.info("Rows written for {}: {}", reportName, rowCount);
+
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write to file for " + reportName, ex);
+    } catch (CsvCreationException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new CsvCreationException("Failure during CSV external sort of " + reportName, ex);
+    }
+  }
+
+  private List<String> readUnordered(Connection con, ExternalSortQuery query, ExternalRowSorter sorter)
+      throws SQLException {
+    String sqlQuery = query.unorderedQuery();
+    List<String> columnNames = new ArrayList<>();
+    try (Statement statement = con.createStatement();
+         ResultSet resultSet = statement.executeQuery(sqlQuery + " LIMIT 0")) {
+      ResultSetMetaData meta = resultSet.getMetaData();
+      for (int i = 1; i <= meta.getColumnCount(); i++) {
+        columnNames.add(meta.getColumnName(i));
+      }
+    }
+
+    CopyTextRowDecoder decoder = new CopyTextRowDecoder(columnNames.size());
+    CopyOut copyOut = con.unwrap(PGConnection.class).getCopyAPI().copyOut("COPY (" + sqlQuery + ") TO STDOUT");
+    try {
+      byte[] data;
+      while ((data = copyOut.readFromCopy()) != null) {
+        sorter.add(decoder.decode(data));
+      }
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write sorted run to temp file", ex);
+    } finally {
+      if (copyOut.isActive()) {
+        copyOut.cancelCopy();
+      }
+    }
+    return columnNames;
+  }
+
+  /**
+   * Builds CSV from data retrieved from SQL query using PostgreSQL's {@code COPY ... TO STDOUT},
+   * so the database produces the CSV, header included, and it is streamed straight into the writer.
+   * Values are quoted by PostgreSQL's rules rather than the application's, so only where needed.
+   *
+   * @param sqlQuery query for retrieving dataset
+   * @param writer writes string buffer into csv file
+   */
+  public void copyCsvFromData(String sqlQuery, BufferedWriter writer, String reportName) {
+    if (sqlQuery == null || sqlQuery.trim().isEmpty()) {
+      throw new CsvCreationException("SQL query is not provided");
+    }
+
+    if (writer == null) {
+      throw new CsvCreationException("BufferedWriter is null");
+    }
+
+    try (writer) {
+      String copyCommand = "COPY (" + sqlQuery + ") TO STDOUT WITH (FORMAT csv, HEADER)";
+      Long rowCount = jdbcTemplate.execute((ConnectionCallback<Long>) con ->
+          copyOut(con, copyCommand, writer));
+
+      writer.flush();
+      log.info("CSV copy completed for {}", reportName);
+      log.info("Rows written for {}: {}", reportName, rowCount);
+
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write to file for " + reportName, ex);
+    } catch (CsvCreationException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new CsvCreationException("Failure during CSV copy of " + reportName, ex);
+    }
+  }
+
+  /**
+   * Builds CSV for a report whose columns vary by pivoting its data as it is read. The pivoted column headers are
+   * fetched first, then the values are streamed in long format, sorted by report row, and only the report row being
+   * filled is held in memory.
+   *
+   * @param pivotQuery queries for the pivoted column headers and the values
+   * @param writer writes string buffer into csv file
+   */
+  public void pivotCsvFromData(PivotQuery pivotQuery, BufferedWriter writer, String reportName) {
+    if (pivotQuery == null) {
+      throw new CsvCreationException("Pivot query is not provided");
+    }
+
+    if (writer == null) {
+      throw new CsvCreationException("BufferedWriter is null");
+    }
+
+    try (writer) {
+      List<String> pivotHeaders = jdbcTemplate.queryForList(pivotQuery.columnsQuery(), String.class);
+      var handler = new CsvPivotRowCallbackHandler(writer, appConfig.getBufferFlushFrequency(),
+          pivotQuery.keyHeaders(), pivotHeaders);
+
+      jdbcTemplate.query((Connection con) -> {
+        PreparedStatement statement = buildPreparedStatement(pivotQuery.valuesQuery(), con, appConfig.getDataChunkSize());
+        statement.setArray(1, con.createArrayOf("text", pivotHeaders.toArray()));
+        return statement;
+      }, handler);
+      handler.finish();
+
+      writer.flush();
+      log.info("CSV pivot completed for {} with {} pivoted columns", reportName, pivotHeaders.size());
+      log.info("Rows written for {}: {}", reportName, handler.getRowCount());
+
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write to file for " + reportName, ex);
+    } catch (CsvCreationException ex) {
+      throw ex;
+    } catch (Exception ex) {
+      throw new CsvCreationException("Failure during CSV pivot of " + reportName, ex);
+    }
+  }
+
+  private long copyOut(Connection con, String copyCommand, BufferedWriter writer) throws SQLException {
+    try {
+      return con.unwrap(PGConnection.class).getCopyAPI().copyOut(copyCommand, writer);
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write copied data to new csv file", ex);
+    }
+  }
+
   /**
    * Creates a prepared statement that fetches data from the database in defined chunks,
    * specifically to provide performance improvements for large data sets.
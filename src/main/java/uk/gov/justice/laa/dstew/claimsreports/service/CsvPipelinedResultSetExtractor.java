@@ -0,0 +1,234 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
+
+/**
+ * Writes a result set to CSV in two stages, so waiting on the database for the next fetch overlaps with encoding
+ * and writing the rows already fetched.
+ *
+ * <p>The calling thread drains the result set into row batches taken from a fixed pool, and hands each full batch
+ * to an encoder thread, which writes the batches in the order they were filled and returns them to the pool.
+ * Memory is bounded by the pool: {@code batchCount} batches of {@code batchSize} rows. When the pool is empty the
+ * fetching thread waits for the encoder, and when no batch is ready the encoder waits for the database.
+ * The output is identical to the {@link CsvRowCallbackHandler}: the header is written with the first batch, so an
+ * empty result set writes nothing at all.
+ */
+@RequiredArgsConstructor
+class CsvPipelinedResultSetExtractor implements ResultSetExtractor<CsvPipelinedResultSetExtractor.PipelineStats> {
+
+  // How often the fetching thread checks the encoder has not failed while waiting for a free batch
+  private static final long FREE_BATCH_POLL_MILLIS = 100;
+  // Put after the last batch, or after a failure to fetch, to tell the encoder to stop
+  private static final RowBatch END_OF_DATA = new RowBatch(0, 0);
+
+  private final BufferedWriter writer;
+  private final int bufferFlushFrequency;
+  private final int batchSize;
+  private final int batchCount;
+
+  /**
+   * Timings of a pipelined export.
+   *
+   * @param rowCount the rows written, excluding the header
+   * @param fetchNanos time the fetching thread spent reading the result set, including waits on the database
+   * @param encodeNanos time the encoder thread spent encoding and writing rows
+   * @param fetchStallNanos time the fetching thread waited for the encoder to free a batch
+   * @param elapsedNanos time taken by the export as a whole
+   */
+  record PipelineStats(long rowCount, long fetchNanos, long encodeNanos, long fetchStallNanos, long elapsedNanos) {
+
+    /**
+     * Estimates how much of the fetching was hidden behind encoding, against doing one after the other.
+     *
+     * @return the time saved in milliseconds
+     */
+    long hiddenFetchMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(Math.max(0, Math.min(fetchNanos, fetchNanos + encodeNanos - elapsedNanos)));
+    }
+  }
+
+  /**
+   * A reusable batch of rows, held as one flat array of column values.
+   */
+  private static final class RowBatch {
+    private final String[] values;
+    private final int columnCount;
+    private int rowCount;
+
+    private RowBatch(int batchSize, int columnCount) {
+      this.values = new String[batchSize * columnCount];
+      this.columnCount = columnCount;
+    }
+
+    private boolean isFull() {
+      return (rowCount + 1) * columnCount > values.length;
+    }
+  }
+
+  @Override
+  public PipelineStats extractData(ResultSet resultSet) throws SQLException {
+    long startTime = System.nanoTime();
+    String[] header = readHeader(resultSet.getMetaData());
+    int columnCount = header.length;
+
+    BlockingQueue<RowBatch> freeBatches = new ArrayBlockingQueue<>(batchCount);
+    for (int i = 0; i < batchCount; i++) {
+      freeBatches.add(new RowBatch(Math.max(1, batchSize), columnCount));
+    }
+    // Room for every batch and the end marker, so handing over never blocks
+    BlockingQueue<RowBatch> filledBatches = new ArrayBlockingQueue<>(batchCount + 1);
+
+    try (ExecutorService encoderStage = Executors.newSingleThreadExecutor(
+        Thread.ofVirtual().name("csv-encoder-", 1).factory())) {
+      Future<long[]> encoder = encoderStage.submit(() -> encode(header, filledBatches, freeBatches));
+
+      long fetchNanos = 0;
+      long fetchStallNanos = 0;
+      try {
+        RowBatch batch = null;
+        while (true) {
+          if (batch == null) {
+            long stallStart = System.nanoTime();
+            batch = takeFreeBatch(freeBatches, encoder);
+            fetchStallNanos += System.nanoTime() - stallStart;
+          }
+
+          long fetchStart = System.nanoTime();
+          boolean hasRow = resultSet.next();
+          if (hasRow) {
+            int offset = batch.rowCount * columnCount;
+            for (int i = 1; i <= columnCount; i++) {
+              batch.values[offset + i - 1] = resultSet.getString(i);
+            }
+            batch.rowCount++;
+          }
+          fetchNanos += System.nanoTime() - fetchStart;
+
+          if (!hasRow) {
+            if (batch.rowCount > 0) {
+              filledBatches.add(batch);
+            }
+            break;
+          }
+          if (batch.isFull()) {
+            filledBatches.add(batch);
+            batch = null;
+          }
+        }
+      } finally {
+        filledBatches.add(END_OF_DATA);
+      }
+
+      long[] encoded = awaitEncoder(encoder);
+      return new PipelineStats(encoded[0], fetchNanos, encoded[1], fetchStallNanos, System.nanoTime() - startTime);
+    }
+  }
+
+  private static String[] readHeader(ResultSetMetaData meta) throws SQLException {
+    if (meta == null) {
+      throw new CsvCreationException("Metadata invalid");
+    }
+
+    String[] header = new String[meta.getColumnCount()];
+    for (int i = 1; i <= header.length; i++) {
+      header[i - 1] = meta.getColumnName(i);
+    }
+    return header;
+  }
+
+  private static void writeHeader(CsvRowEncoder encoder, String[] header) {
+    for (String columnName : header) {
+      encoder.appendValue(columnName);
+    }
+    try {
+      encoder.endRow();
+    } catch (IOException ex) {
+      throw new CsvCreationException("Failure to write header row to new csv file", ex);
+    }
+  }
+
+  /**
+   * Encodes and writes each filled batch in turn, returning it to the pool once written. The header is written
+   * ahead of the first batch, as only batches holding rows are handed over.
+   *
+   * @return the rows written and the time spent encoding and writing them
+   */
+  private long[] encode(String[] header, BlockingQueue<RowBatch> filledBatches, BlockingQueue<RowBatch> freeBatches)
+      throws InterruptedException, IOException {
+    CsvRowEncoder encoder = new CsvRowEncoder(writer);
+    int columnCount = header.length;
+    long rowCount = 0;
+    long encodeNanos = 0;
+
+    RowBatch batch;
+    while ((batch = filledBatches.take()) != END_OF_DATA) {
+      long encodeStart = System.nanoTime();
+      if (rowCount == 0) {
+        writeHeader(encoder, header);
+      }
+      for (int row = 0; row < batch.rowCount; row++) {
+        int offset = row * columnCount;
+        for (int i = 0; i < columnCount; i++) {
+          encoder.appendValue(batch.values[offset + i]);
+          batch.values[offset + i] = null;
+        }
+        encoder.endRow();
+
+        // Regular flush of buffer reduces memory usage when processing large files
+        if (++rowCount % bufferFlushFrequency == 0) {
+          writer.flush();
+        }
+      }
+      encodeNanos += System.nanoTime() - encodeStart;
+
+      batch.rowCount = 0;
+      freeBatches.add(batch);
+    }
+    return new long[] {rowCount, encodeNanos};
+  }
+
+  private static RowBatch takeFreeBatch(BlockingQueue<RowBatch> freeBatches, Future<long[]> encoder) {
+    try {
+      RowBatch batch;
+      while ((batch = freeBatches.poll(FREE_BATCH_POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+        // The encoder only stops early if it has failed, in which case no batch will ever be freed
+        if (encoder.isDone()) {
+          awaitEncoder(encoder);
+          throw new CsvCreationException("CSV encoder stopped before the data was written");
+        }
+      }
+      return batch;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new CsvCreationException("Interrupted while waiting for the CSV encoder", ex);
+    }
+  }
+
+  private static long[] awaitEncoder(Future<long[]> encoder) {
+    try {
+      return encoder.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new CsvCreationException("Interrupted while waiting for the CSV encoder", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof CsvCreationException csvCreationException) {
+        throw csvCreationException;
+      }
+      throw new CsvCreationException("Failure to write data row to new csv file", ex.getCause());
+    }
+  }
+}
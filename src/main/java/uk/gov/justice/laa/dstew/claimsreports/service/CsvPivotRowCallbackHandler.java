@@ -0,0 +1,119 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
+
+/**
+ * Pivots rows in long format into a wide CSV as they are read, for {@link ExportEngine#PIVOT}.
+ * Each row holds the key values for a report row, the number of the pivoted column and its value. Rows arrive sorted
+ * by key, so only the report row currently being filled is held in memory, in a buffer that is reused for every row.
+ * The column number indexes the buffer directly, so no lookup by column name is needed.
+ *
+ * <p>As with {@link CsvRowCallbackHandler}, the final buffer flush is left to the caller, after {@link #finish()}.
+ */
+class CsvPivotRowCallbackHandler implements RowCallbackHandler {
+  private final BufferedWriter writer;
+  private final int bufferFlushFrequency;
+  private final CsvRowEncoder encoder;
+  private final List<String> headers;
+  private final String[] currentKey;
+  private final String[] rowKey;
+  private final String[] values;
+  private boolean headerWritten;
+  private boolean rowPending;
+  private int rowCount;
+
+  CsvPivotRowCallbackHandler(BufferedWriter writer, int bufferFlushFrequency, List<String> keyHeaders,
+                             List<String> pivotHeaders) {
+    this.writer = writer;
+    this.bufferFlushFrequency = bufferFlushFrequency;
+    this.encoder = new CsvRowEncoder(writer);
+    this.headers = Stream.concat(keyHeaders.stream(), pivotHeaders.stream()).toList();
+    this.currentKey = new String[keyHeaders.size()];
+    this.rowKey = new String[keyHeaders.size()];
+    this.values = new String[pivotHeaders.size()];
+  }
+
+  @Override
+  public void processRow(ResultSet resultSet) {
+    if (resultSet == null) {
+      throw new CsvCreationException("Result set invalid");
+    }
+
+    try {
+      writeHeaderIfNeeded();
+
+      for (int i = 0; i < rowKey.length; i++) {
+        rowKey[i] = resultSet.getString(i + 1);
+      }
+      if (rowPending && !Arrays.equals(rowKey, currentKey)) {
+        writeCurrentRow();
+      }
+      if (!rowPending) {
+        System.arraycopy(rowKey, 0, currentKey, 0, rowKey.length);
+        rowPending = true;
+      }
+
+      int columnNumber = resultSet.getInt(rowKey.length + 1);
+      if (columnNumber < 1 || columnNumber > values.length) {
+        throw new CsvCreationException("Pivot column " + columnNumber + " is outside the " + values.length
+            + " columns of the report");
+      }
+      values[columnNumber - 1] = resultSet.getString(rowKey.length + 2);
+
+    } catch (IOException | SQLException ex) {
+      throw new CsvCreationException("Failure to write data row to new csv file", ex);
+    }
+  }
+
+  /**
+   * Writes the last report row, or just the header if there were no rows.
+   *
+   * @throws IOException if the writer fails
+   */
+  void finish() throws IOException {
+    writeHeaderIfNeeded();
+    if (rowPending) {
+      writeCurrentRow();
+    }
+  }
+
+  private void writeHeaderIfNeeded() throws IOException {
+    if (!headerWritten) {
+      for (String header : headers) {
+        encoder.appendValue(header);
+      }
+      encoder.endRow();
+      headerWritten = true;
+    }
+  }
+
+  private void writeCurrentRow() throws IOException {
+    for (String key : currentKey) {
+      encoder.appendValue(key);
+    }
+    for (String value : values) {
+      encoder.appendValue(value);
+    }
+    encoder.endRow();
+    Arrays.fill(values, null);
+    rowPending = false;
+
+    // Regular flush of buffer reduces memory usage when processing large files.
+    if ((rowCount + 1) % bufferFlushFrequency == 0) {
+      writer.flush();
+    }
+    rowCount++;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+}
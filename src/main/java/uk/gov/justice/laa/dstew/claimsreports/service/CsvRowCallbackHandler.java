@@ -1,33 +1,40 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
 import java.io.BufferedWriter;
+import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.Map;
-import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.RowCallbackHandler;
-import tools.jackson.core.exc.JacksonIOException;
-import tools.jackson.databind.ObjectWriter;
-import tools.jackson.databind.SequenceWriter;
-import tools.jackson.dataformat.csv.CsvMapper;
-import tools.jackson.dataformat.csv.CsvSchema;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
 
 /**
  * This class defines how each row of data will be appended to the new CSV file, as well as how frequently the output buffer
  * will be flushed to ensure CSV creation remains performant and does not hold too much data in memory during processing.
  * Final buffer flush will need to be done by method that utilises this handler, to ensure there are no remaining rows left in the buffer.
+ *
+ * <p>The result set metadata is only read for the first row, which is when the header is written. Every row after that
+ * is encoded straight from the result set into a reusable buffer by the {@link CsvRowEncoder}.
+ * The header can be left out, for rows that are appended to a CSV that already has one.
  */
-@RequiredArgsConstructor
 class CsvRowCallbackHandler implements RowCallbackHandler {
   private final BufferedWriter writer;
-  private final Map<String, String> row;
   private final int bufferFlushFrequency;
-  private final CsvMapper csvMapper;
-  private SequenceWriter sequenceWriter;
+  private final boolean writeHeader;
+  private CsvRowEncoder encoder;
+  private int columnCount;
   private int rowCount;
 
+  CsvRowCallbackHandler(BufferedWriter writer, int bufferFlushFrequency) {
+    this(writer, bufferFlushFrequency, true);
+  }
+
+  CsvRowCallbackHandler(BufferedWriter writer, int bufferFlushFrequency, boolean writeHeader) {
+    this.writer = writer;
+    this.bufferFlushFrequency = bufferFlushFrequency;
+    this.writeHeader = writeHeader;
+  }
+
   @Override
   public void processRow(ResultSet resultSet) {
 
@@ -36,54 +43,46 @@ class CsvRowCallbackHandler implements RowCallbackHandler {
     }
 
     try {
-      if (resultSet.getMetaData() == null) {
-        throw new CsvCreationException("Metadata invalid");
-      }
-
-      ResultSetMetaData meta = resultSet.getMetaData();
-      int columnCount = meta.getColumnCount();
-
       // Write header once
-      if (resultSet.getRow() == 1) {
-        addCsvHeaders(columnCount, meta);
+      if (encoder == null) {
+        addCsvHeaders(resultSet.getMetaData());
       }
 
-      // Clear Map instead of creating new instance,
-      // as performance saving
-      row.clear();
-
       for (int i = 1; i <= columnCount; i++) {
-        row.put(meta.getColumnName(i), resultSet.getString(i));
+        encoder.appendValue(resultSet.getString(i));
       }
-      sequenceWriter.write(row);
+      encoder.endRow();
 
       // Regular flush of buffer reduces memory usage when
       // processing large files.
-      if (resultSet.getRow() % bufferFlushFrequency == 0) {
-        sequenceWriter.flush();
+      if ((rowCount + 1) % bufferFlushFrequency == 0) {
+        writer.flush();
       }
 
       rowCount++;
 
-    } catch (JacksonIOException | SQLException ex) {
+    } catch (IOException | SQLException ex) {
       throw new CsvCreationException("Failure to write data row to new csv file", ex);
     }
   }
 
-  private void addCsvHeaders(int columnCount, ResultSetMetaData meta) throws SQLException {
-    CsvSchema.Builder schemaBuilder = CsvSchema.builder().setUseHeader(true);
-    for (int i = 1; i <= columnCount; i++) {
-      schemaBuilder.addColumn(meta.getColumnName(i));
+  private void addCsvHeaders(ResultSetMetaData meta) throws SQLException, IOException {
+    if (meta == null) {
+      throw new CsvCreationException("Metadata invalid");
     }
-    CsvSchema schema = schemaBuilder.build();
 
-    // Knows what schema and format to use
-    ObjectWriter objectWriter = csvMapper.writer(schema);
-    // Streaming writer that handles CSV formatting, quotations, line endings etc.
-    sequenceWriter = objectWriter.writeValues(writer);
+    CsvRowEncoder headerEncoder = new CsvRowEncoder(writer);
+    columnCount = meta.getColumnCount();
+    if (writeHeader) {
+      for (int i = 1; i <= columnCount; i++) {
+        headerEncoder.appendValue(meta.getColumnName(i));
+      }
+      headerEncoder.endRow();
+    }
+    encoder = headerEncoder;
   }
 
   public int getRowCount() {
     return rowCount;
   }
-}
\ No newline at end of file
+}
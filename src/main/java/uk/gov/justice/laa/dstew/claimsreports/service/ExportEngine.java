@@ -0,0 +1,55 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+/**
+ * Defines how a report's data source is turned into a CSV file.
+ */
+public enum ExportEngine {
+
+  /**
+   * Rows are fetched in chunks over JDBC and encoded by the application.
+   */
+  JDBC,
+
+  /**
+   * The database produces the CSV itself through {@code COPY ... TO STDOUT}, which is streamed straight into the file.
+   * Values are quoted using PostgreSQL's rules, which only quote where needed, so the file differs byte for byte
+   * from the JDBC engine but holds the same data.
+   */
+  COPY,
+
+  /**
+   * Rows are fetched in chunks over JDBC on one thread and encoded and written by the application on another, so
+   * waiting on the database overlaps with writing the file. Memory is bounded by a fixed pool of row batches.
+   * The output is identical to the JDBC engine.
+   */
+  PIPELINED,
+
+  /**
+   * The export is split into ranges of its leading sort column, which are read at the same time over separate
+   * connections sharing one snapshot and written one after another. The output is identical to the JDBC engine.
+   * Needs the report to provide a range column.
+   */
+  PARALLEL,
+
+  /**
+   * The export is read in pages, each starting after the key of the last row written, so no transaction is held open
+   * for the whole export and a page that fails on a lost connection is read again from where it left off.
+   * The rows are written in the JDBC engine's order, any ties broken by the key. Needs the report to provide sort key columns.
+   */
+  KEYSET,
+
+  /**
+   * The data source is read unordered, so the database can scan it in parallel rather than sort it, and sorted by the
+   * application with an external merge sort that spills sorted runs to temporary files. Heap use is bounded by the
+   * configured run size. Sort columns are compared as the C collation would, which matches the database's order for
+   * the codes and numbers the reports are sorted by. Needs the report to provide sort key columns.
+   */
+  EXTERNAL_SORT,
+
+  /**
+   * For reports whose columns vary, the data is streamed over JDBC in long format and pivoted into columns by the
+   * application as it is written, so no table has to be built with those columns first. The output is identical
+   * to the JDBC engine reading the built table. Needs the report to provide a {@link PivotQuery}.
+   */
+  PIVOT
+}
@@ -0,0 +1,287 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Sorts rows that may not fit in memory with an external merge sort. Rows are gathered in memory until they reach
+ * the run size, then sorted and spilled to a temporary file as a sorted run. Once every row has been added the runs
+ * are merged, at most {@code mergeFanIn} at a time, and the rows handed out in order.
+ *
+ * <p>Each row is an array of values, the last {@code keyCount} of which are the sort key. Keys are compared value by
+ * value as strings, character by character as the C collation would, with nulls last.
+ *
+ * <p>Runs are written with a compact binary encoding: each value is its UTF-8 length plus one as a variable length
+ * integer, zero standing for null, followed by its bytes. Heap use is bounded by the run size, plus a read buffer
+ * for each run being merged.
+ */
+@Slf4j
+final class ExternalRowSorter implements AutoCloseable {
+
+  private static final int RUN_BUFFER_BYTES = 64 * 1024;
+  // Rough heap cost of a row and of each value on top of its characters, used to decide when to spill a run
+  private static final int ROW_OVERHEAD_BYTES = 16;
+  private static final int VALUE_OVERHEAD_BYTES = 56;
+
+  private final Comparator<String[]> rowOrder;
+  private final long maxRunBytes;
+  private final int mergeFanIn;
+  private final List<String[]> buffer = new ArrayList<>();
+  private final List<SortedRun> runs = new ArrayList<>();
+  private long bufferBytes;
+  private long rowCount;
+
+  /**
+   * Consumes the sorted rows.
+   */
+  @FunctionalInterface
+  interface RowWriter {
+    void write(String[] row) throws IOException;
+  }
+
+  private record SortedRun(Path file, long rowCount) {
+  }
+
+  ExternalRowSorter(int keyCount, long maxRunBytes, int mergeFanIn) {
+    this.rowOrder = keyOrder(keyCount);
+    this.maxRunBytes = Math.max(1, maxRunBytes);
+    this.mergeFanIn = Math.max(2, mergeFanIn);
+  }
+
+  /**
+   * Adds a row to be sorted, spilling the rows gathered so far to a sorted run if they have reached the run size.
+   *
+   * @param row the row, ending with its sort key
+   * @throws IOException if a run cannot be written
+   */
+  void add(String[] row) throws IOException {
+    buffer.add(row);
+    rowCount++;
+    bufferBytes += estimateBytes(row);
+    if (bufferBytes >= maxRunBytes) {
+      spillBuffer();
+    }
+  }
+
+  /**
+   * Hands every row added to the writer in key order. Rows that never had to be spilled are sorted in memory.
+   *
+   * @param writer consumes the sorted rows
+   * @return the number of rows written
+   * @throws IOException if the runs cannot be read or the writer fails
+   */
+  long writeSorted(RowWriter writer) throws IOException {
+    if (runs.isEmpty()) {
+      buffer.sort(rowOrder);
+      for (String[] row : buffer) {
+        writer.write(row);
+      }
+      buffer.clear();
+      return rowCount;
+    }
+
+    spillBuffer();
+    while (runs.size() > mergeFanIn) {
+      // Too many runs to read at once, so merge the oldest into a longer run and try again
+      List<SortedRun> merging = new ArrayList<>(runs.subList(0, mergeFanIn));
+      Path mergedFile = Files.createTempFile("report-sort-run-", ".bin");
+      long mergedRows;
+      try (DataOutputStream out = openRunForWrite(mergedFile)) {
+        mergedRows = merge(merging, row -> writeRow(out, row));
+      } catch (IOException | RuntimeException ex) {
+        deleteRunFile(mergedFile);
+        throw ex;
+      }
+      runs.subList(0, mergeFanIn).clear();
+      merging.forEach(run -> deleteRunFile(run.file()));
+      runs.add(new SortedRun(mergedFile, mergedRows));
+    }
+    log.info("Merging {} sorted runs of {} rows", runs.size(), rowCount);
+    return merge(runs, writer);
+  }
+
+  /**
+   * Gets how many sorted runs have been spilled to disk so far.
+   *
+   * @return the number of runs on disk
+   */
+  int getRunCount() {
+    return runs.size();
+  }
+
+  @Override
+  public void close() {
+    runs.forEach(run -> deleteRunFile(run.file()));
+    runs.clear();
+    buffer.clear();
+  }
+
+  private void spillBuffer() throws IOException {
+    if (buffer.isEmpty()) {
+      return;
+    }
+    buffer.sort(rowOrder);
+    Path runFile = Files.createTempFile("report-sort-run-", ".bin");
+    runs.add(new SortedRun(runFile, buffer.size()));
+    try (DataOutputStream out = openRunForWrite(runFile)) {
+      for (String[] row : buffer) {
+        writeRow(out, row);
+      }
+    }
+    buffer.clear();
+    bufferBytes = 0;
+  }
+
+  private long merge(List<SortedRun> mergedRuns, RowWriter writer) throws IOException {
+    List<RunReader> readers = new ArrayList<>();
+    try {
+      PriorityQueue<RunReader> heads = new PriorityQueue<>(mergedRuns.size(),
+          (left, right) -> rowOrder.compare(left.current, right.current));
+      for (SortedRun run : mergedRuns) {
+        RunReader reader = new RunReader(run);
+        readers.add(reader);
+        if (reader.next()) {
+          heads.add(reader);
+        }
+      }
+
+      long mergedRows = 0;
+      while (!heads.isEmpty()) {
+        RunReader reader = heads.poll();
+        writer.write(reader.current);
+        mergedRows++;
+        if (reader.next()) {
+          heads.add(reader);
+        }
+      }
+      return mergedRows;
+    } finally {
+      for (RunReader reader : readers) {
+        reader.in.close();
+      }
+    }
+  }
+
+  /**
+   * Reads the rows of one sorted run back in order.
+   */
+  private static final class RunReader {
+    private final DataInputStream in;
+    private long remainingRows;
+    private String[] current;
+
+    private RunReader(SortedRun run) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run.file()), RUN_BUFFER_BYTES));
+      this.remainingRows = run.rowCount();
+    }
+
+    private boolean next() throws IOException {
+      if (remainingRows == 0) {
+        current = null;
+        return false;
+      }
+      current = readRow(in);
+      remainingRows--;
+      return true;
+    }
+  }
+
+  private static DataOutputStream openRunForWrite(Path runFile) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(runFile), RUN_BUFFER_BYTES));
+  }
+
+  private static void writeRow(DataOutputStream out, String[] row) throws IOException {
+    writeVarInt(out, row.length);
+    for (String value : row) {
+      if (value == null) {
+        writeVarInt(out, 0);
+      } else {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+      }
+    }
+  }
+
+  private static String[] readRow(DataInputStream in) throws IOException {
+    String[] row = new String[readVarInt(in)];
+    for (int i = 0; i < row.length; i++) {
+      int length = readVarInt(in);
+      if (length > 0) {
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        row[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+    }
+    return row;
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new EOFException("Malformed length in sorted run");
+  }
+
+  private static long estimateBytes(String[] row) {
+    long bytes = ROW_OVERHEAD_BYTES + 4L * row.length;
+    for (String value : row) {
+      if (value != null) {
+        bytes += VALUE_OVERHEAD_BYTES + value.length();
+      }
+    }
+    return bytes;
+  }
+
+  private static Comparator<String[]> keyOrder(int keyCount) {
+    return (left, right) -> {
+      for (int i = left.length - keyCount; i < left.length; i++) {
+        int compared = compareNullsLast(left[i], right[i]);
+        if (compared != 0) {
+          return compared;
+        }
+      }
+      return 0;
+    };
+  }
+
+  private static int compareNullsLast(String left, String right) {
+    if (left == null) {
+      return right == null ? 0 : 1;
+    }
+    return right == null ? -1 : left.compareTo(right);
+  }
+
+  private static void deleteRunFile(Path runFile) {
+    try {
+      Files.deleteIfExists(runFile);
+    } catch (IOException ex) {
+      log.warn("Failed to delete temp file {}: {}", runFile, ex.getMessage());
+    }
+  }
+}
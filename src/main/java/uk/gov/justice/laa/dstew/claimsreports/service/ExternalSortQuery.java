@@ -0,0 +1,24 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.util.List;
+
+/**
+ * Describes a report export that is read from the database unordered and sorted by the application with
+ * {@link ExportEngine#EXTERNAL_SORT}. Leaving the sort out of the query lets PostgreSQL scan the data source with
+ * parallel workers rather than sort it, spilling to its own temporary files once the sort outgrows {@code work_mem}.
+ *
+ * @param selectList the columns to export
+ * @param dataSourceName the data source to export
+ * @param sortColumns the columns that order the export, selected after the exported columns
+ */
+public record ExternalSortQuery(String selectList, String dataSourceName, List<String> sortColumns) {
+
+  /**
+   * Reads every row of the export, with its sort key, in whatever order the database finds quickest.
+   *
+   * @return the query, with no {@code ORDER BY}
+   */
+  public String unorderedQuery() {
+    return "SELECT " + selectList + ", " + String.join(", ", sortColumns) + " FROM " + dataSourceName;
+  }
+}
@@ -0,0 +1,50 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a report export that can be read in pages with {@link ExportEngine#KEYSET}, each page starting after the
+ * key of the last row written rather than at an offset, so every page is a short query served by the export index.
+ *
+ * <p>The key columns are selected after the exported columns, so the key of the last row of a page can be read back.
+ * Rows whose first key column is null sort last and are read in a second pass, ordered by the remaining key columns,
+ * as a row comparison cannot step past a null.
+ *
+ * @param selectList the columns to export
+ * @param dataSourceName the data source to export
+ * @param keyColumns the columns that order the export and are unique together. Only the first may be null
+ */
+public record KeysetQuery(String selectList, String dataSourceName, List<String> keyColumns) {
+
+  /**
+   * Reads the next page of the export.
+   *
+   * @param nullLeadingKey whether the page is in the second pass, over the rows where the first key column is null
+   * @param afterKey whether the page starts after a key, bound to the parameters ahead of the page size. In the
+   *     second pass the first key column is not bound, as it is null
+   * @return the query for the page, with the page size bound to the last parameter
+   */
+  public String pageQuery(boolean nullLeadingKey, boolean afterKey) {
+    String leadingKey = keyColumns.getFirst();
+    List<String> orderKeys = nullLeadingKey ? keyColumns.subList(1, keyColumns.size()) : keyColumns;
+
+    StringBuilder query = new StringBuilder("SELECT ").append(selectList).append(", ")
+        .append(String.join(", ", keyColumns))
+        .append(" FROM ").append(dataSourceName)
+        .append(" WHERE ").append(leadingKey).append(nullLeadingKey ? " IS NULL" : " IS NOT NULL");
+    if (afterKey) {
+      if (orderKeys.isEmpty()) {
+        // The key is unique, so there is at most one row where its only column is null
+        query.append(" AND false");
+      } else {
+        query.append(" AND (").append(String.join(", ", orderKeys)).append(") > (")
+            .append(String.join(", ", Collections.nCopies(orderKeys.size(), "?"))).append(')');
+      }
+    }
+    if (!orderKeys.isEmpty()) {
+      query.append(" ORDER BY ").append(String.join(", ", orderKeys));
+    }
+    return query.append(" LIMIT ?").toString();
+  }
+}
@@ -0,0 +1,16 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.util.List;
+
+/**
+ * Describes a report whose columns vary, so it can be exported with {@link ExportEngine#PIVOT} by streaming its data
+ * in long format, one value per row, and pivoting it into columns as it is written.
+ *
+ * @param keyHeaders headers of the columns identifying each report row, which come first in every row
+ * @param columnsQuery returns the headers of the pivoted columns, in the order they appear in the report
+ * @param valuesQuery returns the key columns, then the 1-based number of the pivoted column and its value, sorted by
+ *     the key columns. It takes the pivoted column headers as a text array parameter, so the column numbers always
+ *     match the headers that were written, even if more columns appear while the report is exported
+ */
+public record PivotQuery(List<String> keyHeaders, String columnsQuery, String valuesQuery) {
+}
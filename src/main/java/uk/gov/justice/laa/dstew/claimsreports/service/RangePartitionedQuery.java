@@ -0,0 +1,45 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+/**
+ * Describes a report export that can be split into ranges of its leading sort column, so it can be exported with
+ * {@link ExportEngine#PARALLEL} by reading each range over its own connection and writing the ranges one after another.
+ *
+ * @param selectList the columns to export
+ * @param dataSourceName the data source to export
+ * @param rangeColumn the column the ranges are taken over, which must lead the sort order, ascending with nulls last
+ * @param orderByClause the sort order of the export
+ */
+public record RangePartitionedQuery(String selectList, String dataSourceName, String rangeColumn, String orderByClause) {
+
+  /**
+   * Counts the rows for each value of the range column, in sort order, so the ranges can be given similar sizes.
+   *
+   * @return a query returning each value of the range column, nulls included, and its row count
+   */
+  public String valueCountsQuery() {
+    return "SELECT " + rangeColumn + ", count(*) FROM " + dataSourceName + " GROUP BY " + rangeColumn
+        + " ORDER BY " + rangeColumn + " NULLS LAST";
+  }
+
+  /**
+   * Reads one range of the export. The first range has no lower bound and the last no upper bound, and takes the rows
+   * where the range column is null, which sort last.
+   *
+   * @param lowerBound whether the range starts at a value, bound to the first parameter
+   * @param upperBound whether the range ends before a value, bound to the next parameter
+   * @return the query for the range, sorted in the export order
+   */
+  public String rangeQuery(boolean lowerBound, boolean upperBound) {
+    String condition;
+    if (lowerBound && upperBound) {
+      condition = " WHERE " + rangeColumn + " >= ? AND " + rangeColumn + " < ?";
+    } else if (lowerBound) {
+      condition = " WHERE (" + rangeColumn + " >= ? OR " + rangeColumn + " IS NULL)";
+    } else if (upperBound) {
+      condition = " WHERE " + rangeColumn + " < ?";
+    } else {
+      condition = "";
+    }
+    return "SELECT " + selectList + " FROM " + dataSourceName + condition + " ORDER BY " + orderByClause;
+  }
+}
@@ -0,0 +1,51 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+/**
+ * Defines how a report's data source is refreshed.
+ */
+public enum RefreshMode {
+
+  /**
+   * The view is rebuilt from scratch under an exclusive lock, so nothing can read it until the refresh completes.
+   * Rows are stored in the order of the view's query, which keeps exports reading them sequentially.
+   */
+  STANDARD,
+
+  /**
+   * The view is rebuilt alongside the current contents and only the rows that differ are written, so readers carry on
+   * using the view during the refresh. Needs a unique index on the view, and writes far less when little has changed,
+   * but changed rows are stored out of export order until the next standard refresh.
+   */
+  CONCURRENT,
+
+  /**
+   * A copy of the data source is built alongside it under a shadow name, indexed and analysed, then swapped in by
+   * dropping the current data source and renaming the copy. Readers carry on using the current data source while the
+   * copy is built and are only blocked for the moment the swap takes. Handled by {@link AbstractReportService}; the
+   * refresh command is only used to build the data source in place the first time, when there is nothing to swap.
+   */
+  SHADOW_SWAP,
+
+  /**
+   * The report is read from a table that is kept up to date by replacing just the rows of the claims that changed
+   * since the last refresh, with a periodic full rebuild as a safety net. Refresh cost follows the volume of changes
+   * rather than the size of the report. Only reports with an incrementally maintained table support it.
+   */
+  INCREMENTAL;
+
+  /**
+   * Builds the command to refresh a materialized view in this mode. The view is analysed afterwards so the planner
+   * has up-to-date statistics for the export.
+   *
+   * @param viewName the schema qualified name of the materialized view
+   * @return the refresh command
+   * @throws IllegalStateException for {@link #INCREMENTAL}, which has no materialized view to refresh
+   */
+  public String refreshCommand(String viewName) {
+    if (this == INCREMENTAL) {
+      throw new IllegalStateException(viewName + " cannot be maintained incrementally");
+    }
+    String concurrently = this == CONCURRENT ? "CONCURRENTLY " : "";
+    return "REFRESH MATERIALIZED VIEW " + concurrently + viewName + "; ANALYZE " + viewName;
+  }
+}
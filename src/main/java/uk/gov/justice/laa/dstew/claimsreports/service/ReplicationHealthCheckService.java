@@ -4,12 +4,21 @@ import java.math.BigInteger;
 import java.sql.Timestamp;
 import java.time.Clock;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import uk.gov.justice.laa.dstew.claimsreports.dto.ReplicationHealthReport;
@@ -34,6 +43,13 @@ public class ReplicationHealthCheckService {
 
   private final JdbcTemplate jdbcTemplate;
   private final Clock clock; //This is the system clock for normal prod use, overridden by a static one for tests.
+  //Upper bound on the number of tables counted at the same time, each count holds a database connection
+  @Value("${replication-check.max-parallel-counts:4}")
+  private int maxParallelCounts = 4;
+  //Days between full recounts of each table, counts in between only cover rows created since the last watermark
+  @Value("${replication-check.full-recount-interval-days:7}")
+  private int fullRecountIntervalDays = 7;
+
   /**
    * Checks the replication health for a specific date, typically the previous day.
    * This method evaluates various metrics and conditions such as missing tables,
@@ -58,7 +74,7 @@ public class ReplicationHealthCheckService {
 
     checkWalProgress(summaries, report);
     checkMissingTables(publicationTables, summaries, report);
-    checkCounts(summaries, startOfDay, endOfDay, report);
+    checkCounts(summaries, summaryDate, startOfDay, endOfDay, report);
 
     report.setHealthy(report.isWalLsnOk() && report.isTableSummaryOk() && report.isTableCountsOk());
 
@@ -135,40 +151,209 @@ public class ReplicationHealthCheckService {
         .compareTo(new BigInteger(wal2.replace("/", ""), 16));
   }
 
-  private void checkCounts(Map<String, ReplicationSummary> summaries,
+  /**
+   * Counts the rows created before the end of the summary day and the rows updated during it for every table,
+   * comparing them with the counts recorded by the source database. The tables are counted in parallel, bounded
+   * by {@code maxParallelCounts}.
+   *
+   * <p>Where a table has a count watermark from an earlier healthy check, only the rows created since the watermark
+   * are counted and added to the verified count, so the check grows with the daily change rather than the size of
+   * the table. The whole table is recounted when there is no usable watermark, when the last full recount is older
+   * than {@code fullRecountIntervalDays}, or when the incremental count does not match, in case the stored baseline
+   * has drifted. Tables whose counts match have their watermark moved on to the end of the summary day.
+   */
+  private void checkCounts(Map<String, ReplicationSummary> summaries, LocalDate summaryDate,
       Timestamp startOfDay, Timestamp endOfDay,
       ReplicationHealthReport report) {
     report.setTableCountsOk(true);
-    for (ReplicationSummary summary : summaries.values()) {
-      String countSql = String.format("SELECT count(*) FROM %s WHERE created_on < ?", summary.tableName());
-      String updatedSql = String.format("SELECT count(*) FROM %s WHERE updated_on BETWEEN ? AND ?", summary.tableName());
+    if (summaries.isEmpty()) {
+      return;
+    }
 
-      Long actualRecordCount = jdbcTemplate.query(countSql, rs -> {
-        if (rs.next()) {
-          return rs.getLong(1);
-        }
-        return 0L;
-      }, endOfDay);
+    long startTime = System.currentTimeMillis();
+    Map<String, CountWatermark> watermarks = getCountWatermarks();
+    Map<String, CompletableFuture<TableCounts>> countsByTable = new LinkedHashMap<>();
+    int workerCount = Math.max(1, Math.min(maxParallelCounts, summaries.size()));
+    ThreadFactory workerFactory = Thread.ofVirtual().name("replication-count-", 1).factory();
 
-      Long actualUpdatedCount = jdbcTemplate.query(updatedSql, rs -> {
-        if (rs.next()) {
-          return rs.getLong(1);
-        }
-        return 0L;
-      }, startOfDay, endOfDay);
+    // Closing the executor waits for every table to be counted
+    try (ExecutorService executor = Executors.newFixedThreadPool(workerCount, workerFactory)) {
+      for (ReplicationSummary summary : summaries.values()) {
+        CountWatermark watermark = usableWatermark(watermarks.get(summary.tableName()), summaryDate, endOfDay);
+        countsByTable.put(summary.tableName(), CompletableFuture.supplyAsync(
+            () -> countTable(summary, watermark, startOfDay, endOfDay), executor));
+      }
+    }
+
+    List<CountWatermark> verifiedWatermarks = new ArrayList<>();
+    for (ReplicationSummary summary : summaries.values()) {
+      TableCounts actualCounts = awaitCounts(countsByTable.get(summary.tableName()));
 
-      if (!Objects.equals(actualRecordCount, summary.recordCount())
-          || !Objects.equals(actualUpdatedCount, summary.updatedCount())) {
+      if (matches(summary, actualCounts)) {
+        CountWatermark previous = watermarks.get(summary.tableName());
+        verifiedWatermarks.add(new CountWatermark(summary.tableName(), actualCounts.recordCount(), endOfDay,
+            actualCounts.fullRecount() || previous == null ? summaryDate : previous.fullRecountOn()));
+      } else {
         report.setTableCountsOk(false);
         report.addFailure(summary.tableName(),
             String.format("Count mismatch — expected (%d/%d), actual (%d/%d)",
                 summary.recordCount(), summary.updatedCount(),
-                actualRecordCount, actualUpdatedCount));
+                actualCounts == null ? null : actualCounts.recordCount(),
+                actualCounts == null ? null : actualCounts.updatedCount()));
       }
     }
+    saveCountWatermarks(verifiedWatermarks);
+    log.info("Counted rows in {} replicated tables in {} ms", summaries.size(), System.currentTimeMillis() - startTime);
+  }
+
+  private boolean matches(ReplicationSummary summary, TableCounts actualCounts) {
+    return actualCounts != null
+        && actualCounts.recordCount() == summary.recordCount()
+        && actualCounts.updatedCount() == summary.updatedCount();
+  }
+
+  private TableCounts awaitCounts(CompletableFuture<TableCounts> counts) {
+    try {
+      return counts.join();
+    } catch (CompletionException e) {
+      // Surface query failures as they were thrown, the same as when the tables were counted one by one
+      throw e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+  }
+
+  private TableCounts countTable(ReplicationSummary summary, CountWatermark watermark,
+      Timestamp startOfDay, Timestamp endOfDay) {
+    long startTime = System.currentTimeMillis();
+    if (watermark != null) {
+      TableCounts counts = countSinceWatermark(summary.tableName(), watermark, startOfDay, endOfDay);
+      if (matches(summary, counts)) {
+        log.info("Counted rows in {} since {} in {} ms", summary.tableName(), watermark.watermark(),
+            System.currentTimeMillis() - startTime);
+        return counts;
+      }
+      log.info("Incremental count for {} does not match, recounting the whole table", summary.tableName());
+    }
+
+    TableCounts counts = countWholeTable(summary.tableName(), startOfDay, endOfDay);
+    log.info("Counted all rows in {} in {} ms", summary.tableName(), System.currentTimeMillis() - startTime);
+    return counts;
+  }
+
+  private TableCounts countWholeTable(String tableName, Timestamp startOfDay, Timestamp endOfDay) {
+    return jdbcTemplate.query(wholeTableCountSql(tableName), rs -> {
+      if (rs.next()) {
+        return new TableCounts(rs.getLong("record_count"), rs.getLong("updated_count"));
+      }
+      return new TableCounts(0L, 0L);
+    }, endOfDay, startOfDay, endOfDay);
+  }
+
+  private TableCounts countSinceWatermark(String tableName, CountWatermark watermark,
+      Timestamp startOfDay, Timestamp endOfDay) {
+    return jdbcTemplate.query(sinceWatermarkCountSql(tableName), rs -> {
+      if (rs.next()) {
+        return new TableCounts(watermark.verifiedCount() + rs.getLong("created_count"), rs.getLong("updated_count"), false);
+      }
+      return null;
+    }, watermark.watermark(), endOfDay, startOfDay, endOfDay);
+  }
+
+  /**
+   * Counts every row of a table created before the end of the day, and those updated during it.
+   * Takes the end of the day, the start of the day and the end of the day as parameters.
+   */
+  static String wholeTableCountSql(String tableName) {
+    return String.format("""
+            SELECT count(*) FILTER (WHERE created_on < ?) AS record_count,
+                   count(*) FILTER (WHERE updated_on BETWEEN ? AND ?) AS updated_count
+            FROM %s
+            """, tableName);
+  }
+
+  /**
+   * Counts the rows of a table created since the watermark, up to the end of the day, and those updated during the
+   * day. Takes the watermark, the end of the day, the start of the day and the end of the day as parameters.
+   */
+  static String sinceWatermarkCountSql(String tableName) {
+    // Separate sub-queries so each count can use the index on its own column
+    return String.format("""
+            SELECT (SELECT count(*) FROM %1$s WHERE created_on >= ? AND created_on < ?) AS created_count,
+                   (SELECT count(*) FROM %1$s WHERE updated_on BETWEEN ? AND ?) AS updated_count
+            """, tableName);
+  }
+
+  private CountWatermark usableWatermark(CountWatermark watermark, LocalDate summaryDate, Timestamp endOfDay) {
+    if (watermark == null || watermark.watermark().after(endOfDay) || watermark.fullRecountOn() == null) {
+      return null;
+    }
+    if (ChronoUnit.DAYS.between(watermark.fullRecountOn(), summaryDate) >= fullRecountIntervalDays) {
+      log.info("Last full recount of {} was on {}, recounting the whole table", watermark.tableName(),
+          watermark.fullRecountOn());
+      return null;
+    }
+    return watermark;
+  }
+
+  private Map<String, CountWatermark> getCountWatermarks() {
+    if (fullRecountIntervalDays <= 0) {
+      return Map.of();
+    }
+    String sql = """
+            SELECT table_name, verified_count, watermark, full_recount_on
+            FROM claims.replication_count_watermark
+            """;
+    try {
+      Map<String, CountWatermark> watermarks = jdbcTemplate.query(sql, rs -> {
+        Map<String, CountWatermark> map = new HashMap<>();
+        while (rs.next()) {
+          map.put(rs.getString("table_name"),
+              new CountWatermark(
+                  rs.getString("table_name"),
+                  rs.getLong("verified_count"),
+                  rs.getTimestamp("watermark"),
+                  rs.getObject("full_recount_on", LocalDate.class)));
+        }
+        return map;
+      });
+      return watermarks == null ? Map.of() : watermarks;
+    } catch (DataAccessException e) {
+      log.warn("Could not read replication count watermarks, recounting every table: {}", e.getMessage());
+      return Map.of();
+    }
+  }
+
+  private void saveCountWatermarks(List<CountWatermark> watermarks) {
+    if (fullRecountIntervalDays <= 0 || watermarks.isEmpty()) {
+      return;
+    }
+    String sql = """
+            INSERT INTO claims.replication_count_watermark (table_name, verified_count, watermark, full_recount_on, verified_on)
+            VALUES (?, ?, ?, ?, now())
+            ON CONFLICT (table_name) DO UPDATE
+            SET verified_count = EXCLUDED.verified_count,
+                watermark = EXCLUDED.watermark,
+                full_recount_on = EXCLUDED.full_recount_on,
+                verified_on = EXCLUDED.verified_on
+            """;
+    try {
+      jdbcTemplate.batchUpdate(sql, watermarks.stream()
+          .map(watermark -> new Object[] {watermark.tableName(), watermark.verifiedCount(), watermark.watermark(),
+              watermark.fullRecountOn()})
+          .toList());
+    } catch (DataAccessException e) {
+      log.warn("Could not save replication count watermarks, the next check will recount every table: {}", e.getMessage());
+    }
   }
 
   // --- DTOs ---
 
   record ReplicationSummary(String tableName, long recordCount, long updatedCount, String walLsn) {}
+
+  record TableCounts(long recordCount, long updatedCount, boolean fullRecount) {
+    TableCounts(long recordCount, long updatedCount) {
+      this(recordCount, updatedCount, true);
+    }
+  }
+
+  record CountWatermark(String tableName, long verifiedCount, Timestamp watermark, LocalDate fullRecountOn) {}
 }
\ No newline at end of file
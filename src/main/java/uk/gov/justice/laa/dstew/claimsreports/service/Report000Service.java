@@ -1,6 +1,8 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
@@ -17,19 +19,41 @@ import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
 @Service
 public class Report000Service extends AbstractReportService {
 
+  @Value("${reports.report000.export-engine:JDBC}")
+  private ExportEngine exportEngine = ExportEngine.JDBC;
+  @Value("${reports.report000.refresh-mode:STANDARD}")
+  private RefreshMode refreshMode = RefreshMode.STANDARD;
+  //Days between full rebuilds of the incrementally maintained table, zero rebuilds it on every refresh
+  @Value("${reports.report000.full-rebuild-interval-days:7}")
+  private int fullRebuildIntervalDays = 7;
+
   public Report000Service(JdbcTemplate jdbcTemplate,
-                          S3ClientWrapper s3ClientWrapper, CsvCreationService csvCreationService) {
-    super(jdbcTemplate, s3ClientWrapper, csvCreationService);
+                          S3ClientWrapper s3ClientWrapper, CsvCreationService csvCreationService,
+                          SharedSnapshotService sharedSnapshotService) {
+    super(jdbcTemplate, s3ClientWrapper, csvCreationService, sharedSnapshotService);
   }
 
+  /**
+   * The incrementally maintained table when the refresh mode is {@link RefreshMode#INCREMENTAL}, otherwise the
+   * materialized view. Both are built from the claims.vw_report_000 view and have the same columns and indexes.
+   */
   @Override
   protected String getDataSourceName() {
-    return "claims.mvw_report_000";
+    return refreshMode == RefreshMode.INCREMENTAL ? "claims.report_000" : "claims.mvw_report_000";
   }
 
   @Override
   protected String getRefreshCommand() {
-    return "REFRESH MATERIALIZED VIEW claims.mvw_report_000";
+    if (refreshMode == RefreshMode.INCREMENTAL) {
+      return "SELECT claims.refresh_report000(" + fullRebuildIntervalDays + ")";
+    }
+    //The unique index on row_key allows the view to be refreshed concurrently when configured
+    return refreshMode.refreshCommand("claims.mvw_report_000");
+  }
+
+  @Override
+  protected RefreshMode getRefreshMode() {
+    return refreshMode;
   }
 
   @Override
@@ -42,10 +66,61 @@ public class Report000Service extends AbstractReportService {
     return "REPORT000";
   }
 
+  /**
+   * Matches the ix_mvw_report_000_export_order and ix_report_000_export_order indexes, so the export is read in
+   * index order without a sort. The sort key holds the submission period as YYYYMM, which orders the same as the formatted period.
+   */
   @Override
   protected String getOrderByClause() {
-    return " to_char(to_date(\"Submission Period\", 'MON-YYYY'), 'YYYYMM') NULLS LAST,"
+    return " sort_submission_period NULLS LAST,"
         + "    \"Office Account Number\","
         + "    \"Line Number\"";
   }
-}
\ No newline at end of file
+
+  /**
+   * The parallel export is split by submission period, which leads the sort order and is indexed.
+   */
+  @Override
+  protected String getRangeColumn() {
+    return "sort_submission_period";
+  }
+
+  /**
+   * The sort key follows the export order, with the row key added to break ties between rows.
+   */
+  @Override
+  protected List<String> getSortKeyColumns() {
+    return List.of("sort_submission_period", "\"Office Account Number\"", "\"Line Number\"", "row_key");
+  }
+
+  @Override
+  protected List<String> getInternalColumns() {
+    return List.of("sort_submission_period", "row_key", "claim_id", "bulk_submission_created_on");
+  }
+
+  @Override
+  protected List<String> getSourceTables() {
+    return List.of(
+        "claims.bulk_submission",
+        "claims.submission",
+        "claims.claim",
+        "claims.claim_case",
+        "claims.claim_summary_fee",
+        "claims.calculated_fee_detail",
+        "claims.client");
+  }
+
+  /**
+   * The report only covers bulk submissions from the last three years, so it also changes when
+   * a submission ages out of that window, even if nothing has been replicated.
+   */
+  @Override
+  protected String getChangeMarkerSql() {
+    return "SELECT count(*) FROM claims.bulk_submission WHERE created_on < (CURRENT_DATE - INTERVAL '3 years')";
+  }
+
+  @Override
+  protected ExportEngine getExportEngine() {
+    return exportEngine;
+  }
+}
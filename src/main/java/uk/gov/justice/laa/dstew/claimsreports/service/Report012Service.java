@@ -1,6 +1,8 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
@@ -17,9 +19,15 @@ import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
 @Service
 public class Report012Service extends AbstractReportService {
 
+  @Value("${reports.report012.export-engine:JDBC}")
+  private ExportEngine exportEngine = ExportEngine.JDBC;
+  @Value("${reports.report012.refresh-mode:STANDARD}")
+  private RefreshMode refreshMode = RefreshMode.STANDARD;
+
   public Report012Service(JdbcTemplate jdbcTemplate,
-                          S3ClientWrapper s3ClientWrapper, CsvCreationService csvCreationService) {
-    super(jdbcTemplate, s3ClientWrapper, csvCreationService);
+                          S3ClientWrapper s3ClientWrapper, CsvCreationService csvCreationService,
+                          SharedSnapshotService sharedSnapshotService) {
+    super(jdbcTemplate, s3ClientWrapper, csvCreationService, sharedSnapshotService);
   }
 
   @Override
@@ -29,7 +37,13 @@ public class Report012Service extends AbstractReportService {
 
   @Override
   protected String getRefreshCommand() {
-    return "REFRESH MATERIALIZED VIEW claims.mvw_report_012";
+    //The unique index on row_key allows the view to be refreshed concurrently when configured
+    return refreshMode.refreshCommand("claims.mvw_report_012");
+  }
+
+  @Override
+  protected RefreshMode getRefreshMode() {
+    return refreshMode;
   }
 
   @Override
@@ -42,11 +56,40 @@ public class Report012Service extends AbstractReportService {
     return "REPORT012";
   }
 
+  /**
+   * Matches the ix_mvw_report_012_export_order index, so the export is read in index order without a sort.
+   * The sort key holds the submission month as YYYYMM, which orders the same as the formatted month.
+   */
   @Override
   protected String getOrderByClause() {
     return " \"Provider office account number\","
-        + "    to_char(to_date(\"Submission month\", 'MON-YYYY'), 'YYYYMM'),"
+        + "    sort_submission_month,"
         + "    \"Area of law\"";
   }
 
-}
\ No newline at end of file
+  /**
+   * The sort key follows the export order, with the row key added to break ties between rows.
+   */
+  @Override
+  protected List<String> getSortKeyColumns() {
+    return List.of("\"Provider office account number\"", "sort_submission_month", "\"Area of law\"", "row_key");
+  }
+
+  @Override
+  protected List<String> getInternalColumns() {
+    return List.of("sort_submission_month", "row_key");
+  }
+
+  @Override
+  protected List<String> getSourceTables() {
+    return List.of(
+        "claims.submission",
+        "claims.claim",
+        "claims.calculated_fee_detail");
+  }
+
+  @Override
+  protected ExportEngine getExportEngine() {
+    return exportEngine;
+  }
+}
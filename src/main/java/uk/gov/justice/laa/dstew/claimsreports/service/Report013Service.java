@@ -1,6 +1,8 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
+import java.util.List;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
@@ -17,9 +19,28 @@ import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
 @Service
 public class Report013Service extends AbstractReportService {
 
+  private static final PivotQuery PIVOT_QUERY = new PivotQuery(
+      List.of("Provider Office Account Number", "Area of Law"),
+      "SELECT submission_period FROM claims.vw_report_013_periods ORDER BY column_number",
+      """
+          SELECT mt.office_account_number, mt.area_of_law, p.column_number, ROUND(mt.month_total, 2)::TEXT
+          FROM claims.vw_report_013_monthly_totals mt
+          JOIN unnest(?::text[]) WITH ORDINALITY AS p(submission_period, column_number)
+            ON p.submission_period = mt.submission_period
+          ORDER BY 1, 2
+          """);
+
+  //JDBC and COPY export the claims.report_013 table, PIVOT exports without building it
+  @Value("${reports.report013.export-engine:JDBC}")
+  private ExportEngine exportEngine = ExportEngine.JDBC;
+  //Only STANDARD and SHADOW_SWAP apply, as the data source is a table rather than a materialized view
+  @Value("${reports.report013.refresh-mode:STANDARD}")
+  private RefreshMode refreshMode = RefreshMode.STANDARD;
+
   public Report013Service(JdbcTemplate jdbcTemplate,
-                          S3ClientWrapper s3ClientWrapper, CsvCreationService csvCreationService) {
-    super(jdbcTemplate, s3ClientWrapper, csvCreationService);
+                          S3ClientWrapper s3ClientWrapper, CsvCreationService csvCreationService,
+                          SharedSnapshotService sharedSnapshotService) {
+    super(jdbcTemplate, s3ClientWrapper, csvCreationService, sharedSnapshotService);
   }
 
   @Override
@@ -36,6 +57,31 @@ public class Report013Service extends AbstractReportService {
     return "SELECT claims.refresh_report013()"; //The "SELECT" statement actually runs the stored function
   }
 
+  /**
+   * The table only needs building when it is exported, the pivot engine reads the monthly totals directly.
+   */
+  @Override
+  public void refreshDataSource() {
+    if (exportEngine == ExportEngine.PIVOT) {
+      log.info("{} is pivoted as it is exported, so there is no table to refresh", getReportName());
+      return;
+    }
+    super.refreshDataSource();
+  }
+
+  @Override
+  protected RefreshMode getRefreshMode() {
+    return refreshMode;
+  }
+
+  /**
+   * Builds the table under the shadow name with the same stored function.
+   */
+  @Override
+  protected String getShadowBuildCommand(String shadowName) {
+    return "SELECT claims.build_report013('" + shadowName + "')";
+  }
+
   @Override
   protected String getReportFileName() {
     return "report_013.csv";
@@ -50,4 +96,30 @@ public class Report013Service extends AbstractReportService {
   protected String getOrderByClause() {
     return " \"Provider Office Account Number\", \"Area of Law\"";
   }
-}
\ No newline at end of file
+
+  /**
+   * Each row of the report is one office and area of law, so the export order is already unique.
+   */
+  @Override
+  protected List<String> getSortKeyColumns() {
+    return List.of("\"Provider Office Account Number\"", "\"Area of Law\"");
+  }
+
+  @Override
+  protected List<String> getSourceTables() {
+    return List.of(
+        "claims.submission",
+        "claims.claim",
+        "claims.calculated_fee_detail");
+  }
+
+  @Override
+  protected ExportEngine getExportEngine() {
+    return exportEngine;
+  }
+
+  @Override
+  protected PivotQuery getPivotQuery() {
+    return PIVOT_QUERY;
+  }
+}
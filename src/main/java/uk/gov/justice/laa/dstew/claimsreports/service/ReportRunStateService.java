@@ -0,0 +1,134 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * The {@code ReportRunStateService} maintains the {@code claims.report_run_state} ledger, which records
+ * a change marker for each report at the time of its last successful build.
+ *
+ * <p>A report's change marker is made up of:
+ * - The latest applied schema migration, so a change to a data source definition always forces a rebuild.
+ * - The insert, update and delete counters and live row count of each source table from
+ *   {@code pg_stat_user_tables}. These count the changes applied by the replication subscription.
+ * - The result of the report's optional change marker query, for reports that cover a rolling window.
+ *
+ * <p>If the current marker matches the ledger, nothing the report depends on has moved since it was last
+ * built, so its refresh, export and upload can be skipped. Any problem reading the marker results in the
+ * report being rebuilt. A reset of the statistics counters also changes the marker, so it only ever costs
+ * an unnecessary rebuild.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReportRunStateService {
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * Captures the current change marker of the report's source tables.
+   * This should be called before the report's data source is refreshed, so any change replicated
+   * while the report is being built is picked up by the next run.
+   *
+   * @param service the report service
+   * @return the change marker, or {@code null} if the report has no source tables or the marker could not be read
+   */
+  public String captureChangeMarker(AbstractReportService service) {
+    List<String> sourceTables = service.getSourceTables();
+    if (sourceTables.isEmpty()) {
+      return null;
+    }
+
+    try {
+      List<String> tableMarkers = getTableMarkers(sourceTables);
+      if (tableMarkers.size() != sourceTables.size()) {
+        log.warn("Missing table statistics for some of the source tables of {}, it will be rebuilt", service.getReportName());
+        return null;
+      }
+
+      StringBuilder marker = new StringBuilder()
+          .append("schema=").append(getSchemaVersion());
+      tableMarkers.forEach(tableMarker -> marker.append(';').append(tableMarker));
+      if (service.getChangeMarkerSql() != null) {
+        marker.append(";report=").append(jdbcTemplate.queryForObject(service.getChangeMarkerSql(), String.class));
+      }
+      return marker.toString();
+    } catch (DataAccessException e) {
+      log.warn("Unable to capture change marker for {}, it will be rebuilt: {}", service.getReportName(), e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Checks whether the report was last built from source tables matching the given change marker.
+   *
+   * @param service the report service
+   * @param changeMarker the marker captured by {@link #captureChangeMarker(AbstractReportService)}
+   * @return {@code true} if the report is unchanged since its last successful build
+   */
+  public boolean isUnchanged(AbstractReportService service, String changeMarker) {
+    if (changeMarker == null) {
+      return false;
+    }
+
+    try {
+      List<String> lastChangeMarker = jdbcTemplate.queryForList(
+          "SELECT change_marker FROM claims.report_run_state WHERE report_name = ?",
+          String.class, service.getReportName());
+      return !lastChangeMarker.isEmpty() && Objects.equals(lastChangeMarker.getFirst(), changeMarker);
+    } catch (DataAccessException e) {
+      log.warn("Unable to read run state for {}, it will be rebuilt: {}", service.getReportName(), e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Records a successful build of the report in the ledger.
+   * A failure here is only logged, as the report itself has already been uploaded.
+   *
+   * @param service the report service
+   * @param changeMarker the marker captured before the report's data source was refreshed
+   */
+  public void recordSuccessfulBuild(AbstractReportService service, String changeMarker) {
+    if (changeMarker == null) {
+      return;
+    }
+
+    try {
+      jdbcTemplate.update("""
+              INSERT INTO claims.report_run_state (report_name, change_marker, built_on)
+              VALUES (?, ?, now())
+              ON CONFLICT (report_name)
+              DO UPDATE SET change_marker = EXCLUDED.change_marker, built_on = EXCLUDED.built_on
+              """, service.getReportName(), changeMarker);
+    } catch (DataAccessException e) {
+      log.warn("Unable to record run state for {}: {}", service.getReportName(), e.getMessage());
+    }
+  }
+
+  // --- Private helpers ---
+
+  private String getSchemaVersion() {
+    return jdbcTemplate.queryForObject(
+        "SELECT COALESCE(MAX(installed_rank), 0) FROM claims.flyway_schema_history WHERE success",
+        String.class);
+  }
+
+  private List<String> getTableMarkers(List<String> sourceTables) {
+    String placeholders = String.join(", ", Collections.nCopies(sourceTables.size(), "?"));
+    String sql = """
+            SELECT schemaname || '.' || relname || '='
+                       || (n_tup_ins + n_tup_upd + n_tup_del) || '/' || n_live_tup AS table_marker
+            FROM pg_stat_user_tables
+            WHERE schemaname || '.' || relname IN (%s)
+            ORDER BY schemaname, relname
+            """.formatted(placeholders);
+    return jdbcTemplate.queryForList(sql, String.class, sourceTables.toArray());
+  }
+}
@@ -0,0 +1,117 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * The {@code SharedSnapshotService} holds one snapshot of the database for a whole report run, so every report is
+ * built from the same point in replication rather than from whatever had been replicated when its refresh started.
+ *
+ * <p>A coordinating transaction is opened at REPEATABLE READ and its snapshot exported with
+ * {@code pg_export_snapshot()}. Each transaction that reads the replicated tables then imports the snapshot with
+ * {@code SET TRANSACTION SNAPSHOT} before anything else, and sees exactly the rows the coordinator saw.
+ * The coordinating transaction stays open, idle, until the run ends, as a snapshot can only be imported while the
+ * transaction that exported it is open. This holds back vacuum on the replicated tables for the length of the run.
+ *
+ * <p>Reports exported from a data source the run has refreshed do not import the snapshot: the data source only
+ * changes when it is refreshed, and a snapshot taken before the refresh would not see the refreshed rows.
+ *
+ * <p>Incremental refreshes do not import the snapshot either. They consume the queue of changed rows, and a row
+ * queued before the snapshot and changed again after it is not queued a second time, so rebuilding it from the
+ * snapshot would lose the later change until the next full rebuild. Those reports reflect the time of their refresh.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SharedSnapshotService {
+
+  private final DataSource dataSource;
+  private Connection coordinator;
+  private volatile String snapshotId;
+
+  /**
+   * Opens the coordinating transaction and exports its snapshot for the rest of the run.
+   *
+   * @return the id of the exported snapshot
+   */
+  public synchronized String open() {
+    if (coordinator != null) {
+      throw new IllegalStateException("A shared snapshot is already open");
+    }
+
+    Connection con = null;
+    try {
+      con = dataSource.getConnection();
+      con.setAutoCommit(false);
+      con.setReadOnly(true);
+      con.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+      try (Statement statement = con.createStatement();
+           ResultSet resultSet = statement.executeQuery("SELECT pg_export_snapshot()")) {
+        resultSet.next();
+        snapshotId = resultSet.getString(1);
+      }
+      coordinator = con;
+      log.info("Opened shared snapshot {} for the report run", snapshotId);
+      return snapshotId;
+    } catch (SQLException e) {
+      release(con);
+      throw new IllegalStateException("Failed to open a shared snapshot for the report run", e);
+    }
+  }
+
+  /**
+   * Gets the id of the shared snapshot.
+   *
+   * @return the snapshot id, or {@code null} if no shared snapshot is open
+   */
+  public String getSnapshotId() {
+    return snapshotId;
+  }
+
+  /**
+   * Makes the current transaction read from the shared snapshot, if one is open, which also sets it to
+   * REPEATABLE READ. This must be run before any other statement in the transaction.
+   *
+   * @param jdbcTemplate the template taking part in the current transaction
+   */
+  public void importInto(JdbcTemplate jdbcTemplate) {
+    String currentSnapshotId = snapshotId;
+    if (currentSnapshotId == null) {
+      return;
+    }
+    jdbcTemplate.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+    jdbcTemplate.execute("SET TRANSACTION SNAPSHOT '" + currentSnapshotId + "'");
+  }
+
+  /**
+   * Ends the coordinating transaction, after which the snapshot can no longer be imported.
+   * Transactions that have already imported it carry on reading from it until they end.
+   */
+  public synchronized void close() {
+    if (coordinator == null) {
+      return;
+    }
+    log.info("Releasing shared snapshot {}", snapshotId);
+    snapshotId = null;
+    release(coordinator);
+    coordinator = null;
+  }
+
+  private static void release(Connection con) {
+    if (con == null) {
+      return;
+    }
+    try (con) {
+      con.rollback();
+    } catch (SQLException e) {
+      log.warn("Failed to end the shared snapshot transaction cleanly: {}", e.getMessage());
+    }
+  }
+}
@@ -1,9 +1,29 @@
 package uk.gov.justice.laa.dstew.claimsreports.service.s3;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.extern.slf4j.Slf4j;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvUploadException;
 
@@ -13,22 +33,41 @@ import uk.gov.justice.laa.dstew.claimsreports.exception.CsvUploadException;
 @Slf4j
 public class S3ClientWrapper {
 
+  private static final int MAX_PARTS = 10_000;
+
   private final S3Client s3Client;
   private final String s3Bucket;
+  private final S3UploadSettings uploadSettings;
 
   public S3ClientWrapper(String awsRegion, String s3Bucket) {
-    this.s3Client = new S3ClientFactory().createS3Client(awsRegion);
-    this.s3Bucket = s3Bucket;
+    this(awsRegion, s3Bucket, S3UploadSettings.DEFAULTS);
+  }
+
+  public S3ClientWrapper(String awsRegion, String s3Bucket, S3UploadSettings uploadSettings) {
+    this(new S3ClientFactory().createS3Client(awsRegion), s3Bucket, uploadSettings);
   }
 
   public S3ClientWrapper(S3Client s3Client, String s3Bucket) {
+    this(s3Client, s3Bucket, S3UploadSettings.DEFAULTS);
+  }
+
+  /**
+   * Creates the wrapper around an existing client.
+   *
+   * @param s3Client - the client to use for all S3 calls
+   * @param s3Bucket - the bucket reports are uploaded to
+   * @param uploadSettings - how reports are split into parts when uploaded
+   */
+  public S3ClientWrapper(S3Client s3Client, String s3Bucket, S3UploadSettings uploadSettings) {
     this.s3Client = s3Client;
     this.s3Bucket = s3Bucket;
+    this.uploadSettings = uploadSettings;
   }
 
   /**
    * Upload a generated file to the S3 bucket.
-   * NOTE: This has a file size limit of 5GB. Above this we'd need to write a multi-part upload.
+   * Files up to the multipart threshold are sent with a single put; larger files are uploaded in parts,
+   * several at a time, so a large report is not limited to the throughput of one connection.
    *
    * @param fileToUpload - the CSV file we have just generated
    * @param desiredFileName - the file name to use on S3.
@@ -39,21 +78,139 @@ public class S3ClientWrapper {
       throw new CsvUploadException("Attempting to upload file that is not a CSV file: " + fileToUpload.getPath());
     }
 
-    var putRequest = PutObjectRequest.builder()
-        .bucket(s3Bucket)
-        .key("reports/" + desiredFileName)
-        .build();
+    String key = "reports/" + desiredFileName;
+    long fileSize = fileToUpload.length();
 
-    log.info("Uploading {} to S3 bucket {} with filename {}", fileToUpload.getPath(), s3Bucket, desiredFileName);
+    log.info("Uploading {} ({} bytes) to S3 bucket {} with filename {}", fileToUpload.getPath(), fileSize, s3Bucket, desiredFileName);
 
     long startTime = System.currentTimeMillis();
-    // Response to this request is just metadata, if it errors it will throw an AwsServiceException
-    s3Client.putObject(putRequest, RequestBody.fromFile(fileToUpload));
+    if (fileSize > uploadSettings.multipartThresholdBytes()) {
+      uploadFileInParts(fileToUpload, fileSize, key);
+    } else {
+      var putRequest = PutObjectRequest.builder()
+          .bucket(s3Bucket)
+          .key(key)
+          .build();
+      // Response to this request is just metadata, if it errors it will throw an AwsServiceException
+      s3Client.putObject(putRequest, RequestBody.fromFile(fileToUpload));
+    }
     long endTime = System.currentTimeMillis();
     long durationMilliseconds = endTime - startTime;
 
     log.info("Uploaded {} to S3 bucket {} with filename {} in {} ms", fileToUpload.getPath(), s3Bucket, desiredFileName, durationMilliseconds);
   }
 
-}
+  /**
+   * Opens a stream that uploads everything written to it straight to the S3 bucket, without staging it on disk.
+   * The caller must finish with {@link S3MultipartUploadStream#complete()}, or {@link S3MultipartUploadStream#abort()}
+   * if the report could not be written.
+   *
+   * @param desiredFileName - the file name to use on S3.
+   * @return the upload stream
+   */
+  public S3MultipartUploadStream openUploadStream(String desiredFileName) {
+
+    if (!desiredFileName.endsWith(".csv")) {
+      throw new CsvUploadException("Attempting to upload file that is not a CSV file: " + desiredFileName);
+    }
 
+    log.info("Streaming upload to S3 bucket {} with filename {} in parts of {} bytes", s3Bucket, desiredFileName,
+        uploadSettings.partSizeBytes());
+    return new S3MultipartUploadStream(s3Client, s3Bucket, "reports/" + desiredFileName, uploadSettings);
+  }
+
+  private void uploadFileInParts(File fileToUpload, long fileSize, String key) {
+    // S3 allows at most 10,000 parts, so very large files need bigger parts than configured
+    int partSize = (int) Math.max(uploadSettings.partSizeBytes(), (fileSize + MAX_PARTS - 1) / MAX_PARTS);
+    int partCount = (int) ((fileSize + partSize - 1) / partSize);
+
+    String uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+        .bucket(s3Bucket)
+        .key(key)
+        .build()).uploadId();
+    log.info("Started multipart upload {} of {} parts of {} bytes to {}", uploadId, partCount, partSize, key);
+
+    var partUploader = new S3PartUploader(s3Client, s3Bucket, key, uploadId, uploadSettings.maxPartAttempts());
+    // Each in-flight part holds its own buffer, so limiting the threads also limits the memory used
+    BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(uploadSettings.maxInFlightParts());
+    for (int i = 0; i < uploadSettings.maxInFlightParts(); i++) {
+      freeBuffers.add(new byte[partSize]);
+    }
+
+    List<CompletableFuture<CompletedPart>> parts = new ArrayList<>(partCount);
+    AtomicBoolean partFailed = new AtomicBoolean();
+    try (FileChannel channel = FileChannel.open(fileToUpload.toPath(), StandardOpenOption.READ);
+         ExecutorService partExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("s3-part-upload-", 1).factory())) {
+      // Stop handing out parts once one has failed for good, as the upload will be aborted anyway
+      for (int partNumber = 1; partNumber <= partCount && !partFailed.get(); partNumber++) {
+        final int number = partNumber;
+        final long offset = (long) (partNumber - 1) * partSize;
+        final int length = (int) Math.min(partSize, fileSize - offset);
+        final byte[] buffer = freeBuffers.take();
+        parts.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            readFully(channel, buffer, offset, length);
+            return partUploader.upload(number, buffer, length);
+          } catch (RuntimeException e) {
+            partFailed.set(true);
+            throw e;
+          } finally {
+            freeBuffers.add(buffer);
+          }
+        }, partExecutor));
+      }
+      CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+
+      List<CompletedPart> completedParts = parts.stream()
+          .map(CompletableFuture::join)
+          .sorted(Comparator.comparingInt(CompletedPart::partNumber))
+          .toList();
+      s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+          .bucket(s3Bucket)
+          .key(key)
+          .uploadId(uploadId)
+          .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+          .build());
+    } catch (Exception e) {
+      log.error("Multipart upload {} to {} failed", uploadId, key, e);
+      abortMultipartUpload(key, uploadId);
+      // Let AWS exceptions through as they are, the same as for a single put
+      if (e instanceof CompletionException && e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      if (e instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      throw new CsvUploadException("Failed to upload " + key + " in parts: " + e.getMessage(), e);
+    }
+  }
+
+  private void readFully(FileChannel channel, byte[] buffer, long offset, int length) {
+    var byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+    try {
+      while (byteBuffer.hasRemaining()) {
+        if (channel.read(byteBuffer, offset + byteBuffer.position()) < 0) {
+          throw new CsvUploadException("Report file ended before byte " + (offset + length) + " had been read");
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void abortMultipartUpload(String key, String uploadId) {
+    try {
+      s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+          .bucket(s3Bucket)
+          .key(key)
+          .uploadId(uploadId)
+          .build());
+      log.info("Aborted multipart upload {} to {}", uploadId, key);
+    } catch (Exception e) {
+      log.warn("Failed to abort multipart upload {} to {}: {}", uploadId, key, e.getMessage());
+    }
+  }
+}
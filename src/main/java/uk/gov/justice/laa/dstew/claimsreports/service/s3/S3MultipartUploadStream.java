@@ -0,0 +1,237 @@
+package uk.gov.justice.laa.dstew.claimsreports.service.s3;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvUploadException;
+
+/**
+ * An {@link OutputStream} that uploads everything written to it to S3 as a multipart upload, without staging it on disk.
+ *
+ * <p>The bytes are cut into parts of the configured size. Each full part is uploaded on its own virtual thread while
+ * the writer carries on filling the next one. Part buffers come from a fixed pool, so a writer that gets ahead of the
+ * uploads waits for a buffer to be returned. This bounds both the memory used and the number of parts in flight.
+ *
+ * <p>Closing the stream does not finish the upload. Once everything has been written, {@link #complete()} uploads the
+ * last part and completes the upload. If anything went wrong, {@link #abort()} discards the uploaded parts so no
+ * partial report is left behind. A report smaller than one part is sent with a single {@code putObject} instead.
+ */
+@Slf4j
+public class S3MultipartUploadStream extends OutputStream {
+
+  private final S3Client s3Client;
+  private final String bucket;
+  private final String key;
+  private final BlockingQueue<byte[]> freeBuffers;
+  private final int maxPartAttempts;
+  private final ExecutorService partExecutor = Executors.newThreadPerTaskExecutor(
+      Thread.ofVirtual().name("s3-part-upload-", 1).factory());
+  private final List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  private String uploadId;
+  private S3PartUploader partUploader;
+  private byte[] currentBuffer;
+  private int position;
+  private long bytesWritten;
+  private boolean finished;
+
+  S3MultipartUploadStream(S3Client s3Client, String bucket, String key, S3UploadSettings settings) {
+    this.s3Client = s3Client;
+    this.bucket = bucket;
+    this.key = key;
+    this.maxPartAttempts = settings.maxPartAttempts();
+    // One buffer being filled plus one for every part that may be in flight
+    this.freeBuffers = new ArrayBlockingQueue<>(settings.maxInFlightParts() + 1);
+    for (int i = 0; i <= settings.maxInFlightParts(); i++) {
+      freeBuffers.add(new byte[settings.partSizeBytes()]);
+    }
+    this.currentBuffer = freeBuffers.poll();
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureWritable();
+    if (position == currentBuffer.length) {
+      uploadCurrentPart();
+    }
+    currentBuffer[position++] = (byte) b;
+    bytesWritten++;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int length) throws IOException {
+    ensureWritable();
+    while (length > 0) {
+      if (position == currentBuffer.length) {
+        uploadCurrentPart();
+      }
+      int chunk = Math.min(length, currentBuffer.length - position);
+      System.arraycopy(bytes, offset, currentBuffer, position, chunk);
+      position += chunk;
+      offset += chunk;
+      length -= chunk;
+      bytesWritten += chunk;
+    }
+  }
+
+  /**
+   * Closing only stops further writes; the upload is finished by {@link #complete()} or discarded by {@link #abort()}.
+   */
+  @Override
+  public void close() {
+    // Nothing to release until the upload is completed or aborted
+  }
+
+  /**
+   * Uploads the last part, waits for every part to finish and completes the multipart upload.
+   * If any part failed the upload is aborted instead.
+   *
+   * @throws CsvUploadException if the upload could not be completed
+   */
+  public void complete() {
+    if (finished) {
+      return;
+    }
+
+    try {
+      long startTime = System.currentTimeMillis();
+      if (uploadId == null) {
+        // Everything fitted in the first part, so there is no need for a multipart upload
+        s3Client.putObject(PutObjectRequest.builder().bucket(bucket).key(key).build(),
+            RequestBody.fromInputStream(new ByteArrayInputStream(currentBuffer, 0, position), position));
+      } else {
+        if (position > 0) {
+          uploadCurrentPart();
+        }
+        List<CompletedPart> completedParts = waitForParts();
+        s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+            .bucket(bucket)
+            .key(key)
+            .uploadId(uploadId)
+            .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+            .build());
+      }
+      finished = true;
+      log.info("Completed streaming upload of {} bytes in {} parts to {} in {} ms",
+          bytesWritten, Math.max(parts.size(), 1), key, System.currentTimeMillis() - startTime);
+    } catch (Exception e) {
+      log.error("Streaming upload to {} failed", key, e);
+      abort();
+      throw new CsvUploadException("Failed to complete streaming upload to " + key + ": " + e.getMessage(), e);
+    } finally {
+      partExecutor.close();
+    }
+  }
+
+  /**
+   * Abandons the upload, discarding any parts already sent to S3. Waits for parts still in flight to stop before
+   * aborting the multipart upload. Safe to call more than once.
+   */
+  public void abort() {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    parts.forEach(part -> part.cancel(true));
+    // Interrupt the parts still uploading and wait for them to stop, so none lands after the upload is aborted
+    partExecutor.shutdownNow();
+    partExecutor.close();
+
+    if (uploadId != null) {
+      try {
+        s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+            .bucket(bucket)
+            .key(key)
+            .uploadId(uploadId)
+            .build());
+        log.info("Aborted streaming upload to {}", key);
+      } catch (Exception e) {
+        log.warn("Failed to abort streaming upload {} to {}: {}", uploadId, key, e.getMessage());
+      }
+    }
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  // --- Private helpers ---
+
+  private void ensureWritable() throws IOException {
+    if (finished) {
+      throw new IOException("Streaming upload to " + key + " has already finished");
+    }
+    Throwable partFailure = failure.get();
+    if (partFailure != null) {
+      throw new IOException("Upload of a part to " + key + " failed", partFailure);
+    }
+  }
+
+  private void uploadCurrentPart() throws IOException {
+    if (uploadId == null) {
+      uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+          .bucket(bucket)
+          .key(key)
+          .build()).uploadId();
+      partUploader = new S3PartUploader(s3Client, bucket, key, uploadId, maxPartAttempts);
+      log.info("Started streaming upload {} to {}", uploadId, key);
+    }
+
+    final int partNumber = parts.size() + 1;
+    final byte[] partBuffer = currentBuffer;
+    final int partLength = position;
+    parts.add(CompletableFuture.supplyAsync(() -> uploadPart(partNumber, partBuffer, partLength), partExecutor));
+
+    try {
+      // Blocks while every other buffer is still being uploaded
+      currentBuffer = freeBuffers.take();
+      position = 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for a part of " + key + " to upload", e);
+    }
+  }
+
+  private CompletedPart uploadPart(int partNumber, byte[] partBuffer, int partLength) {
+    try {
+      return partUploader.upload(partNumber, partBuffer, partLength);
+    } catch (RuntimeException e) {
+      failure.compareAndSet(null, e);
+      throw e;
+    } finally {
+      freeBuffers.add(partBuffer);
+    }
+  }
+
+  private List<CompletedPart> waitForParts() {
+    try {
+      CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+    return parts.stream()
+        .map(CompletableFuture::join)
+        .sorted(Comparator.comparingInt(CompletedPart::partNumber))
+        .toList();
+  }
+}
@@ -0,0 +1,85 @@
+package uk.gov.justice.laa.dstew.claimsreports.service.s3;
+
+import java.io.ByteArrayInputStream;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Uploads the parts of a single multipart upload, retrying a failed part on its own rather than restarting the
+ * whole upload, and logging the throughput achieved for each part.
+ */
+@Slf4j
+class S3PartUploader {
+
+  private static final long RETRY_BACKOFF_MILLISECONDS = 500;
+
+  private final S3Client s3Client;
+  private final String bucket;
+  private final String key;
+  private final String uploadId;
+  private final int maxAttempts;
+
+  S3PartUploader(S3Client s3Client, String bucket, String key, String uploadId, int maxAttempts) {
+    this.s3Client = s3Client;
+    this.bucket = bucket;
+    this.key = key;
+    this.uploadId = uploadId;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Uploads one part from the start of the given buffer.
+   *
+   * @param partNumber the number of the part, starting from 1
+   * @param buffer holds the part's bytes
+   * @param length how many bytes of the buffer make up the part
+   * @return the completed part, ready to be passed to {@code completeMultipartUpload}
+   */
+  CompletedPart upload(int partNumber, byte[] buffer, int length) {
+    var request = UploadPartRequest.builder()
+        .bucket(bucket)
+        .key(key)
+        .uploadId(uploadId)
+        .partNumber(partNumber)
+        .contentLength((long) length)
+        .build();
+    // The provider hands out a fresh stream over the same bytes, so the part can be re-sent without copying it
+    var requestBody = RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, length), length,
+        "text/csv");
+
+    for (int attempt = 1; ; attempt++) {
+      long startTime = System.nanoTime();
+      try {
+        String eTag = s3Client.uploadPart(request, requestBody).eTag();
+        logThroughput(partNumber, length, System.nanoTime() - startTime);
+        return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+      } catch (SdkException e) {
+        if (attempt >= maxAttempts) {
+          throw e;
+        }
+        log.warn("Attempt {} to upload part {} of {} failed, retrying: {}", attempt, partNumber, key, e.getMessage());
+        backOff(attempt);
+      }
+    }
+  }
+
+  private void logThroughput(int partNumber, int length, long durationNanoseconds) {
+    long durationMilliseconds = Math.max(durationNanoseconds / 1_000_000, 1);
+    double megabytesPerSecond = (length / (1024.0 * 1024.0)) / (durationMilliseconds / 1000.0);
+    log.info("Uploaded part {} of {} ({} bytes) in {} ms at {} MB/s", partNumber, key, length, durationMilliseconds,
+        String.format("%.1f", megabytesPerSecond));
+  }
+
+  private void backOff(int attempt) {
+    try {
+      Thread.sleep(RETRY_BACKOFF_MILLISECONDS * (1L << (attempt - 1)));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting to retry part upload to " + key, e);
+    }
+  }
+}
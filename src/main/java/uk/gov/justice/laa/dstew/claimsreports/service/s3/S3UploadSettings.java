@@ -0,0 +1,26 @@
+package uk.gov.justice.laa.dstew.claimsreports.service.s3;
+
+/**
+ * Settings controlling how reports are uploaded to S3 in parts.
+ *
+ * @param partSizeBytes size of each multipart upload part; S3 requires at least 5MB for every part but the last
+ * @param maxInFlightParts the most parts uploaded at the same time, which also bounds the memory held in part buffers
+ * @param multipartThresholdBytes staged files larger than this are uploaded in parts rather than with a single put
+ * @param maxPartAttempts how many times a part is attempted before the whole upload is abandoned
+ */
+public record S3UploadSettings(int partSizeBytes, int maxInFlightParts, long multipartThresholdBytes, int maxPartAttempts) {
+
+  public static final int MIN_PART_SIZE_BYTES = 5 * 1024 * 1024;
+
+  public static final S3UploadSettings DEFAULTS = new S3UploadSettings(8 * 1024 * 1024, 4, 64L * 1024 * 1024, 3);
+
+  /**
+   * Validates the settings, raising the part size to the S3 minimum if needed.
+   */
+  public S3UploadSettings {
+    partSizeBytes = Math.max(partSizeBytes, MIN_PART_SIZE_BYTES);
+    maxInFlightParts = Math.max(maxInFlightParts, 1);
+    multipartThresholdBytes = Math.max(multipartThresholdBytes, partSizeBytes);
+    maxPartAttempts = Math.max(maxPartAttempts, 1);
+  }
+}
@@ -0,0 +1,8 @@
+-- Run-state ledger: records, per report, the change marker of its source tables at the last successful build.
+-- When the marker has not moved since then the report's refresh, export and upload can be skipped.
+CREATE TABLE claims.report_run_state (
+    report_name   text        NOT NULL,
+    change_marker text        NOT NULL,
+    built_on      timestamptz NOT NULL,
+    CONSTRAINT pk_report_run_state PRIMARY KEY (report_name)
+);
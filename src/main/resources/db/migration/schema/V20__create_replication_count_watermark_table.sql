@@ -0,0 +1,28 @@
+-- Replication count watermarks: the row count verified for each replicated table by the last healthy check, and the
+-- point in time it covers. Later checks only count the rows created since the watermark and add them to the count.
+CREATE TABLE claims.replication_count_watermark (
+    table_name      text        NOT NULL,
+    verified_count  bigint      NOT NULL,
+    watermark       timestamptz NOT NULL,
+    full_recount_on date        NOT NULL,
+    verified_on     timestamptz NOT NULL,
+    CONSTRAINT pk_replication_count_watermark PRIMARY KEY (table_name)
+);
+
+-- Let the daily created and updated counts read just the rows in range rather than scanning each table
+CREATE INDEX IF NOT EXISTS ix_bulk_submission_created_on ON claims.bulk_submission(created_on);
+CREATE INDEX IF NOT EXISTS ix_bulk_submission_updated_on ON claims.bulk_submission(updated_on);
+CREATE INDEX IF NOT EXISTS ix_submission_created_on ON claims.submission(created_on);
+CREATE INDEX IF NOT EXISTS ix_submission_updated_on ON claims.submission(updated_on);
+CREATE INDEX IF NOT EXISTS ix_claim_created_on ON claims.claim(created_on);
+CREATE INDEX IF NOT EXISTS ix_claim_updated_on ON claims.claim(updated_on);
+CREATE INDEX IF NOT EXISTS ix_client_created_on ON claims.client(created_on);
+CREATE INDEX IF NOT EXISTS ix_client_updated_on ON claims.client(updated_on);
+CREATE INDEX IF NOT EXISTS ix_claim_case_created_on ON claims.claim_case(created_on);
+CREATE INDEX IF NOT EXISTS ix_claim_case_updated_on ON claims.claim_case(updated_on);
+CREATE INDEX IF NOT EXISTS ix_claim_summary_fee_created_on ON claims.claim_summary_fee(created_on);
+CREATE INDEX IF NOT EXISTS ix_claim_summary_fee_updated_on ON claims.claim_summary_fee(updated_on);
+CREATE INDEX IF NOT EXISTS ix_calculated_fee_detail_created_on ON claims.calculated_fee_detail(created_on);
+CREATE INDEX IF NOT EXISTS ix_calculated_fee_detail_updated_on ON claims.calculated_fee_detail(updated_on);
+CREATE INDEX IF NOT EXISTS ix_matter_start_created_on ON claims.matter_start(created_on);
+CREATE INDEX IF NOT EXISTS ix_matter_start_updated_on ON claims.matter_start(updated_on);
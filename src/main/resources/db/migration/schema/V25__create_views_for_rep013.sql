@@ -0,0 +1,99 @@
+--Move the REPORT013 period list and monthly totals into views, so the same rows can either be pivoted into the
+--claims.report_013 table by claims.build_report013(), or streamed in long format and pivoted by the application.
+
+CREATE OR REPLACE VIEW claims.vw_report_013_periods AS
+SELECT submission_period,
+       row_number() OVER (ORDER BY year_order, month_order)::INTEGER AS column_number
+FROM (
+         SELECT DISTINCT submission_period,
+                         claims.month_order(submission_period) AS month_order,
+                         SUBSTRING(submission_period, 5)::INTEGER AS year_order
+         FROM claims.submission
+         WHERE status = 'VALIDATION_SUCCEEDED'
+           AND submission_period IS NOT NULL
+     ) AS ordered_periods;
+
+--One row per provider office, area of law and period. crosstab() kept an arbitrary one of several canonical
+--submissions for the same provider, area and period, MAX() keeps the same value whenever there is only one.
+CREATE OR REPLACE VIEW claims.vw_report_013_monthly_totals AS
+WITH superseded_submission AS (
+    SELECT DISTINCT previous_submission_id AS id
+    FROM claims.submission
+    WHERE previous_submission_id IS NOT NULL
+),
+canonical_submission AS (
+    SELECT s.id,
+           s.office_account_number,
+           UPPER(
+               CASE
+                   WHEN UPPER(s.area_of_law) = 'CRIME LOWER' THEN 'CRIME'
+                   WHEN UPPER(s.area_of_law) = 'LEGAL HELP' THEN 'CIVIL'
+                   ELSE s.area_of_law
+               END
+           ) AS area_of_law,
+           s.is_nil_submission,
+           s.submission_period
+    FROM claims.submission AS s
+    LEFT JOIN superseded_submission AS ss
+      ON ss.id = s.id
+    WHERE s.status = 'VALIDATION_SUCCEEDED'
+      AND ss.id IS NULL
+      AND UPPER(
+           CASE
+               WHEN UPPER(s.area_of_law) = 'CRIME LOWER' THEN 'CRIME'
+               WHEN UPPER(s.area_of_law) = 'LEGAL HELP' THEN 'CIVIL'
+               ELSE s.area_of_law
+           END
+      ) IN ('CIVIL','CRIME','MEDIATION')
+),
+submission_totals AS (
+    SELECT cs.id AS submission_id,
+           SUM(cf.total_amount) AS total_amount
+    FROM canonical_submission cs
+    LEFT JOIN claims.claim c
+      ON c.submission_id = cs.id AND c.status='VALID'
+    LEFT JOIN claims.calculated_fee_detail cf
+      ON cf.claim_id = c.id
+    GROUP BY cs.id
+)
+SELECT COALESCE(cs.office_account_number, '') AS office_account_number,
+       cs.area_of_law,
+       cs.submission_period,
+       MAX(CASE WHEN cs.is_nil_submission THEN ROUND(0::numeric,2)
+                ELSE ROUND(COALESCE(st.total_amount,0),2)
+           END) AS month_total
+FROM canonical_submission cs
+LEFT JOIN submission_totals st ON st.submission_id = cs.id
+GROUP BY COALESCE(cs.office_account_number, ''), cs.area_of_law, cs.submission_period;
+
+CREATE OR REPLACE FUNCTION claims.build_report013(target_table TEXT)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    column_definitions  TEXT;
+    column_selections   TEXT;
+BEGIN
+    -- Step 1: Build both dynamic column lists from a single read of the submission periods
+    SELECT string_agg(format('%I TEXT', submission_period), ', ' ORDER BY column_number),
+           string_agg(format('COALESCE(ROUND(MAX(mt.month_total) FILTER (WHERE mt.submission_period = %L), 2)::TEXT, '''') AS %I',
+                             submission_period, submission_period), ', ' ORDER BY column_number)
+    INTO column_definitions, column_selections
+    FROM claims.vw_report_013_periods;
+
+    -- Step 2: Create the target table
+    EXECUTE 'CREATE TABLE ' || target_table || ' (
+            "Provider Office Account Number" TEXT,
+            "Area of Law" TEXT,
+            ' || column_definitions || '
+        )';
+
+    -- Step 3: Pivot the monthly totals in one pass, one row per provider office and area of law
+    EXECUTE 'INSERT INTO ' || target_table || '
+            SELECT mt.office_account_number AS "Provider Office Account Number",
+                   mt.area_of_law AS "Area of Law",
+                   ' || column_selections || '
+            FROM claims.vw_report_013_monthly_totals mt
+            GROUP BY mt.office_account_number, mt.area_of_law
+            ORDER BY 1, 2';
+END $$;
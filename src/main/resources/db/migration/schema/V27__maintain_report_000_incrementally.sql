@@ -0,0 +1,425 @@
+--Back REPORT000 with a table that is kept up to date incrementally, as an alternative to refreshing the whole
+--materialized view each night. Triggers on the source tables queue the ids of the claims whose rows have changed,
+--enabled ALWAYS so they fire for changes applied by logical replication, and claims.refresh_report000() replaces
+--just the rows of those claims. A full rebuild is still made periodically, and whenever a source table is truncated.
+
+--The report query now lives in a plain view, read by both the materialized view and the incremental table
+DROP MATERIALIZED VIEW IF EXISTS claims.mvw_report_000;
+
+CREATE VIEW claims.vw_report_000 AS
+       -- Report: Combined Data Extract for Submit a Bulk Claim Data (REP000)
+WITH submission_periods AS (
+    SELECT
+        s.id,
+        s.bulk_submission_id,
+        s.office_account_number,
+        s.submission_period,
+        s.area_of_law,
+        s.status AS submission_status,
+        s.crime_lower_schedule_number,
+        s.legal_help_submission_reference,
+        s.mediation_submission_reference,
+        s.previous_submission_id,
+        s.is_nil_submission,
+        s.number_of_claims,
+        s.error_messages,
+        s.created_on,
+        s.updated_on,
+        s.created_by_user_id,
+        s.updated_by_user_id,
+        CASE
+            WHEN s.submission_period ~ '^\d{4}-(0[1-9]|1[0-2])$' THEN
+                TO_DATE(s.submission_period || '-01', 'YYYY-MM-DD')
+            WHEN s.submission_period ~ '^[A-Za-z]{3}-\d{4}$' THEN
+                TO_DATE(INITCAP(s.submission_period), 'Mon-YYYY')
+            ELSE
+                NULL
+        END AS submission_period_start
+    FROM claims.submission AS s
+),
+latest_calculated_fee_detail AS (
+    SELECT
+        cfd.*
+    FROM claims.latest_calculated_fee_detail AS latest
+    JOIN claims.calculated_fee_detail AS cfd
+      ON cfd.id = latest.calculated_fee_detail_id
+)
+SELECT
+    COALESCE(sp.id::text, '')                                               AS "Submission ID",
+    COALESCE(sp.office_account_number, '')                                  AS "Office Account Number",
+    COALESCE(TO_CHAR(sp.submission_period_start, 'MON-YYYY'), '')           AS "Submission Period",
+    COALESCE(TO_CHAR(sp.submission_period_start, 'DD/MM/YYYY'), '')         AS "Submission For Date",
+    COALESCE(TO_CHAR(DATE(bs.created_on), 'DD/MM/YYYY'), '')                AS "Date Submitted",
+    COALESCE(sp.submission_status, '')                                      AS "Submission Status",
+    COALESCE(sp.area_of_law, '')                                            AS "Area of Law",
+    COALESCE(crime_lower_schedule_number, '')                               AS "Crime Lower Schedule Number",
+    COALESCE(legal_help_submission_reference, '')                           AS "Legal Help Submission Reference",
+    COALESCE(mediation_submission_reference, '')                            AS "Mediation Submission Reference",
+    COALESCE(c.id::text, '')                                                AS "Claim ID",
+    COALESCE(c.line_number::text, '')                                       AS "Line Number",
+    COALESCE(c.case_reference_number, '')                                   AS "Case Reference Number",
+    COALESCE(c.unique_file_number, '')                                      AS "Unique File Number",
+    COALESCE(cc.case_id, '')                                                AS "Case ID",
+    COALESCE(cc.unique_case_id, '')                                         AS "Unique Case ID",
+    COALESCE(c.maat_id, '')                                         		AS "MAAT ID",
+    COALESCE(c.scheme_id, '')                                               AS "Scheme ID",
+    ''                                                                      AS "Has Post Submission Change", -- will be populated after FSP adds this field
+    COALESCE(
+            CASE WHEN cc.stage_reached_code = 'VOID' THEN 'Y' ELSE 'N' END, 'N'
+    ) 																        AS "Is Void",
+    COALESCE
+    (CASE WHEN c.matched_claim_id IS NOT NULL
+              THEN 'Y'
+          ELSE 'N' END, 'N'
+    ) 																	    AS "Is Duplicate Claim",
+    COALESCE(TO_CHAR(c.case_start_date, 'DD/MM/YYYY'), '')                  AS "Case Start Date",
+    COALESCE(TO_CHAR(c.case_concluded_date, 'DD/MM/YYYY'), '')              AS "Case Concluded Date",
+    COALESCE(c.matter_type_code, '')                                        AS "Matter Type Code",
+    COALESCE(LEFT(c.matter_type_code, 4), '')                               AS "Matter Type 1",
+    COALESCE(RIGHT(c.matter_type_code, 4), '')                              AS "Matter Type 2",
+    COALESCE(cc.case_stage_code, '')                                        AS "Case Stage Level",
+    COALESCE(cc.stage_reached_code, '')                                     AS "Stage Reached",
+    COALESCE(cc.outcome_code, '')                                           AS "Outcome Code",
+    COALESCE(TO_CHAR(cc.transfer_date, 'DD/MM/YYYY'), '')                   AS "Transfer Date",
+    COALESCE(c.delivery_location, '')                                       AS "Delivery Location",
+    COALESCE(TO_CHAR(c.representation_order_date, 'DD/MM/YYYY'), '')        AS "Representation Order Date",
+    COALESCE(c.police_station_court_prison_id, '')                          AS "Police Station Court Prison ID",
+    -- CLIENT INFORMATION
+    COALESCE(cl.client_forename, '')                                        AS "Client Forename",
+    COALESCE(cl.client_surname, '')                                         AS "Client Surname",
+    COALESCE(TO_CHAR(cl.client_date_of_birth, 'DD/MM/YYYY'), '')            AS "Client Date of Birth",
+    COALESCE(cl.unique_client_number, '')                                   AS "Unique Client Number",
+    COALESCE(cl.home_office_client_number, '')                              AS "Home Office Client Number",
+    COALESCE(cl.gender_code, '')                                            AS "Gender",
+    COALESCE(cl.ethnicity_code, '')                                         AS "Ethnicity",
+    COALESCE(cl.disability_code, '')                                        AS "Disability",
+    COALESCE(cl.client_postcode, '')                                        AS "Client Postcode",
+    COALESCE(cl.client_type_code, '')                                       AS "Client Type Code",
+    COALESCE(cl.is_legally_aided::text, '')                                 AS "First Client Legally Aided",
+    COALESCE(cl.client_2_forename, '')                                      AS "Second Client Forename",
+    COALESCE(cl.client_2_surname, '')                                       AS "Second Client Surname",
+    COALESCE(TO_CHAR(cl.client_2_date_of_birth, 'DD/MM/YYYY'), '')          AS "Second Client Date of Birth",
+    COALESCE(cl.client_2_postcode, '')                                      AS "Second Client Postcode",
+    COALESCE(cl.client_2_gender_code, '')                                   AS "Second Client Gender",
+    COALESCE(cl.client_2_ethnicity_code, '')                                AS "Second Client Ethnicity",
+    COALESCE(cl.client_2_disability_code, '')                               AS "Second Client Disability",
+    COALESCE(cl.client_2_is_legally_aided::text, '')                        AS "Second Client Legally Aided",
+    COALESCE(cl.client_2_ucn::text, '')                			  	        AS "Second Client Unique Client Number",
+    -- Intentional: "Total Value" removed per stakeholder decision (25/09/2025)
+    COALESCE(calc.category_of_law, '')                                      AS "Category of Law Code",
+    COALESCE(c.fee_code, '')                                                AS "Fee Code",
+    COALESCE(calc.fee_code_description, '')                                 AS "Fee Code Description",
+    COALESCE(calc.fee_type, '')                                             AS "Fee Type",
+    COALESCE(cc.standard_fee_category_code, '')                             AS "Standard Fee Category Code",
+    COALESCE(
+            CASE
+                WHEN calc.total_amount::text ~ '^[\s+-]?\d+(\.\d+)?$' THEN ROUND(calc.total_amount, 2)::text
+                ELSE NULL
+                END, '')                                                    AS "Total Current Claim Value",
+    COALESCE(calc.vat_rate_applied::text, '')                               AS "VAT Rate Applied",
+    COALESCE(csf.is_vat_applicable::text, '')                               AS "VAT Indicator",
+    COALESCE(csf.waiting_time::text, '')                                    AS "Waiting Time",
+    COALESCE(csf.travel_time::text, '')                                     AS "Travel Time",
+    COALESCE(csf.advice_time::text, '')                                     AS "Advice Time",
+    COALESCE(csf.net_profit_costs_amount::text, '')                         AS "Profit Costs",
+    COALESCE(csf.net_counsel_costs_amount::text, '')                        AS "Counsel Fees",
+    COALESCE(csf.net_disbursement_amount::text, '')                         AS "Disbursement Costs",
+    COALESCE(csf.disbursements_vat_amount::text, '')                        AS "Disbursement VAT Costs",
+    COALESCE(csf.travel_waiting_costs_amount::text, '')                     AS "Travel Waiting Costs",
+    COALESCE(csf.net_waiting_costs_amount::text, '')                        AS "Net Waiting Costs Amount",
+    COALESCE(csf.jr_form_filling_amount::text, '')                          AS "JR Form Filling Costs",
+    COALESCE(csf.costs_damages_recovered_amount::text, '')                  AS "Cost / Damages Recovered",
+    COALESCE(csf.detention_travel_waiting_costs_amount::text, '')           AS "Detention Travel & Waiting Costs",
+    COALESCE(csf.adjourned_hearing_fee_amount::text, '')                    AS "Adjourned Hearing Fee Count",
+    COALESCE(c.mediation_sessions_count::text, '')                          AS "Mediation Sessions Count",
+    COALESCE(csf.cmrh_oral_count::text, '')                                 AS "CMRH Oral Count",
+    COALESCE(csf.cmrh_telephone_count::text, '')                            AS "CMRH Telephone Count",
+    COALESCE(csf.ho_interview::text, '')                                    AS "HO Interview Count",
+    COALESCE(csf.medical_reports_count::text, '')                           AS "Medical Reports Count",
+    COALESCE(csf.meetings_attended_code, '')                                AS "Meetings Attended Code",
+    COALESCE(c.police_station_court_attendances_count::text, '')            AS "Police Station Court Attendances Count",
+    COALESCE(c.suspects_defendants_count::text, '')                         AS "Suspects Defendants Count",
+    COALESCE(calc.vat_indicator::text, '')                                  AS "Current VAT Indicator",
+    COALESCE(calc.net_profit_costs_amount::text, '')                        AS "Current Net Profit Costs Amount",
+    COALESCE(calc.net_cost_of_counsel_amount::text, '')                     AS "Current Net Cost Of Counsel Amount",
+    COALESCE(calc.disbursement_amount::text, '')                            AS "Current Disbursement Amount",
+    COALESCE(calc.travel_and_waiting_costs_amount::text, '')                AS "Current Travel And Waiting Costs Amount",
+    COALESCE(calc.detention_travel_and_waiting_costs_amount::text, '')      AS "Current Detention And Waiting Costs Amount",
+    COALESCE(calc.jr_form_filling_amount::text, '')                         AS "Current JR Form Filling Amount",
+    COALESCE(calc.fixed_fee_amount::text, '')                               AS "Current Fixed Fee Amount",
+    COALESCE(calc.escape_case_flag::text, '')                               AS "Current Escape Case Flag",
+    COALESCE(calc.hourly_total_amount::text, '')                            AS "Current Hourly Total Amount",
+    COALESCE(calc.bolt_on_total_fee_amount::text, '')                       AS "Current Bolt On Total Fee Amount",
+    COALESCE(calc.bolt_on_adjourned_hearing_count::text, '')                AS "Current Bolt On Adjourned Hearing Count",
+    COALESCE(calc.bolt_on_adjourned_hearing_fee::text, '')                  AS "Current Bolt On Adjourned Hearing Fee",
+    COALESCE(calc.bolt_on_cmrh_telephone_count::text, '')                   AS "Current Bolt On CMRH Telephone Count",
+    COALESCE(calc.bolt_on_cmrh_telephone_fee::text, '')                     AS "Current Bolt On CMRH Telephone Fee",
+    COALESCE(calc.bolt_on_cmrh_oral_count::text, '')                        AS "Current Bolt On CMRH Oral Count",
+    COALESCE(calc.bolt_on_cmrh_oral_fee::text, '')                          AS "Current Bolt On CMRH Oral Fee",
+    COALESCE(calc.bolt_on_home_office_interview_count::text, '')            AS "Current Bolt On Home Office Interview Count",
+    COALESCE(calc.bolt_on_home_office_interview_fee::text, '')              AS "Current Bolt On Home Office Interview Fee",
+    COALESCE(
+            CASE
+                WHEN calc.vat_rate_applied IS NOT NULL AND calc.fixed_fee_amount IS NOT NULL
+                    THEN ROUND(calc.fixed_fee_amount * calc.vat_rate_applied / 100, 2)::text
+                ELSE NULL
+                END, '')                                                            AS "Current Fixed Fee VAT",
+    COALESCE(
+            CASE
+                WHEN calc.vat_rate_applied IS NOT NULL AND calc.net_profit_costs_amount IS NOT NULL
+                    THEN ROUND(calc.net_profit_costs_amount * calc.vat_rate_applied / 100, 2)::text
+                ELSE NULL
+                END, '')                                                            AS "Current Profit Costs VAT",
+    COALESCE(
+            CASE
+                WHEN calc.vat_rate_applied IS NOT NULL AND calc.net_cost_of_counsel_amount IS NOT NULL
+                    THEN ROUND(calc.net_cost_of_counsel_amount * calc.vat_rate_applied / 100, 2)::text
+                ELSE NULL
+                END, '')                                                            AS "Current Counsel Costs VAT",
+    COALESCE(
+            CASE
+                WHEN calc.vat_rate_applied IS NOT NULL AND calc.net_travel_costs_amount IS NOT NULL
+                    THEN ROUND(calc.net_travel_costs_amount * calc.vat_rate_applied / 100, 2)::text
+                ELSE NULL
+                END, '')                                                            AS "Current Travel Costs VAT",
+    COALESCE(
+            CASE
+                WHEN calc.vat_rate_applied IS NOT NULL AND calc.net_waiting_costs_amount IS NOT NULL
+                    THEN ROUND(calc.net_waiting_costs_amount * calc.vat_rate_applied / 100, 2)::text
+                ELSE NULL
+                END, '')                                                            AS "Current Waiting Costs VAT",
+    COALESCE(
+            CASE
+                WHEN calc.vat_rate_applied IS NOT NULL AND calc.jr_form_filling_amount IS NOT NULL
+                    THEN ROUND(calc.jr_form_filling_amount * calc.vat_rate_applied / 100, 2)::text
+                ELSE NULL
+                END, '')                                                            AS "Current JR / Form Filling Costs VAT",
+    COALESCE(
+            CASE
+                WHEN calc.vat_rate_applied IS NOT NULL AND calc.bolt_on_total_fee_amount IS NOT NULL
+                    THEN ROUND(calc.bolt_on_total_fee_amount * calc.vat_rate_applied / 100, 2)::text
+                ELSE NULL
+                END, '')                                                            AS "Current Bolt On Fees VAT",
+    COALESCE(cc.is_legacy_case::text, '')                                           AS "Legacy Case Flag",
+    COALESCE(csf.is_london_rate::text, '')                                          AS "London Rate Flag",
+    COALESCE(csf.is_tolerance_applicable::text, '')                                 AS "Tolerance Indicator",
+    COALESCE(csf.is_substantive_hearing::text, '')                                  AS "Substantive Hearing Flag",
+    COALESCE(csf.is_additional_travel_payment::text, '')                            AS "Additional Travel Payment Flag",
+    COALESCE(csf.local_authority_number, '')                                        AS "Local Authority Number",
+    COALESCE(c.procurement_area_code, '')                                           AS "Procurement Area Code",
+    COALESCE(c.access_point_code, '')                                               AS "Access Point Code",
+    COALESCE(c.referral_source, '')                                                 AS "Referral Source Code",
+    COALESCE(csf.ait_hearing_centre_code, '')                                       AS "AIT Hearing Centre Code",
+    COALESCE(cc.exceptional_case_funding_reference, '')                             AS "ECF Reference",
+    CASE WHEN
+             COALESCE(cc.exceptional_case_funding_reference, '') <> ''
+             THEN 'Y'
+         ELSE 'N'
+        END		 															AS "Is Exceptional Claim",
+    COALESCE(cc.exemption_criteria_satisfied, '')                           AS "Exemption Criteria Satisfied",
+    COALESCE(cl.cla_reference_number, '')                                   AS "CLA Reference Number",
+    COALESCE(cl.cla_exemption_code, '')                                     AS "CLA Exemption Code",
+    COALESCE(csf.prior_authority_reference, '')                             AS "Immigration Prior Authority Number",
+    COALESCE(cc.is_postal_application_accepted::text, '')                   AS "Postal Application Accepted",
+    COALESCE(csf.is_irc_surgery::text, '')                    				AS "IRC Surgery",
+    COALESCE(csf.surgery_date::text, '')                     				AS "Surgery Date",
+    COALESCE(csf.surgery_clients_count::text, '')							AS "Number Of Clients Seen At The Surgery",
+    COALESCE(csf.surgery_matters_count::text, '')                         	AS "Number Of Surgery Clients Resulting In A Legal Help Matter Opened",
+    COALESCE(cc.is_nrm_advice::text, '')                   				    AS "NRM Advice",
+    COALESCE(cc.follow_on_work::text, '')                   			    AS "PRN Follow On Work",
+    COALESCE(c.is_duty_solicitor::text, '')                  			    AS "Is Duty Solicitor",
+    COALESCE(c.is_youth_court::text, '')                                    AS "Is Youth Court",
+    -- Internal sort key, not exported: the submission period as YYYYMM so the export order can be served by an index
+    TO_CHAR(sp.submission_period_start, 'YYYYMM')                           AS sort_submission_period,
+    -- Internal row key, not exported: the ids of the joined rows, unique so the view can be refreshed concurrently
+    concat_ws('|', c.id, cc.id, COALESCE(csf.id::text, ''), COALESCE(calc.id::text, ''), COALESCE(cl.id::text, ''))
+                                                                            AS row_key,
+    -- Internal columns, not exported: used to replace the rows of changed claims and to drop rows that age out
+    c.id                                                                    AS claim_id,
+    bs.created_on                                                           AS bulk_submission_created_on
+FROM submission_periods AS sp
+         JOIN claims.bulk_submission AS bs
+              ON bs.id = sp.bulk_submission_id
+         JOIN claims.claim AS c
+              ON c.submission_id = sp.id
+         JOIN claims.claim_case AS cc
+              ON cc.claim_id = c.id
+         LEFT JOIN claims.claim_summary_fee AS csf
+                   ON csf.claim_id = c.id
+         LEFT JOIN latest_calculated_fee_detail AS calc
+                   ON calc.claim_id = c.id
+         LEFT JOIN claims.client AS cl
+                   ON cl.claim_id = c.id
+WHERE sp.submission_status = 'VALIDATION_SUCCEEDED'
+  AND c.status = 'VALID'
+  AND bs.created_on >= (CURRENT_DATE - INTERVAL '3 years');
+
+CREATE MATERIALIZED VIEW claims.mvw_report_000 AS
+SELECT *
+FROM claims.vw_report_000
+-- Store the rows in export order, so reading them through the sort key index is a sequential scan
+ORDER BY sort_submission_period NULLS LAST, "Office Account Number", "Line Number";
+
+CREATE INDEX ix_mvw_report_000_export_order
+    ON claims.mvw_report_000 (sort_submission_period, "Office Account Number", "Line Number");
+
+CREATE UNIQUE INDEX ux_mvw_report_000_row_key ON claims.mvw_report_000 (row_key);
+
+--Incrementally maintained copy of the report, filled by the first refresh, which is always a full rebuild
+CREATE TABLE claims.report_000 AS
+SELECT *
+FROM claims.vw_report_000
+WITH NO DATA;
+
+CREATE INDEX ix_report_000_export_order
+    ON claims.report_000 (sort_submission_period, "Office Account Number", "Line Number");
+
+CREATE UNIQUE INDEX ux_report_000_row_key ON claims.report_000 (row_key);
+
+CREATE INDEX ix_report_000_claim_id ON claims.report_000 (claim_id);
+
+CREATE INDEX ix_report_000_bulk_submission_created_on ON claims.report_000 (bulk_submission_created_on);
+
+CREATE TABLE claims.report_000_changed_claim (
+    claim_id  UUID NOT NULL,
+    CONSTRAINT pk_report_000_changed_claim PRIMARY KEY (claim_id)
+);
+
+--Single row holding when REPORT000 was last fully rebuilt, and whether a rebuild is needed before the next update
+CREATE TABLE claims.report_000_maintenance (
+    id                     BOOLEAN NOT NULL DEFAULT TRUE,
+    last_full_rebuild_on   DATE,
+    full_rebuild_required  BOOLEAN NOT NULL DEFAULT TRUE,
+    CONSTRAINT pk_report_000_maintenance PRIMARY KEY (id),
+    CONSTRAINT chk_report_000_maintenance_single_row CHECK (id)
+);
+
+INSERT INTO claims.report_000_maintenance (id) VALUES (TRUE);
+
+--Lets a change to a submission or bulk submission find its claims without scanning
+CREATE INDEX IF NOT EXISTS ix_submission_bulk_submission_id ON claims.submission(bulk_submission_id);
+
+--Queues the claims whose REPORT000 rows may have changed, given an old or new version of a changed source row
+CREATE OR REPLACE FUNCTION claims.queue_report_000_claims(source_table TEXT, changed_row JSONB)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    CASE source_table
+        WHEN 'claim' THEN
+            INSERT INTO claims.report_000_changed_claim (claim_id)
+            VALUES ((changed_row ->> 'id')::UUID)
+            ON CONFLICT DO NOTHING;
+        WHEN 'submission' THEN
+            INSERT INTO claims.report_000_changed_claim (claim_id)
+            SELECT c.id
+            FROM claims.claim AS c
+            WHERE c.submission_id = (changed_row ->> 'id')::UUID
+            ON CONFLICT DO NOTHING;
+        WHEN 'bulk_submission' THEN
+            INSERT INTO claims.report_000_changed_claim (claim_id)
+            SELECT c.id
+            FROM claims.submission AS s
+            JOIN claims.claim AS c ON c.submission_id = s.id
+            WHERE s.bulk_submission_id = (changed_row ->> 'id')::UUID
+            ON CONFLICT DO NOTHING;
+        ELSE
+            INSERT INTO claims.report_000_changed_claim (claim_id)
+            VALUES ((changed_row ->> 'claim_id')::UUID)
+            ON CONFLICT DO NOTHING;
+    END CASE;
+END $$;
+
+CREATE OR REPLACE FUNCTION claims.queue_report_000_change()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM claims.queue_report_000_claims(TG_TABLE_NAME, to_jsonb(OLD));
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM claims.queue_report_000_claims(TG_TABLE_NAME, to_jsonb(NEW));
+    END IF;
+    RETURN NULL;
+END $$;
+
+--A truncated table gives no rows to queue, so rebuild the whole report instead
+CREATE OR REPLACE FUNCTION claims.require_report_000_rebuild()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    UPDATE claims.report_000_maintenance SET full_rebuild_required = TRUE;
+    RETURN NULL;
+END $$;
+
+DO $$
+DECLARE
+    source_table TEXT;
+BEGIN
+    FOREACH source_table IN ARRAY ARRAY['bulk_submission', 'submission', 'claim', 'claim_case', 'client',
+                                        'claim_summary_fee', 'calculated_fee_detail']
+    LOOP
+        EXECUTE format('CREATE TRIGGER trg_%1$s_report_000
+                            AFTER INSERT OR UPDATE OR DELETE ON claims.%1$I
+                            FOR EACH ROW EXECUTE FUNCTION claims.queue_report_000_change()', source_table);
+        EXECUTE format('CREATE TRIGGER trg_%1$s_report_000_truncate
+                            AFTER TRUNCATE ON claims.%1$I
+                            FOR EACH STATEMENT EXECUTE FUNCTION claims.require_report_000_rebuild()', source_table);
+        EXECUTE format('ALTER TABLE claims.%1$I ENABLE ALWAYS TRIGGER trg_%1$s_report_000', source_table);
+        EXECUTE format('ALTER TABLE claims.%1$I ENABLE ALWAYS TRIGGER trg_%1$s_report_000_truncate', source_table);
+    END LOOP;
+END $$;
+
+--Brings claims.report_000 up to date: a full rebuild when one is required or the last is older than the interval
+--(or always, if the interval is zero), otherwise just the rows of the queued claims are replaced and rows whose
+--bulk submission has aged out of the report's three year window are removed.
+CREATE OR REPLACE FUNCTION claims.refresh_report000(full_rebuild_interval_days INTEGER)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    maintenance  claims.report_000_maintenance%ROWTYPE;
+BEGIN
+    SELECT * INTO maintenance FROM claims.report_000_maintenance FOR UPDATE;
+
+    IF maintenance.full_rebuild_required
+       OR maintenance.last_full_rebuild_on IS NULL
+       OR full_rebuild_interval_days <= 0
+       OR CURRENT_DATE - maintenance.last_full_rebuild_on >= full_rebuild_interval_days THEN
+        -- Deleted rather than truncated, so changes replicated while the rebuild runs are not blocked
+        DELETE FROM claims.report_000_changed_claim;
+        TRUNCATE claims.report_000;
+        INSERT INTO claims.report_000
+        SELECT *
+        FROM claims.vw_report_000
+        ORDER BY sort_submission_period NULLS LAST, "Office Account Number", "Line Number";
+        UPDATE claims.report_000_maintenance
+        SET last_full_rebuild_on = CURRENT_DATE,
+            full_rebuild_required = FALSE;
+        ANALYZE claims.report_000;
+        RETURN;
+    END IF;
+
+    -- Take the queued claims, anything queued while this runs is left for the next refresh
+    DROP TABLE IF EXISTS report_000_claims_to_refresh;
+    CREATE TEMP TABLE report_000_claims_to_refresh (claim_id UUID PRIMARY KEY) ON COMMIT DROP;
+    WITH taken AS (
+        DELETE FROM claims.report_000_changed_claim RETURNING claim_id
+    )
+    INSERT INTO report_000_claims_to_refresh SELECT claim_id FROM taken;
+    ANALYZE report_000_claims_to_refresh;
+
+    DELETE FROM claims.report_000 AS r
+    USING report_000_claims_to_refresh AS changed
+    WHERE r.claim_id = changed.claim_id;
+
+    DELETE FROM claims.report_000
+    WHERE bulk_submission_created_on < (CURRENT_DATE - INTERVAL '3 years');
+
+    INSERT INTO claims.report_000
+    SELECT v.*
+    FROM claims.vw_report_000 AS v
+    WHERE v.claim_id IN (SELECT claim_id FROM report_000_claims_to_refresh);
+END $$;
@@ -0,0 +1,293 @@
+--Keep per submission claim counts and fee totals in a table maintained by triggers as rows are replicated, so
+--refreshing REPORT012 and REPORT013 reads one row per submission instead of aggregating the claim and fee tables.
+--Each change adds or subtracts its own contribution, so the totals are always those of the claims currently present
+--and of their fee details, whichever order the claim and fee detail rows arrive in.
+--The triggers are enabled ALWAYS, as ordinary triggers do not fire for changes applied by logical replication.
+
+CREATE TABLE claims.submission_claim_totals (
+    submission_id      UUID    NOT NULL,
+    claim_count        BIGINT  NOT NULL DEFAULT 0,
+    valid_claim_count  BIGINT  NOT NULL DEFAULT 0,
+    total_fee          NUMERIC NOT NULL DEFAULT 0,
+    valid_total_fee    NUMERIC NOT NULL DEFAULT 0,
+    CONSTRAINT pk_submission_claim_totals PRIMARY KEY (submission_id)
+);
+
+CREATE OR REPLACE FUNCTION claims.add_submission_claim_totals(p_submission_id UUID, p_claim_count BIGINT,
+                                                              p_valid_claim_count BIGINT, p_total_fee NUMERIC,
+                                                              p_valid_total_fee NUMERIC)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF p_submission_id IS NULL THEN
+        RETURN;
+    END IF;
+
+    INSERT INTO claims.submission_claim_totals AS totals (submission_id, claim_count, valid_claim_count, total_fee,
+                                                          valid_total_fee)
+    VALUES (p_submission_id, p_claim_count, p_valid_claim_count, p_total_fee, p_valid_total_fee)
+    ON CONFLICT (submission_id) DO UPDATE
+        SET claim_count = totals.claim_count + EXCLUDED.claim_count,
+            valid_claim_count = totals.valid_claim_count + EXCLUDED.valid_claim_count,
+            total_fee = totals.total_fee + EXCLUDED.total_fee,
+            valid_total_fee = totals.valid_total_fee + EXCLUDED.valid_total_fee;
+END $$;
+
+--Adds (sign 1) or removes (sign -1) a claim and the fee details it currently has
+CREATE OR REPLACE FUNCTION claims.apply_claim_to_submission_claim_totals(p_claim claims.claim, p_sign INTEGER)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    claim_fee  NUMERIC;
+    is_valid   INTEGER := CASE WHEN p_claim.status = 'VALID' THEN 1 ELSE 0 END;
+BEGIN
+    SELECT COALESCE(SUM(cfd.total_amount), 0)
+    INTO claim_fee
+    FROM claims.calculated_fee_detail AS cfd
+    WHERE cfd.claim_id = p_claim.id;
+
+    PERFORM claims.add_submission_claim_totals(p_claim.submission_id, p_sign, p_sign * is_valid,
+                                               p_sign * claim_fee, p_sign * is_valid * claim_fee);
+END $$;
+
+--Adds (sign 1) or removes (sign -1) a fee detail, if its claim is present; a claim arriving later brings it in
+CREATE OR REPLACE FUNCTION claims.apply_fee_to_submission_claim_totals(p_claim_id UUID, p_total_amount NUMERIC,
+                                                                       p_sign INTEGER)
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    fee_claim  claims.claim%ROWTYPE;
+BEGIN
+    IF p_total_amount IS NULL THEN
+        RETURN;
+    END IF;
+
+    SELECT * INTO fee_claim FROM claims.claim WHERE id = p_claim_id;
+    IF NOT FOUND THEN
+        RETURN;
+    END IF;
+
+    PERFORM claims.add_submission_claim_totals(fee_claim.submission_id, 0, 0, p_sign * p_total_amount,
+                                               CASE WHEN fee_claim.status = 'VALID' THEN p_sign * p_total_amount ELSE 0 END);
+END $$;
+
+CREATE OR REPLACE FUNCTION claims.maintain_submission_claim_totals_for_claim()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF TG_OP = 'UPDATE'
+       AND NEW.id = OLD.id
+       AND NEW.submission_id IS NOT DISTINCT FROM OLD.submission_id
+       AND NEW.status IS NOT DISTINCT FROM OLD.status THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM claims.apply_claim_to_submission_claim_totals(OLD, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM claims.apply_claim_to_submission_claim_totals(NEW, 1);
+    END IF;
+    RETURN NULL;
+END $$;
+
+CREATE OR REPLACE FUNCTION claims.maintain_submission_claim_totals_for_fee()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    IF TG_OP = 'UPDATE'
+       AND NEW.claim_id IS NOT DISTINCT FROM OLD.claim_id
+       AND NEW.total_amount IS NOT DISTINCT FROM OLD.total_amount THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        PERFORM claims.apply_fee_to_submission_claim_totals(OLD.claim_id, OLD.total_amount, -1);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        PERFORM claims.apply_fee_to_submission_claim_totals(NEW.claim_id, NEW.total_amount, 1);
+    END IF;
+    RETURN NULL;
+END $$;
+
+--Builds the totals from scratch, used to fill the table and again whenever a source table is truncated
+CREATE OR REPLACE FUNCTION claims.rebuild_submission_claim_totals()
+RETURNS void
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    DELETE FROM claims.submission_claim_totals;
+
+    INSERT INTO claims.submission_claim_totals (submission_id, claim_count, valid_claim_count, total_fee,
+                                                valid_total_fee)
+    SELECT c.submission_id,
+           COUNT(*),
+           COUNT(*) FILTER (WHERE c.status = 'VALID'),
+           COALESCE(SUM(cf.claim_fee), 0),
+           COALESCE(SUM(cf.claim_fee) FILTER (WHERE c.status = 'VALID'), 0)
+    FROM claims.claim AS c
+    LEFT JOIN (
+        SELECT claim_id, SUM(total_amount) AS claim_fee
+        FROM claims.calculated_fee_detail
+        GROUP BY claim_id
+    ) AS cf
+      ON cf.claim_id = c.id
+    WHERE c.submission_id IS NOT NULL
+    GROUP BY c.submission_id;
+END $$;
+
+CREATE OR REPLACE FUNCTION claims.truncate_submission_claim_totals()
+RETURNS trigger
+LANGUAGE plpgsql
+AS $$
+BEGIN
+    PERFORM claims.rebuild_submission_claim_totals();
+    RETURN NULL;
+END $$;
+
+CREATE TRIGGER trg_claim_submission_claim_totals
+    AFTER INSERT OR UPDATE OR DELETE ON claims.claim
+    FOR EACH ROW EXECUTE FUNCTION claims.maintain_submission_claim_totals_for_claim();
+
+CREATE TRIGGER trg_claim_submission_claim_totals_truncate
+    AFTER TRUNCATE ON claims.claim
+    FOR EACH STATEMENT EXECUTE FUNCTION claims.truncate_submission_claim_totals();
+
+CREATE TRIGGER trg_calculated_fee_detail_submission_claim_totals
+    AFTER INSERT OR UPDATE OR DELETE ON claims.calculated_fee_detail
+    FOR EACH ROW EXECUTE FUNCTION claims.maintain_submission_claim_totals_for_fee();
+
+CREATE TRIGGER trg_calculated_fee_detail_submission_claim_totals_truncate
+    AFTER TRUNCATE ON claims.calculated_fee_detail
+    FOR EACH STATEMENT EXECUTE FUNCTION claims.truncate_submission_claim_totals();
+
+ALTER TABLE claims.claim ENABLE ALWAYS TRIGGER trg_claim_submission_claim_totals;
+ALTER TABLE claims.claim ENABLE ALWAYS TRIGGER trg_claim_submission_claim_totals_truncate;
+ALTER TABLE claims.calculated_fee_detail ENABLE ALWAYS TRIGGER trg_calculated_fee_detail_submission_claim_totals;
+ALTER TABLE claims.calculated_fee_detail ENABLE ALWAYS TRIGGER trg_calculated_fee_detail_submission_claim_totals_truncate;
+
+SELECT claims.rebuild_submission_claim_totals();
+
+ANALYZE claims.submission_claim_totals;
+
+DROP MATERIALIZED VIEW IF EXISTS claims.mvw_report_012;
+
+CREATE MATERIALIZED VIEW claims.mvw_report_012 AS
+/*
+  REP012 Original Submission Values Report
+  Scope: all submission periods present in claims.submission.
+*/
+WITH submission_normalised AS (
+    SELECT
+        s.id AS submission_id,
+        s.office_account_number,
+        s.area_of_law,
+        s.submission_period,
+        s.status,
+        s.created_on,
+        CASE
+            WHEN s.submission_period ~ '^\d{4}-\d{2}-\d{2}$'
+                THEN TO_DATE(s.submission_period, 'YYYY-MM-DD')
+            WHEN s.submission_period ~ '^\d{4}-\d{2}$'
+                THEN TO_DATE(s.submission_period || '-01', 'YYYY-MM-DD')
+            WHEN s.submission_period ~ '^[A-Za-z]{3}-\d{4}$'
+                THEN TO_DATE(UPPER(s.submission_period), 'MON-YYYY')
+            ELSE NULL
+        END AS submission_period_date
+    FROM claims.submission AS s
+),
+eligible_submissions AS (
+    SELECT
+        sn.submission_id,
+        sn.office_account_number,
+        sn.area_of_law,
+        sn.submission_period_date,
+        sn.created_on,
+        ROW_NUMBER() OVER (
+            PARTITION BY
+                sn.office_account_number,
+                sn.area_of_law,
+                sn.submission_period_date
+            ORDER BY
+                sn.created_on DESC,
+                sn.submission_id DESC
+        ) AS rn
+    FROM submission_normalised AS sn
+    WHERE sn.status = 'VALIDATION_SUCCEEDED'
+      AND sn.area_of_law IN ('CIVIL', 'CRIME LOWER', 'MEDIATION')
+      AND sn.submission_period_date IS NOT NULL
+),
+original_submissions AS (
+    SELECT *
+    FROM eligible_submissions
+    WHERE rn = 1
+)
+SELECT
+    os.office_account_number                                  AS "Provider office account number",
+    TO_CHAR(os.submission_period_date, 'MON-YYYY')            AS "Submission month",
+    os.area_of_law                                            AS "Area of law",
+    COALESCE(
+            ROUND(sct.total_fee, 2),
+            0::NUMERIC(18, 2)
+    ) AS "Original submission value",
+    TO_CHAR(os.created_on AT TIME ZONE 'Europe/London', 'DD/MM/YYYY') AS "Date submission was uploaded",
+    -- Internal sort key, not exported: the submission month as YYYYMM so the export order can be served by an index
+    TO_CHAR(os.submission_period_date, 'YYYYMM')               AS sort_submission_month,
+    -- Internal row key, not exported: each row is one original submission, unique so the view can be refreshed concurrently
+    os.submission_id                                          AS row_key
+FROM original_submissions AS os
+         LEFT JOIN claims.submission_claim_totals AS sct
+                   ON sct.submission_id = os.submission_id
+-- Store the rows in export order, so reading them through the sort key index is a sequential scan
+ORDER BY "Provider office account number", sort_submission_month, "Area of law";
+
+CREATE INDEX ix_mvw_report_012_export_order
+    ON claims.mvw_report_012 ("Provider office account number", sort_submission_month, "Area of law");
+
+CREATE UNIQUE INDEX ux_mvw_report_012_row_key ON claims.mvw_report_012 (row_key);
+
+CREATE OR REPLACE VIEW claims.vw_report_013_monthly_totals AS
+WITH superseded_submission AS (
+    SELECT DISTINCT previous_submission_id AS id
+    FROM claims.submission
+    WHERE previous_submission_id IS NOT NULL
+),
+canonical_submission AS (
+    SELECT s.id,
+           s.office_account_number,
+           UPPER(
+               CASE
+                   WHEN UPPER(s.area_of_law) = 'CRIME LOWER' THEN 'CRIME'
+                   WHEN UPPER(s.area_of_law) = 'LEGAL HELP' THEN 'CIVIL'
+                   ELSE s.area_of_law
+               END
+           ) AS area_of_law,
+           s.is_nil_submission,
+           s.submission_period
+    FROM claims.submission AS s
+    LEFT JOIN superseded_submission AS ss
+      ON ss.id = s.id
+    WHERE s.status = 'VALIDATION_SUCCEEDED'
+      AND ss.id IS NULL
+      AND UPPER(
+           CASE
+               WHEN UPPER(s.area_of_law) = 'CRIME LOWER' THEN 'CRIME'
+               WHEN UPPER(s.area_of_law) = 'LEGAL HELP' THEN 'CIVIL'
+               ELSE s.area_of_law
+           END
+      ) IN ('CIVIL','CRIME','MEDIATION')
+)
+SELECT COALESCE(cs.office_account_number, '') AS office_account_number,
+       cs.area_of_law,
+       cs.submission_period,
+       MAX(CASE WHEN cs.is_nil_submission THEN ROUND(0::numeric,2)
+                ELSE ROUND(COALESCE(sct.valid_total_fee,0),2)
+           END) AS month_total
+FROM canonical_submission cs
+LEFT JOIN claims.submission_claim_totals sct ON sct.submission_id = cs.id
+GROUP BY COALESCE(cs.office_account_number, ''), cs.area_of_law, cs.submission_period;
@@ -0,0 +1,39 @@
+--Index the access paths the report refreshes and the replication health check use on the replicated tables.
+
+--Once a subscription is streaming, new rows are applied in commit order and appended to each table, so created_on
+--broadly follows the physical order and a BRIN index answers the health check's created_on range counts at a fraction
+--of the size and upkeep of the btree. That is an assumption, not a guarantee: the initial table sync copies rows in
+--the publisher's heap order, and rows committed late or rewritten by updates land wherever there is space. Where the
+--order does not hold, block ranges overlap and a count reads more of the table, but it stays exact, as every row in
+--the matching ranges is rechecked. Re-clustering the table by created_on restores the order if counts slow down.
+--updated_on stays on its btree, as updated rows have no such order.
+DO $$
+DECLARE
+    source_table TEXT;
+BEGIN
+    FOREACH source_table IN ARRAY ARRAY['bulk_submission', 'submission', 'claim', 'client', 'claim_case',
+                                        'claim_summary_fee', 'calculated_fee_detail', 'matter_start']
+    LOOP
+        EXECUTE format('DROP INDEX IF EXISTS claims.ix_%s_created_on', source_table);
+        EXECUTE format('CREATE INDEX IF NOT EXISTS ix_%1$s_created_on_brin ON claims.%1$I USING brin (created_on)',
+                       source_table);
+    END LOOP;
+END $$;
+
+--REPORT013 finds the superseded submissions, only a few of which have a previous submission
+CREATE INDEX IF NOT EXISTS ix_submission_previous_submission_id
+    ON claims.submission (previous_submission_id)
+    WHERE previous_submission_id IS NOT NULL;
+
+--Every report only reads successfully validated submissions, REPORT013 listing their distinct periods
+CREATE INDEX IF NOT EXISTS ix_submission_validation_succeeded_period
+    ON claims.submission (submission_period)
+    WHERE status = 'VALIDATION_SUCCEEDED';
+
+--REPORT000 reads the valid claims of each submission, the id included so the status need not be read from the table
+CREATE INDEX IF NOT EXISTS ix_claim_valid_submission_id
+    ON claims.claim (submission_id) INCLUDE (id)
+    WHERE status = 'VALID';
+
+ANALYZE claims.submission;
+ANALYZE claims.claim;
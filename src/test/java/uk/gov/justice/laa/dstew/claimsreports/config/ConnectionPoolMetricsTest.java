@@ -0,0 +1,37 @@
+package uk.gov.justice.laa.dstew.claimsreports.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ConnectionPoolMetricsTest {
+
+  @Test
+  void shouldSummariseAcquisitionsAgainstCostOfOpeningConnections() {
+    ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+    IMetricsTracker tracker = metrics.create("test-pool", null);
+
+    // Two physical connections averaging 50 ms to open, reused across ten acquisitions
+    tracker.recordConnectionCreatedMillis(40);
+    tracker.recordConnectionCreatedMillis(60);
+    for (int i = 0; i < 10; i++) {
+      tracker.recordConnectionAcquiredNanos(TimeUnit.MILLISECONDS.toNanos(i == 0 ? 45 : 1));
+    }
+
+    assertThat(metrics.getAcquisitions()).isEqualTo(10);
+    assertThat(metrics.getConnectionsCreated()).isEqualTo(2);
+    assertThat(metrics.summary())
+        .contains("10 connections acquired in 54 ms (max 45 ms, 0 timeouts)")
+        .contains("2 physical connections opened in 100 ms")
+        .contains("about 500 ms (saved 446 ms)");
+  }
+
+  @Test
+  void shouldSummariseIdlePool() {
+    assertThat(new ConnectionPoolMetrics().summary())
+        .startsWith("0 connections acquired in 0 ms")
+        .contains("saved 0 ms");
+  }
+}
@@ -1,22 +1,32 @@
 package uk.gov.justice.laa.dstew.claimsreports.runner;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.*;
 
+import java.io.File;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.stubbing.Answer;
 import org.springframework.boot.ApplicationArguments;
 
 import org.springframework.test.util.ReflectionTestUtils;
+import uk.gov.justice.laa.dstew.claimsreports.config.ConnectionPoolMetrics;
 import uk.gov.justice.laa.dstew.claimsreports.dto.ReplicationHealthReport;
 import uk.gov.justice.laa.dstew.claimsreports.service.AbstractReportService;
 import uk.gov.justice.laa.dstew.claimsreports.service.ReplicationHealthCheckService;
+import uk.gov.justice.laa.dstew.claimsreports.service.ReportRunStateService;
+import uk.gov.justice.laa.dstew.claimsreports.service.SharedSnapshotService;
 
 class ClaimsReportingServiceRunnerTest {
 
@@ -29,9 +39,17 @@ class ClaimsReportingServiceRunnerTest {
   @Mock
   private ReplicationHealthCheckService replicationHealthCheckService;
 
+  @Mock
+  private ReportRunStateService reportRunStateService;
+
   @Mock
   private ApplicationArguments applicationArguments;
 
+  @Mock
+  private SharedSnapshotService sharedSnapshotService;
+
+  private final ConnectionPoolMetrics connectionPoolMetrics = new ConnectionPoolMetrics();
+
   private ClaimsReportingServiceRunner runner;
 
   @BeforeEach
@@ -39,7 +57,8 @@ class ClaimsReportingServiceRunnerTest {
     MockitoAnnotations.openMocks(this);
 
     // Inject a list of mocked report services
-    runner = new ClaimsReportingServiceRunner(replicationHealthCheckService, List.of(reportService1, reportService2));
+    runner = new ClaimsReportingServiceRunner(replicationHealthCheckService, List.of(reportService1, reportService2), reportRunStateService, connectionPoolMetrics,
+        sharedSnapshotService);
     // Default: replication is healthy
     ReplicationHealthReport healthyReport = new ReplicationHealthReport(LocalDate.now());
     healthyReport.setHealthy(true);
@@ -51,18 +70,60 @@ class ClaimsReportingServiceRunnerTest {
     // Call the run method
     runner.run(applicationArguments);
 
-    // Verify that refreshDataSource and generateReport were called on each service
+    // Verify that each service was refreshed, exported and uploaded
     verify(reportService1).refreshDataSource();
-    verify(reportService1).generateReport();
+    verify(reportService1).exportReport();
+    verify(reportService1).uploadReport(any());
 
     verify(reportService2).refreshDataSource();
-    verify(reportService2).generateReport();
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
+  }
+
+  @Test
+  void shouldUploadTheExportedFileThroughTheService() {
+    File reportFile1 = new File("report_1.csv");
+    when(reportService1.exportReport()).thenReturn(reportFile1);
+
+    runner.run(applicationArguments);
+
+    InOrder inOrder = inOrder(reportService1);
+    inOrder.verify(reportService1).refreshDataSource();
+    inOrder.verify(reportService1).exportReport();
+    inOrder.verify(reportService1).uploadReport(reportFile1);
+  }
+
+  @Test
+  void shouldExportOutsideATransactionWhenTheEngineUsesItsOwnConnections() {
+    File reportFile1 = new File("report_1.csv");
+    when(reportService1.isExportedOutsideTransaction()).thenReturn(true);
+    when(reportService1.exportReportOutsideTransaction()).thenReturn(reportFile1);
+
+    runner.run(applicationArguments);
+
+    verify(reportService1, never()).exportReport();
+    verify(reportService1).uploadReport(reportFile1);
+    verify(reportService2, never()).exportReportOutsideTransaction();
+    verify(reportService2).exportReport();
+  }
+
+  @Test
+  void shouldStreamReportsWhenStreamingUploadIsEnabled() {
+    when(reportService1.isStreamingUpload()).thenReturn(true);
+
+    runner.run(applicationArguments);
+
+    verify(reportService1).streamReport();
+    verify(reportService1, never()).exportReport();
+    verify(reportService1, never()).uploadReport(any());
+    verify(reportService2).uploadReport(any());
   }
 
   @Test
   void shouldHandleEmptyServiceList() {
     // Create runner with empty list
-    ClaimsReportingServiceRunner emptyRunner = new ClaimsReportingServiceRunner(replicationHealthCheckService, List.of());
+    ClaimsReportingServiceRunner emptyRunner = new ClaimsReportingServiceRunner(replicationHealthCheckService, List.of(), reportRunStateService, connectionPoolMetrics,
+        sharedSnapshotService);
 
     // Should not throw any exceptions
     assertThatCode(() -> emptyRunner.run(applicationArguments))
@@ -79,11 +140,12 @@ class ClaimsReportingServiceRunnerTest {
 
     // First service was called
     verify(reportService1).refreshDataSource();
-    verify(reportService1, never()).generateReport(); // generateReport skipped because refresh failed
+    verify(reportService1, never()).exportReport(); // export skipped because refresh failed
 
     // Second service should still run
     verify(reportService2).refreshDataSource();
-    verify(reportService2).generateReport();
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
   }
 
   @Test
@@ -122,7 +184,10 @@ class ClaimsReportingServiceRunnerTest {
 
     runner = new ClaimsReportingServiceRunner(
         replicationHealthCheckService,
-        List.of(reportService1, reportService2)
+        List.of(reportService1, reportService2),
+        reportRunStateService,
+        connectionPoolMetrics,
+        sharedSnapshotService
     );
     // use reflection to set the private @Value field
     ReflectionTestUtils.setField(runner, "ignoreRowCountMismatch", true);
@@ -132,9 +197,11 @@ class ClaimsReportingServiceRunnerTest {
 
     // then - reports should still be generated
     verify(reportService1).refreshDataSource();
-    verify(reportService1).generateReport();
+    verify(reportService1).exportReport();
+    verify(reportService1).uploadReport(any());
     verify(reportService2).refreshDataSource();
-    verify(reportService2).generateReport();
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
   }
 
   @Test
@@ -148,7 +215,10 @@ class ClaimsReportingServiceRunnerTest {
 
     runner = new ClaimsReportingServiceRunner(
         replicationHealthCheckService,
-        List.of(reportService1, reportService2)
+        List.of(reportService1, reportService2),
+        reportRunStateService,
+        connectionPoolMetrics,
+        sharedSnapshotService
     );
     ReflectionTestUtils.setField(runner, "ignoreRowCountMismatch", true);
 
@@ -159,4 +229,193 @@ class ClaimsReportingServiceRunnerTest {
 
     verifyNoInteractions(reportService1, reportService2);
   }
-}
\ No newline at end of file
+
+  @Test
+  void shouldInvokeGenerateReportsOnAllServicesInConcurrentMode() {
+    ReflectionTestUtils.setField(runner, "executionMode", ReportExecutionMode.CONCURRENT);
+
+    runner.run(applicationArguments);
+
+    verify(reportService1).refreshDataSource();
+    verify(reportService1).exportReport();
+    verify(reportService1).uploadReport(any());
+    verify(reportService2).refreshDataSource();
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
+  }
+
+  @Test
+  void shouldRunReportsInParallelInConcurrentMode() {
+    ReflectionTestUtils.setField(runner, "executionMode", ReportExecutionMode.CONCURRENT);
+
+    // Each refresh only completes promptly if the other report is refreshing at the same time
+    CountDownLatch bothRefreshing = new CountDownLatch(2);
+    AtomicBoolean ranInParallel = new AtomicBoolean(true);
+    Answer<Void> waitForOtherReport = invocation -> {
+      bothRefreshing.countDown();
+      if (!bothRefreshing.await(5, TimeUnit.SECONDS)) {
+        ranInParallel.set(false);
+      }
+      return null;
+    };
+    doAnswer(waitForOtherReport).when(reportService1).refreshDataSource();
+    doAnswer(waitForOtherReport).when(reportService2).refreshDataSource();
+
+    runner.run(applicationArguments);
+
+    assertThat(ranInParallel).isTrue();
+    verify(reportService1).exportReport();
+    verify(reportService1).uploadReport(any());
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
+  }
+
+  @Test
+  void shouldContinueWhenOneServiceFailsInConcurrentMode() {
+    ReflectionTestUtils.setField(runner, "executionMode", ReportExecutionMode.CONCURRENT);
+    doThrow(new RuntimeException("Refresh failed")).when(reportService1).refreshDataSource();
+
+    assertThatCode(() -> runner.run(applicationArguments))
+        .doesNotThrowAnyException();
+
+    verify(reportService1, never()).exportReport();
+    verify(reportService2).refreshDataSource();
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
+  }
+
+  @Test
+  void shouldRunReportsOneAtATimeWhenMaxConcurrencyIsOne() {
+    ReflectionTestUtils.setField(runner, "executionMode", ReportExecutionMode.CONCURRENT);
+    ReflectionTestUtils.setField(runner, "maxConcurrency", 1);
+
+    AtomicBoolean overlapped = new AtomicBoolean(false);
+    AtomicBoolean running = new AtomicBoolean(false);
+    Answer<Void> detectOverlap = invocation -> {
+      if (!running.compareAndSet(false, true)) {
+        overlapped.set(true);
+      }
+      Thread.sleep(50);
+      running.set(false);
+      return null;
+    };
+    doAnswer(detectOverlap).when(reportService1).refreshDataSource();
+    doAnswer(detectOverlap).when(reportService2).refreshDataSource();
+
+    runner.run(applicationArguments);
+
+    assertThat(overlapped).isFalse();
+    verify(reportService1).exportReport();
+    verify(reportService1).uploadReport(any());
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
+  }
+
+  @Test
+  void shouldExportAndUploadEveryReportInPipelinedMode() {
+    ReflectionTestUtils.setField(runner, "executionMode", ReportExecutionMode.PIPELINED);
+    File reportFile1 = new File("report_1.csv");
+    File reportFile2 = new File("report_2.csv");
+    when(reportService1.exportReport()).thenReturn(reportFile1);
+    when(reportService2.exportReport()).thenReturn(reportFile2);
+
+    runner.run(applicationArguments);
+
+    verify(reportService1).refreshDataSource();
+    verify(reportService1).uploadReport(reportFile1);
+    verify(reportService2).refreshDataSource();
+    verify(reportService2).uploadReport(reportFile2);
+  }
+
+  @Test
+  void shouldNotCheckRunStateWhenSkippingUnchangedReportsIsDisabled() {
+    runner.run(applicationArguments);
+
+    verifyNoInteractions(reportRunStateService);
+    verify(reportService1).exportReport();
+    verify(reportService1).uploadReport(any());
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
+  }
+
+  @Test
+  void shouldSkipReportsThatAreUnchangedSinceTheirLastBuild() {
+    ReflectionTestUtils.setField(runner, "skipUnchangedReports", true);
+    when(reportRunStateService.captureChangeMarker(reportService1)).thenReturn("marker-1");
+    when(reportRunStateService.captureChangeMarker(reportService2)).thenReturn("marker-2");
+    when(reportRunStateService.isUnchanged(reportService1, "marker-1")).thenReturn(true);
+    when(reportRunStateService.isUnchanged(reportService2, "marker-2")).thenReturn(false);
+
+    runner.run(applicationArguments);
+
+    verify(reportService1, never()).refreshDataSource();
+    verify(reportService1, never()).exportReport();
+    verify(reportService2).refreshDataSource();
+    verify(reportService2).exportReport();
+    verify(reportService2).uploadReport(any());
+    verify(reportRunStateService).recordSuccessfulBuild(reportService2, "marker-2");
+    verify(reportRunStateService, never()).recordSuccessfulBuild(eq(reportService1), any());
+  }
+
+  @Test
+  void shouldNotRecordRunStateWhenReportFails() {
+    ReflectionTestUtils.setField(runner, "skipUnchangedReports", true);
+    when(reportRunStateService.captureChangeMarker(reportService1)).thenReturn("marker-1");
+    when(reportRunStateService.captureChangeMarker(reportService2)).thenReturn("marker-2");
+    doThrow(new RuntimeException("Upload failed")).when(reportService1).uploadReport(any());
+
+    runner.run(applicationArguments);
+
+    verify(reportRunStateService, never()).recordSuccessfulBuild(eq(reportService1), any());
+    verify(reportRunStateService).recordSuccessfulBuild(reportService2, "marker-2");
+  }
+
+  @Test
+  void shouldRecordRunStateForUploadedReportsInPipelinedMode() {
+    ReflectionTestUtils.setField(runner, "executionMode", ReportExecutionMode.PIPELINED);
+    ReflectionTestUtils.setField(runner, "skipUnchangedReports", true);
+    when(reportRunStateService.captureChangeMarker(reportService1)).thenReturn("marker-1");
+    when(reportRunStateService.captureChangeMarker(reportService2)).thenReturn("marker-2");
+    when(reportRunStateService.isUnchanged(reportService2, "marker-2")).thenReturn(true);
+    File reportFile1 = new File("report_1.csv");
+    when(reportService1.exportReport()).thenReturn(reportFile1);
+
+    runner.run(applicationArguments);
+
+    verify(reportService1).uploadReport(reportFile1);
+    verify(reportRunStateService).recordSuccessfulBuild(reportService1, "marker-1");
+    verify(reportService2, never()).refreshDataSource();
+  }
+
+  @Test
+  void shouldBuildEveryReportFromOneSnapshotWhenSharedSnapshotEnabled() {
+    ReflectionTestUtils.setField(runner, "sharedSnapshot", true);
+
+    runner.run(applicationArguments);
+
+    InOrder inOrder = inOrder(sharedSnapshotService, reportService1, reportService2);
+    inOrder.verify(sharedSnapshotService).open();
+    inOrder.verify(reportService1).refreshDataSource();
+    inOrder.verify(reportService2).refreshDataSource();
+    inOrder.verify(sharedSnapshotService).close();
+  }
+
+  @Test
+  void shouldReleaseSharedSnapshotWhenReportsFail() {
+    ReflectionTestUtils.setField(runner, "sharedSnapshot", true);
+    ReflectionTestUtils.setField(runner, "executionMode", ReportExecutionMode.PIPELINED);
+    doThrow(new RuntimeException("Refresh failed")).when(reportService1).refreshDataSource();
+
+    runner.run(applicationArguments);
+
+    verify(sharedSnapshotService).open();
+    verify(sharedSnapshotService).close();
+  }
+
+  @Test
+  void shouldNotTakeSharedSnapshotByDefault() {
+    runner.run(applicationArguments);
+
+    verify(sharedSnapshotService, never()).open();
+  }
+}
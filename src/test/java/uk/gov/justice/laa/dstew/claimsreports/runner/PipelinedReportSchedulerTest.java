@@ -0,0 +1,154 @@
+package uk.gov.justice.laa.dstew.claimsreports.runner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
+import uk.gov.justice.laa.dstew.claimsreports.service.AbstractReportService;
+
+class PipelinedReportSchedulerTest {
+
+  @Mock
+  private AbstractReportService reportService1;
+
+  @Mock
+  private AbstractReportService reportService2;
+
+  @Mock
+  private AbstractReportService reportService3;
+
+  private final File reportFile1 = new File("report_1.csv");
+  private final File reportFile2 = new File("report_2.csv");
+  private final File reportFile3 = new File("report_3.csv");
+
+  @BeforeEach
+  void setUp() {
+    MockitoAnnotations.openMocks(this);
+    when(reportService1.exportReport()).thenReturn(reportFile1);
+    when(reportService2.exportReport()).thenReturn(reportFile2);
+    when(reportService3.exportReport()).thenReturn(reportFile3);
+  }
+
+  @Test
+  void shouldRefreshExportAndUploadEachReportInOrder() {
+    new PipelinedReportScheduler(List.of(reportService1, reportService2), 1, service -> { }).run();
+
+    InOrder report1 = inOrder(reportService1);
+    report1.verify(reportService1).refreshDataSource();
+    report1.verify(reportService1).exportReport();
+    report1.verify(reportService1).uploadReport(reportFile1);
+
+    InOrder report2 = inOrder(reportService2);
+    report2.verify(reportService2).refreshDataSource();
+    report2.verify(reportService2).exportReport();
+    report2.verify(reportService2).uploadReport(reportFile2);
+  }
+
+  @Test
+  void shouldExportOutsideATransactionWhenTheEngineUsesItsOwnConnections() {
+    when(reportService1.isExportedOutsideTransaction()).thenReturn(true);
+    when(reportService1.exportReportOutsideTransaction()).thenReturn(reportFile1);
+
+    new PipelinedReportScheduler(List.of(reportService1, reportService2), 1, service -> { }).run();
+
+    verify(reportService1, never()).exportReport();
+    verify(reportService1).uploadReport(reportFile1);
+    verify(reportService2).uploadReport(reportFile2);
+  }
+
+  @Test
+  void shouldRefreshNextReportWhileCurrentReportIsExporting() {
+    // The first export only completes promptly if the second refresh starts while it is running
+    CountDownLatch secondRefreshStarted = new CountDownLatch(1);
+    AtomicBoolean overlapped = new AtomicBoolean(true);
+    when(reportService1.exportReport()).thenAnswer(invocation -> {
+      if (!secondRefreshStarted.await(5, TimeUnit.SECONDS)) {
+        overlapped.set(false);
+      }
+      return reportFile1;
+    });
+    doAnswer(invocation -> {
+      secondRefreshStarted.countDown();
+      return null;
+    }).when(reportService2).refreshDataSource();
+
+    new PipelinedReportScheduler(List.of(reportService1, reportService2), 1, service -> { }).run();
+
+    assertThat(overlapped).isTrue();
+    verify(reportService1).uploadReport(reportFile1);
+    verify(reportService2).uploadReport(reportFile2);
+  }
+
+  @Test
+  void shouldNotRefreshMoreThanRefreshAheadReportsBeforeTheyAreExported() {
+    AtomicInteger refreshed = new AtomicInteger();
+    AtomicInteger refreshedWhileExportBlocked = new AtomicInteger();
+    doAnswer(invocation -> refreshed.incrementAndGet()).when(reportService1).refreshDataSource();
+    doAnswer(invocation -> refreshed.incrementAndGet()).when(reportService2).refreshDataSource();
+    doAnswer(invocation -> refreshed.incrementAndGet()).when(reportService3).refreshDataSource();
+    // Hold the first export long enough for the refresh stage to run as far ahead as it is allowed
+    when(reportService1.exportReport()).thenAnswer(invocation -> {
+      Thread.sleep(200);
+      refreshedWhileExportBlocked.set(refreshed.get());
+      return reportFile1;
+    });
+
+    new PipelinedReportScheduler(List.of(reportService1, reportService2, reportService3), 1, service -> { }).run();
+
+    // Report 1 is being exported, so only report 2 may have been refreshed ahead of it
+    assertThat(refreshedWhileExportBlocked.get()).isEqualTo(2);
+    assertThat(refreshed.get()).isEqualTo(3);
+    verify(reportService3).uploadReport(reportFile3);
+  }
+
+  @Test
+  void shouldContinueWithOtherReportsWhenOneStageFails() {
+    doThrow(new RuntimeException("Refresh failed")).when(reportService1).refreshDataSource();
+    when(reportService2.exportReport()).thenThrow(new CsvCreationException("Export failed"));
+
+    assertThatCode(() -> new PipelinedReportScheduler(List.of(reportService1, reportService2, reportService3), 1, service -> { }).run())
+        .doesNotThrowAnyException();
+
+    verify(reportService1, never()).exportReport();
+    verify(reportService1, never()).uploadReport(any());
+    verify(reportService2, never()).uploadReport(any());
+    verify(reportService3).refreshDataSource();
+    verify(reportService3).uploadReport(reportFile3);
+  }
+
+  @Test
+  void shouldHandleEmptyServiceList() {
+    assertThat(new PipelinedReportScheduler(List.of(), 1, service -> { }).run()).isZero();
+  }
+
+  @Test
+  void shouldStreamReportsThatUseStreamingUpload() {
+    when(reportService1.isStreamingUpload()).thenReturn(true);
+
+    new PipelinedReportScheduler(List.of(reportService1, reportService2), 1, service -> { }).run();
+
+    verify(reportService1).refreshDataSource();
+    verify(reportService1).streamReport();
+    verify(reportService1, never()).exportReport();
+    verify(reportService1, never()).uploadReport(any());
+    verify(reportService2).uploadReport(reportFile2);
+  }
+}
@@ -4,12 +4,17 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
+import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3MultipartUploadStream;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.Mockito.*;
@@ -22,9 +27,14 @@ class AbstractReportServiceTest {
   // Define a concrete subclass for testing purposes
   static class TestReportService extends AbstractReportService {
 
+    private ExportEngine exportEngine = ExportEngine.JDBC;
+    private RefreshMode refreshMode = RefreshMode.STANDARD;
+    private String rangeColumn;
+    private List<String> sortKeyColumns = List.of();
+
     public TestReportService(JdbcTemplate template, S3ClientWrapper s3ClientWrapper,
-        CsvCreationService csvCreationService) {
-      super(template, s3ClientWrapper, csvCreationService);
+        CsvCreationService csvCreationService, SharedSnapshotService sharedSnapshotService) {
+      super(template, s3ClientWrapper, csvCreationService, sharedSnapshotService);
     }
 
     @Override
@@ -51,20 +61,41 @@ class AbstractReportServiceTest {
     protected String getOrderByClause() {
       return " test_order_by_column";
     }
+
+    @Override
+    protected ExportEngine getExportEngine() {
+      return exportEngine;
+    }
+
+    @Override
+    protected RefreshMode getRefreshMode() {
+      return refreshMode;
+    }
+
+    @Override
+    protected String getRangeColumn() {
+      return rangeColumn;
+    }
+
+    @Override
+    protected List<String> getSortKeyColumns() {
+      return sortKeyColumns;
+    }
   }
 
   private TestReportService service;
   private JdbcTemplate jdbcTemplate;
   private CsvCreationService csvCreationService;
   private S3ClientWrapper s3ClientWrapper;
-
+  private SharedSnapshotService sharedSnapshotService;
 
   @BeforeEach
   void setUp() {
     jdbcTemplate = mock(JdbcTemplate.class);
     s3ClientWrapper = mock(S3ClientWrapper.class);
     csvCreationService = mock(CsvCreationService.class);
-    service = new TestReportService(jdbcTemplate, s3ClientWrapper, csvCreationService);
+    sharedSnapshotService = mock(SharedSnapshotService.class);
+    service = new TestReportService(jdbcTemplate, s3ClientWrapper, csvCreationService, sharedSnapshotService);
   }
 
   @Test
@@ -87,21 +118,79 @@ class AbstractReportServiceTest {
     verifyNoMoreInteractions(jdbcTemplate);
   }
 
+  @Test
+  void refreshDataSource_shouldImportSharedSnapshotBeforeRefreshing() {
+    service.refreshDataSource();
+
+    InOrder inOrder = inOrder(sharedSnapshotService, jdbcTemplate);
+    inOrder.verify(sharedSnapshotService).importInto(jdbcTemplate);
+    inOrder.verify(jdbcTemplate).execute("REFRESH MATERIALIZED VIEW claims.mvw_report_000");
+  }
+
+  @Test
+  void refreshDataSource_shouldNotImportSharedSnapshotWhenIncrementalSelected() {
+    service.refreshMode = RefreshMode.INCREMENTAL;
+
+    service.refreshDataSource();
+
+    verify(sharedSnapshotService, never()).importInto(any());
+    verify(jdbcTemplate).execute("REFRESH MATERIALIZED VIEW claims.mvw_report_000");
+  }
+
+  @Test
+  void refreshDataSource_shouldBuildShadowCopyAndSwapItInWhenShadowSwapSelected() {
+    service.refreshMode = RefreshMode.SHADOW_SWAP;
+    when(jdbcTemplate.queryForList(contains("pg_class"), eq(String.class), eq("claims.mvw_report_000")))
+        .thenReturn(List.of("m"));
+    when(jdbcTemplate.queryForObject(contains("pg_get_viewdef"), eq(String.class), eq("claims.mvw_report_000")))
+        .thenReturn(" SELECT row_key\n   FROM claims.claim\n  ORDER BY row_key;");
+    doReturn(List.<String[]>of(new String[] {"ux_mvw_report_000_row_key",
+        "CREATE UNIQUE INDEX ux_mvw_report_000_row_key ON claims.mvw_report_000 USING btree (row_key)"}))
+        .when(jdbcTemplate).query(contains("pg_indexes"), any(RowMapper.class), eq("claims"), eq("mvw_report_000"));
+
+    service.refreshDataSource();
+
+    InOrder inOrder = inOrder(jdbcTemplate);
+    inOrder.verify(jdbcTemplate).execute("DROP MATERIALIZED VIEW IF EXISTS claims.mvw_report_000_shadow");
+    inOrder.verify(jdbcTemplate).execute("CREATE MATERIALIZED VIEW claims.mvw_report_000_shadow AS SELECT row_key\n"
+        + "   FROM claims.claim\n  ORDER BY row_key");
+    inOrder.verify(jdbcTemplate).execute("CREATE UNIQUE INDEX ux_mvw_report_000_row_key_shadow "
+        + "ON claims.mvw_report_000_shadow USING btree (row_key)");
+    inOrder.verify(jdbcTemplate).execute("ANALYZE claims.mvw_report_000_shadow");
+    inOrder.verify(jdbcTemplate).execute("DROP MATERIALIZED VIEW claims.mvw_report_000; "
+        + "ALTER MATERIALIZED VIEW claims.mvw_report_000_shadow RENAME TO mvw_report_000; "
+        + "ALTER INDEX claims.ux_mvw_report_000_row_key_shadow RENAME TO ux_mvw_report_000_row_key");
+    verify(jdbcTemplate, never()).execute("REFRESH MATERIALIZED VIEW claims.mvw_report_000");
+    verify(jdbcTemplate, never()).execute(startsWith("ALTER TABLE"));
+  }
+
+  @Test
+  void refreshDataSource_shouldBuildInPlaceWhenThereIsNothingToSwap() {
+    service.refreshMode = RefreshMode.SHADOW_SWAP;
+    when(jdbcTemplate.queryForList(contains("pg_class"), eq(String.class), eq("claims.mvw_report_000")))
+        .thenReturn(List.of());
+
+    service.refreshDataSource();
+
+    verify(jdbcTemplate).execute("REFRESH MATERIALIZED VIEW claims.mvw_report_000");
+    verify(jdbcTemplate, never()).execute(contains("_shadow"));
+  }
+
   @Test
   void willThrowCsvExceptionWhenCsvServiceThrows() {
     doThrow(new CsvCreationException("Simulated SQL error"))
         .when(csvCreationService)
         .buildCsvFromData(any(), any(), any());
-    Assertions.assertThrows(CsvCreationException.class, () -> service.generateReport());
+    Assertions.assertThrows(CsvCreationException.class, () -> service.uploadReport(service.exportReport()));
 
     // And ensure it cleans up after itself
     assertFalse(Files.exists(Path.of("/tmp/test_report.csv")));
   }
 
   @Test
-  void generateReport_shouldCallTheRightServices(){
+  void exportReport_shouldCallTheRightServices(){
 
-    service.generateReport();
+    service.uploadReport(service.exportReport());
 
     verify(csvCreationService).buildCsvFromData(eq("SELECT * FROM claims.mvw_report_000 ORDER BY  test_order_by_column"),
         any(BufferedWriter.class), any());
@@ -109,12 +198,133 @@ class AbstractReportServiceTest {
   }
 
   @Test
-  void generateReport_shouldDeleteTheTempFileWhenFinished(){
+  void exportReport_shouldDeleteTheTempFileWhenFinished(){
 
-    service.generateReport();
+    service.uploadReport(service.exportReport());
 
     assertFalse(Files.exists(Path.of("/tmp/test_report.csv")));
 
   }
 
-}
\ No newline at end of file
+  @Test
+  void exportReport_shouldUseCopyWhenCopyEngineSelected() {
+    service.exportEngine = ExportEngine.COPY;
+
+    service.uploadReport(service.exportReport());
+
+    verify(csvCreationService).copyCsvFromData(eq("SELECT * FROM claims.mvw_report_000 ORDER BY  test_order_by_column"),
+        any(BufferedWriter.class), any());
+    verify(csvCreationService, never()).buildCsvFromData(any(), any(), any());
+    verify(s3ClientWrapper).uploadFile(any(File.class), eq("test_report.csv"));
+  }
+
+  @Test
+  void exportReport_shouldUsePipelineWhenPipelinedEngineSelected() {
+    service.exportEngine = ExportEngine.PIPELINED;
+
+    service.uploadReport(service.exportReport());
+
+    verify(csvCreationService).pipelineCsvFromData(eq("SELECT * FROM claims.mvw_report_000 ORDER BY  test_order_by_column"),
+        any(BufferedWriter.class), any());
+    verify(csvCreationService, never()).buildCsvFromData(any(), any(), any());
+    verify(s3ClientWrapper).uploadFile(any(File.class), eq("test_report.csv"));
+  }
+
+  @Test
+  void exportReport_shouldExportInRangesWhenParallelEngineSelected() {
+    service.exportEngine = ExportEngine.PARALLEL;
+    service.rangeColumn = "sort_submission_period";
+
+    service.uploadReport(service.exportReport());
+
+    verify(csvCreationService).parallelCsvFromData(eq(new RangePartitionedQuery("*", "claims.mvw_report_000",
+        "sort_submission_period", " test_order_by_column")), any(BufferedWriter.class), any());
+    verify(csvCreationService, never()).buildCsvFromData(any(), any(), any());
+  }
+
+  @Test
+  void exportReport_shouldFailWhenParallelEngineSelectedWithoutRangeColumn() {
+    service.exportEngine = ExportEngine.PARALLEL;
+
+    Assertions.assertThrows(CsvCreationException.class, () -> service.uploadReport(service.exportReport()));
+    verify(csvCreationService, never()).parallelCsvFromData(any(), any(), any());
+  }
+
+  @Test
+  void exportReport_shouldExportInPagesWhenKeysetEngineSelected() {
+    service.exportEngine = ExportEngine.KEYSET;
+    service.sortKeyColumns = List.of("sort_submission_period", "row_key");
+
+    service.uploadReport(service.exportReport());
+
+    verify(csvCreationService).keysetCsvFromData(eq(new KeysetQuery("*", "claims.mvw_report_000",
+        List.of("sort_submission_period", "row_key"))), any(BufferedWriter.class), any());
+    verify(csvCreationService, never()).buildCsvFromData(any(), any(), any());
+  }
+
+  @Test
+  void exportReport_shouldFailWhenKeysetEngineSelectedWithoutKeysetColumns() {
+    service.exportEngine = ExportEngine.KEYSET;
+
+    Assertions.assertThrows(CsvCreationException.class, () -> service.uploadReport(service.exportReport()));
+    verify(csvCreationService, never()).keysetCsvFromData(any(), any(), any());
+  }
+
+  @Test
+  void isExportedOutsideTransaction_shouldOnlyBeTrueForTheKeysetEngine() {
+    for (ExportEngine engine : ExportEngine.values()) {
+      service.exportEngine = engine;
+
+      Assertions.assertEquals(engine == ExportEngine.KEYSET, service.isExportedOutsideTransaction());
+    }
+  }
+
+  @Test
+  void exportReport_shouldSortInTheApplicationWhenExternalSortEngineSelected() {
+    service.exportEngine = ExportEngine.EXTERNAL_SORT;
+    service.sortKeyColumns = List.of("sort_submission_period", "row_key");
+
+    service.uploadReport(service.exportReport());
+
+    verify(csvCreationService).externalSortCsvFromData(eq(new ExternalSortQuery("*", "claims.mvw_report_000",
+        List.of("sort_submission_period", "row_key"))), any(BufferedWriter.class), any());
+    verify(csvCreationService, never()).buildCsvFromData(any(), any(), any());
+  }
+
+  @Test
+  void exportReport_shouldFailWhenExternalSortEngineSelectedWithoutSortKeyColumns() {
+    service.exportEngine = ExportEngine.EXTERNAL_SORT;
+
+    Assertions.assertThrows(CsvCreationException.class, () -> service.uploadReport(service.exportReport()));
+    verify(csvCreationService, never()).externalSortCsvFromData(any(), any(), any());
+  }
+
+  @Test
+  void streamReport_shouldStreamToS3WithoutATemporaryFile() {
+    S3MultipartUploadStream uploadStream = mock(S3MultipartUploadStream.class);
+    when(s3ClientWrapper.openUploadStream("test_report.csv")).thenReturn(uploadStream);
+
+    service.streamReport();
+
+    verify(csvCreationService).buildCsvFromData(eq("SELECT * FROM claims.mvw_report_000 ORDER BY  test_order_by_column"),
+        any(BufferedWriter.class), any());
+    verify(uploadStream).complete();
+    verify(uploadStream, never()).abort();
+    verify(s3ClientWrapper, never()).uploadFile(any(), any());
+    assertFalse(Files.exists(Path.of("/tmp/test_report.csv")));
+  }
+
+  @Test
+  void streamReport_shouldAbortUploadWhenCsvServiceThrows() {
+    S3MultipartUploadStream uploadStream = mock(S3MultipartUploadStream.class);
+    when(s3ClientWrapper.openUploadStream("test_report.csv")).thenReturn(uploadStream);
+    doThrow(new CsvCreationException("Simulated SQL error"))
+        .when(csvCreationService)
+        .buildCsvFromData(any(), any(), any());
+
+    Assertions.assertThrows(CsvCreationException.class, () -> service.streamReport());
+
+    verify(uploadStream).abort();
+    verify(uploadStream, never()).complete();
+  }
+}
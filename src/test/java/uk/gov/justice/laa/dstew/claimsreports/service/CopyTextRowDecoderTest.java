@@ -0,0 +1,47 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
+
+/**
+ * Unit tests for {@link CopyTextRowDecoder}.
+ */
+class CopyTextRowDecoderTest {
+
+  @Test
+  void shouldSplitValuesOnTabs() {
+    assertArrayEquals(new String[] {"OA001", "APR-2025", "8000.00"},
+        new CopyTextRowDecoder(3).decode(bytes("OA001\tAPR-2025\t8000.00\n")));
+  }
+
+  @Test
+  void shouldDecodeNullsAndEmptyValues() {
+    assertArrayEquals(new String[] {null, "", "x", null},
+        new CopyTextRowDecoder(4).decode(bytes("\\N\t\tx\t\\N\n")));
+  }
+
+  @Test
+  void shouldUnescapeControlCharactersAndBackslashes() {
+    assertArrayEquals(new String[] {"a\tb", "line\nbreak\r", "back\\slash", "\\N"},
+        new CopyTextRowDecoder(4).decode(bytes("a\\tb\tline\\nbreak\\r\tback\\\\slash\t\\\\N\n")));
+  }
+
+  @Test
+  void shouldDecodeUtf8() {
+    assertArrayEquals(new String[] {"Ŵelsh £ €"}, new CopyTextRowDecoder(1).decode(bytes("Ŵelsh £ €\n")));
+  }
+
+  @Test
+  void shouldThrowWhenTheColumnCountDoesNotMatch() {
+    assertThrows(CsvCreationException.class, () -> new CopyTextRowDecoder(3).decode(bytes("a\tb\n")));
+    assertThrows(CsvCreationException.class, () -> new CopyTextRowDecoder(1).decode(bytes("a\tb\n")));
+  }
+
+  private static byte[] bytes(String row) {
+    return row.getBytes(StandardCharsets.UTF_8);
+  }
+}
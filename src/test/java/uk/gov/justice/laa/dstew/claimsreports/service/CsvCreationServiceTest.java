@@ -1,29 +1,48 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import uk.gov.justice.laa.dstew.claimsreports.config.AppConfig;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.sql.Array;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
 
 @ExtendWith(MockitoExtension.class)
 public class CsvCreationServiceTest {
@@ -46,6 +65,9 @@ public class CsvCreationServiceTest {
   @Mock
   AppConfig appConfig;
 
+  @Mock
+  DataSource dataSource;
+
   @Test
   void shouldThrowIllegalArgumentExceptionWhenSqlIsNull() {
     assertThrows(CsvCreationException.class, () -> csvCreationService.buildCsvFromData(null, bufferedWriter, "test_report"));
@@ -118,4 +140,287 @@ public class CsvCreationServiceTest {
 
     assertThrows(CsvCreationException.class, () -> csvCreationService.buildCsvFromData("SELECT * FROM ANY_REPORT.DATA", bufferedWriter, "test_report"));
   }
-}
\ No newline at end of file
+
+  @Test
+  void copyShouldThrowWhenSqlIsEmpty() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.copyCsvFromData(" ", bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void copyShouldThrowWhenBufferedWriterIsNull() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.copyCsvFromData("SELECT * FROM ANY_REPORT.DATA", null, "test_report"));
+  }
+
+  @Test
+  void copyShouldStreamCopyOutputIntoWriter() throws SQLException, IOException {
+    PGConnection pgConnection = mock(PGConnection.class);
+    CopyManager copyManager = mock(CopyManager.class);
+    when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+    when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+    doAnswer(invocation -> {
+      ConnectionCallback<?> callback = invocation.getArgument(0);
+      return callback.doInConnection(connection);
+    }).when(jdbcTemplate).execute(any(ConnectionCallback.class));
+
+    csvCreationService.copyCsvFromData("SELECT * FROM ANY_REPORT.DATA", bufferedWriter, "test_report");
+
+    verify(copyManager).copyOut("COPY (SELECT * FROM ANY_REPORT.DATA) TO STDOUT WITH (FORMAT csv, HEADER)", bufferedWriter);
+    verify(bufferedWriter).flush();
+  }
+
+  @Test
+  void copyShouldThrowCsvCreationExceptionWhenCopyFails() throws SQLException, IOException {
+    PGConnection pgConnection = mock(PGConnection.class);
+    CopyManager copyManager = mock(CopyManager.class);
+    when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+    when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+    when(copyManager.copyOut(any(String.class), any(Writer.class))).thenThrow(new IOException("Disk full"));
+    doAnswer(invocation -> {
+      ConnectionCallback<?> callback = invocation.getArgument(0);
+      return callback.doInConnection(connection);
+    }).when(jdbcTemplate).execute(any(ConnectionCallback.class));
+
+    assertThrows(CsvCreationException.class,
+        () -> csvCreationService.copyCsvFromData("SELECT * FROM ANY_REPORT.DATA", bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void pipelineShouldThrowWhenSqlIsEmpty() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.pipelineCsvFromData(" ", bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void pipelineShouldThrowWhenBufferedWriterIsNull() {
+    assertThrows(CsvCreationException.class,
+        () -> csvCreationService.pipelineCsvFromData("SELECT * FROM ANY_REPORT.DATA", null, "test_report"));
+  }
+
+  @Test
+  void pipelineShouldFetchInChunksAndWriteTheRows() throws SQLException {
+    ResultSet resultSet = mock(ResultSet.class);
+    ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+    when(appConfig.getBufferFlushFrequency()).thenReturn(10);
+    when(appConfig.getDataChunkSize()).thenReturn(500);
+    when(appConfig.getPipelineBatchCount()).thenReturn(2);
+    when(connection.prepareStatement(eq("SELECT * FROM ANY_REPORT.DATA"), anyInt(), anyInt())).thenReturn(statement);
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(2);
+    when(metaData.getColumnName(1)).thenReturn("Office");
+    when(metaData.getColumnName(2)).thenReturn("Value");
+    when(resultSet.next()).thenReturn(true, false);
+    when(resultSet.getString(1)).thenReturn("0P001");
+    when(resultSet.getString(2)).thenReturn("12.50");
+    doAnswer(invocation -> {
+      PreparedStatementCreator creator = invocation.getArgument(0);
+      ResultSetExtractor<?> extractor = invocation.getArgument(1);
+      creator.createPreparedStatement(connection);
+      return extractor.extractData(resultSet);
+    }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(CsvPipelinedResultSetExtractor.class));
+    StringWriter output = new StringWriter();
+
+    csvCreationService.pipelineCsvFromData("SELECT * FROM ANY_REPORT.DATA", new BufferedWriter(output), "test_report");
+
+    verify(statement).setFetchSize(500);
+    assertEquals("Office,Value\n0P001,12.50\n", output.toString());
+  }
+
+  @Test
+  void parallelShouldThrowWhenQueryIsNull() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.parallelCsvFromData(null, bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void parallelShouldSplitValuesIntoRangesOfSimilarSize() {
+    List<Object> periods = List.of("202501", "202502", "202503", "202504", "202505", "202506");
+    List<Long> rowCounts = List.of(10L, 10L, 10L, 10L, 10L, 10L);
+
+    assertEquals(List.of("202503", "202505"), CsvCreationService.splitIntoRanges(periods, rowCounts, 60, 3));
+  }
+
+  @Test
+  void parallelShouldNotSplitTheRowsOfOneValue() {
+    List<Object> periods = List.of("202501", "202502");
+    List<Long> rowCounts = List.of(100L, 1L);
+
+    assertEquals(List.of("202502"), CsvCreationService.splitIntoRanges(periods, rowCounts, 101, 4));
+    assertEquals(List.of(), CsvCreationService.splitIntoRanges(List.of("202501"), List.of(5L), 5, 4));
+  }
+
+  @Test
+  void parallelRangeQueriesShouldCoverEveryRowOnce() {
+    RangePartitionedQuery query = new RangePartitionedQuery("\"Office\"", "claims.report", "sort_period", "sort_period NULLS LAST");
+
+    assertEquals("SELECT \"Office\" FROM claims.report WHERE sort_period < ? ORDER BY sort_period NULLS LAST",
+        query.rangeQuery(false, true));
+    assertEquals("SELECT \"Office\" FROM claims.report WHERE sort_period >= ? AND sort_period < ? ORDER BY sort_period NULLS LAST",
+        query.rangeQuery(true, true));
+    assertEquals("SELECT \"Office\" FROM claims.report WHERE (sort_period >= ? OR sort_period IS NULL) ORDER BY sort_period NULLS LAST",
+        query.rangeQuery(true, false));
+    assertEquals("SELECT \"Office\" FROM claims.report ORDER BY sort_period NULLS LAST", query.rangeQuery(false, false));
+  }
+
+  @Test
+  void keysetShouldThrowWhenQueryIsNull() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.keysetCsvFromData(null, bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void keysetPageQueriesShouldStartAfterTheLastKey() {
+    KeysetQuery query = new KeysetQuery("\"Office\"", "claims.report", List.of("sort_period", "\"Office\"", "row_key"));
+
+    assertEquals("SELECT \"Office\", sort_period, \"Office\", row_key FROM claims.report WHERE sort_period IS NOT NULL"
+        + " ORDER BY sort_period, \"Office\", row_key LIMIT ?", query.pageQuery(false, false));
+    assertEquals("SELECT \"Office\", sort_period, \"Office\", row_key FROM claims.report WHERE sort_period IS NOT NULL"
+        + " AND (sort_period, \"Office\", row_key) > (?, ?, ?) ORDER BY sort_period, \"Office\", row_key LIMIT ?",
+        query.pageQuery(false, true));
+    assertEquals("SELECT \"Office\", sort_period, \"Office\", row_key FROM claims.report WHERE sort_period IS NULL"
+        + " AND (\"Office\", row_key) > (?, ?) ORDER BY \"Office\", row_key LIMIT ?", query.pageQuery(true, true));
+  }
+
+  @Test
+  void keysetShouldResumeAfterTheLastRowWrittenWhenAPageFails() throws SQLException {
+    when(appConfig.getKeysetPageSize()).thenReturn(2);
+    when(appConfig.getKeysetMaxAttempts()).thenReturn(3);
+    when(appConfig.getBufferFlushFrequency()).thenReturn(1000);
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    ResultSet firstPage = keysetPage("a", "b");
+    ResultSet secondPage = keysetPage("c");
+    ResultSet nullKeyPage = keysetPage();
+    when(statement.executeQuery())
+        .thenReturn(firstPage)
+        .thenThrow(new SQLException("An I/O error occurred while sending to the backend", "08006"))
+        .thenReturn(secondPage, nullKeyPage);
+    StringWriter output = new StringWriter();
+
+    csvCreationService.keysetCsvFromData(new KeysetQuery("value", "claims.report", List.of("sort_key")),
+        new BufferedWriter(output), "test_report");
+
+    assertEquals("value\na\nb\nc\n", output.toString());
+    // The failed page and its retry both start after the last row written
+    verify(statement, times(2)).setObject(1, "b");
+  }
+
+  @Test
+  void keysetShouldWriteNothingWhenThereAreNoRows() throws SQLException {
+    when(appConfig.getKeysetPageSize()).thenReturn(2);
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    ResultSet emptyPage = keysetPage();
+    ResultSet emptyNullKeyPage = keysetPage();
+    when(statement.executeQuery()).thenReturn(emptyPage, emptyNullKeyPage);
+    StringWriter output = new StringWriter();
+
+    csvCreationService.keysetCsvFromData(new KeysetQuery("value", "claims.report", List.of("sort_key")),
+        new BufferedWriter(output), "test_report");
+
+    assertEquals("", output.toString());
+  }
+
+  @Test
+  void keysetShouldWriteTheHeaderWhenOnlyRowsWithoutALeadingKeyAreFound() throws SQLException {
+    when(appConfig.getKeysetPageSize()).thenReturn(2);
+    when(appConfig.getBufferFlushFrequency()).thenReturn(1000);
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    ResultSet emptyPage = keysetPage();
+    ResultSet nullKeyPage = keysetPage("x");
+    when(statement.executeQuery()).thenReturn(emptyPage, nullKeyPage);
+    StringWriter output = new StringWriter();
+
+    csvCreationService.keysetCsvFromData(new KeysetQuery("value", "claims.report", List.of("sort_key")),
+        new BufferedWriter(output), "test_report");
+
+    assertEquals("value\nx\n", output.toString());
+  }
+
+  @Test
+  void keysetShouldNotRetryFailuresThatWouldHappenAgain() throws SQLException {
+    when(appConfig.getKeysetPageSize()).thenReturn(2);
+    when(appConfig.getKeysetMaxAttempts()).thenReturn(3);
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(anyString())).thenReturn(statement);
+    when(statement.executeQuery()).thenThrow(new SQLException("column \"sort_key\" does not exist", "42703"));
+
+    assertThrows(CsvCreationException.class, () -> csvCreationService.keysetCsvFromData(
+        new KeysetQuery("value", "claims.report", List.of("sort_key")), new BufferedWriter(new StringWriter()), "test_report"));
+    verify(statement, times(1)).executeQuery();
+  }
+
+  @Test
+  void keysetShouldTreatLostConnectionsAsTransient() {
+    assertTrue(CsvCreationService.isTransientFailure(new SQLException("connection refused", "08001")));
+    assertTrue(CsvCreationService.isTransientFailure(new SQLException("terminating connection", "57P01")));
+    assertTrue(CsvCreationService.isTransientFailure(new SQLTransientConnectionException("pool exhausted")));
+    assertFalse(CsvCreationService.isTransientFailure(new SQLException("syntax error", "42601")));
+    assertFalse(CsvCreationService.isTransientFailure(new SQLException("could not serialize access", "40001")));
+  }
+
+  @Test
+  void externalSortShouldThrowWhenQueryIsNull() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.externalSortCsvFromData(null, bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void externalSortShouldThrowWhenThereAreNoSortColumns() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.externalSortCsvFromData(
+        new ExternalSortQuery("*", "claims.report", List.of()), bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void externalSortQueryShouldSelectTheSortColumnsWithoutOrdering() {
+    ExternalSortQuery query = new ExternalSortQuery("\"Office\"", "claims.report", List.of("sort_period", "row_key"));
+
+    assertEquals("SELECT \"Office\", sort_period, row_key FROM claims.report", query.unorderedQuery());
+  }
+
+  @Test
+  void pivotShouldThrowWhenPivotQueryIsNull() {
+    assertThrows(CsvCreationException.class, () -> csvCreationService.pivotCsvFromData(null, bufferedWriter, "test_report"));
+  }
+
+  @Test
+  void pivotShouldStreamValuesForTheColumnsItReadFirst() throws SQLException {
+    PivotQuery pivotQuery = new PivotQuery(List.of("Office"), "SELECT period FROM ANY_REPORT.PERIODS",
+        "SELECT office, column_number, value FROM ANY_REPORT.VALUES WHERE period = ANY(?)");
+    List<String> periods = List.of("JAN-2025", "FEB-2025");
+    Array periodArray = mock(Array.class);
+    ResultSet resultSet = mock(ResultSet.class);
+    when(appConfig.getBufferFlushFrequency()).thenReturn(10);
+    when(jdbcTemplate.queryForList("SELECT period FROM ANY_REPORT.PERIODS", String.class)).thenReturn(periods);
+    when(connection.prepareStatement(eq(pivotQuery.valuesQuery()), anyInt(), anyInt())).thenReturn(statement);
+    when(connection.createArrayOf("text", periods.toArray())).thenReturn(periodArray);
+    when(resultSet.getString(1)).thenReturn("0P001");
+    when(resultSet.getInt(2)).thenReturn(2);
+    when(resultSet.getString(3)).thenReturn("12.50");
+    doAnswer(invocation -> {
+      PreparedStatementCreator creator = invocation.getArgument(0);
+      RowCallbackHandler handler = invocation.getArgument(1);
+      creator.createPreparedStatement(connection);
+      handler.processRow(resultSet);
+      return null;
+    }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(CsvPivotRowCallbackHandler.class));
+    StringWriter output = new StringWriter();
+
+    csvCreationService.pivotCsvFromData(pivotQuery, new BufferedWriter(output), "test_report");
+
+    verify(statement).setArray(1, periodArray);
+    assertEquals("Office,JAN-2025,FEB-2025\n0P001,,12.50\n", output.toString());
+  }
+
+  private static ResultSet keysetPage(String... keys) throws SQLException {
+    ResultSet resultSet = mock(ResultSet.class);
+    ResultSetMetaData meta = mock(ResultSetMetaData.class);
+    when(resultSet.getMetaData()).thenReturn(meta);
+    // The exported value, followed by the key column
+    when(meta.getColumnCount()).thenReturn(2);
+    when(meta.getColumnName(1)).thenReturn("value");
+    AtomicInteger row = new AtomicInteger(-1);
+    when(resultSet.next()).thenAnswer(invocation -> row.incrementAndGet() < keys.length);
+    if (keys.length > 0) {
+      when(resultSet.getString(1)).thenAnswer(invocation -> keys[row.get()]);
+      when(resultSet.getObject(2)).thenAnswer(invocation -> keys[row.get()]);
+    }
+    return resultSet;
+  }
+}
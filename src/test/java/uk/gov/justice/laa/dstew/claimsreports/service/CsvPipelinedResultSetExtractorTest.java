@@ -0,0 +1,131 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.ExtendWith;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import org.mockito.Mock;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ExtendWith(MockitoExtension.class)
+@Timeout(10)
+public class CsvPipelinedResultSetExtractorTest {
+  private static final int COLUMN_COUNT = 3;
+
+  @Mock
+  private ResultSet resultSet;
+
+  @Mock
+  private ResultSetMetaData resultSetMetaData;
+
+  @Test
+  void shouldWriteTheSameCsvAsTheRowHandlerAcrossSeveralBatches() throws SQLException, IOException {
+    StringWriter expected = new StringWriter();
+    BufferedWriter expectedWriter = new BufferedWriter(expected);
+    CsvRowCallbackHandler rowHandler = new CsvRowCallbackHandler(expectedWriter, 10);
+    AtomicInteger currentRow = setupResultSetData(25);
+    while (resultSet.next()) {
+      rowHandler.processRow(resultSet);
+    }
+    expectedWriter.flush();
+
+    currentRow.set(0);
+    StringWriter output = new StringWriter();
+    BufferedWriter writer = new BufferedWriter(output);
+    CsvPipelinedResultSetExtractor.PipelineStats stats =
+        new CsvPipelinedResultSetExtractor(writer, 10, 4, 2).extractData(resultSet);
+    writer.flush();
+
+    assertEquals(expected.toString(), output.toString());
+    assertEquals(25, stats.rowCount());
+  }
+
+  @Test
+  void shouldWriteNothingWhenThereAreNoRowsTheSameAsTheRowHandler() throws SQLException, IOException {
+    setupResultSetData(0);
+    StringWriter expected = new StringWriter();
+    BufferedWriter expectedWriter = new BufferedWriter(expected);
+    CsvRowCallbackHandler rowHandler = new CsvRowCallbackHandler(expectedWriter, 10);
+    while (resultSet.next()) {
+      rowHandler.processRow(resultSet);
+    }
+    expectedWriter.flush();
+
+    StringWriter output = new StringWriter();
+    BufferedWriter writer = new BufferedWriter(output);
+    CsvPipelinedResultSetExtractor.PipelineStats stats =
+        new CsvPipelinedResultSetExtractor(writer, 10, 4, 2).extractData(resultSet);
+    writer.flush();
+
+    assertEquals("", expected.toString());
+    assertEquals(expected.toString(), output.toString());
+    assertEquals(0, stats.rowCount());
+  }
+
+  @Test
+  void shouldStopFetchingWhenTheEncoderFails() throws SQLException, IOException {
+    setupResultSetData(1000);
+    BufferedWriter writer = mock(BufferedWriter.class);
+    // The header is written, then the first data row fails
+    doNothing().doThrow(new IOException("disk full")).when(writer).write(any(char[].class), anyInt(), anyInt());
+
+    CsvPipelinedResultSetExtractor extractor = new CsvPipelinedResultSetExtractor(writer, 10, 4, 2);
+
+    assertThrows(CsvCreationException.class, () -> extractor.extractData(resultSet));
+  }
+
+  @Test
+  void shouldStopEncodingWhenFetchingFails() throws SQLException {
+    AtomicInteger currentRow = setupResultSetData();
+    when(resultSet.next()).thenAnswer(invocation -> {
+      if (currentRow.incrementAndGet() > 6) {
+        throw new SQLException("connection lost");
+      }
+      return true;
+    });
+    StringWriter output = new StringWriter();
+
+    CsvPipelinedResultSetExtractor extractor = new CsvPipelinedResultSetExtractor(new BufferedWriter(output), 10, 4, 2);
+
+    assertThrows(SQLException.class, () -> extractor.extractData(resultSet));
+  }
+
+  private AtomicInteger setupResultSetData(int rowCount) throws SQLException {
+    AtomicInteger currentRow = setupResultSetData();
+    when(resultSet.next()).thenAnswer(invocation -> currentRow.incrementAndGet() <= rowCount);
+    return currentRow;
+  }
+
+  private AtomicInteger setupResultSetData() throws SQLException {
+    AtomicInteger currentRow = new AtomicInteger();
+    when(resultSet.getMetaData()).thenReturn(resultSetMetaData);
+    when(resultSetMetaData.getColumnCount()).thenReturn(COLUMN_COUNT);
+    when(resultSetMetaData.getColumnName(anyInt())).thenAnswer(invocation -> "column_" + invocation.getArgument(0));
+    // Every third row has a value that needs quoting, and every fifth a null
+    lenient().when(resultSet.getString(anyInt())).thenAnswer(invocation -> {
+      int row = currentRow.get();
+      int column = invocation.getArgument(0);
+      if (row % 5 == 0 && column == 2) {
+        return null;
+      }
+      return row % 3 == 0 ? "row " + row + ", column " + column : "r" + row + "c" + column;
+    });
+    return currentRow;
+  }
+}
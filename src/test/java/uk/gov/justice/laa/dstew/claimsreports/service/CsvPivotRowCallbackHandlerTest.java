@@ -0,0 +1,124 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
+
+@ExtendWith(MockitoExtension.class)
+class CsvPivotRowCallbackHandlerTest {
+  private static final String HEADER_ROW = "office,area,JAN-2025,FEB-2025,MAR-2025\n";
+
+  private CsvPivotRowCallbackHandler handler;
+  private BufferedWriter writer;
+  private StringWriter stringWriter;
+
+  @Mock
+  private ResultSet resultSet;
+
+  @BeforeEach
+  void setup() {
+    stringWriter = new StringWriter();
+    writer = new BufferedWriter(stringWriter);
+    handler = new CsvPivotRowCallbackHandler(writer, 10, List.of("office", "area"),
+        List.of("JAN-2025", "FEB-2025", "MAR-2025"));
+  }
+
+  @Test
+  void willPivotSortedRowsIntoOneLinePerKey() throws SQLException, IOException {
+    processRow("0P001", "CIVIL", 1, "10.00");
+    processRow("0P001", "CIVIL", 3, "5.50");
+    processRow("0P001", "CRIME", 2, "0.00");
+    processRow("0P002", "CIVIL", 2, "1.25");
+    handler.finish();
+    writer.flush();
+
+    assertEquals(HEADER_ROW
+        + "0P001,CIVIL,10.00,,5.50\n"
+        + "0P001,CRIME,,0.00,\n"
+        + "0P002,CIVIL,,1.25,\n", stringWriter.toString());
+    assertEquals(3, handler.getRowCount());
+  }
+
+  @Test
+  void willOnlyWriteRowOnceItsKeyChangesOrTheExportFinishes() throws SQLException, IOException {
+    processRow("0P001", "CIVIL", 1, "10.00");
+    writer.flush();
+
+    assertEquals(HEADER_ROW, stringWriter.toString());
+    assertEquals(0, handler.getRowCount());
+
+    handler.finish();
+    writer.flush();
+    assertEquals(HEADER_ROW + "0P001,CIVIL,10.00,,\n", stringWriter.toString());
+  }
+
+  @Test
+  void willWriteHeaderWhenThereAreNoRows() throws IOException {
+    handler.finish();
+    writer.flush();
+
+    assertEquals(HEADER_ROW, stringWriter.toString());
+    assertEquals(0, handler.getRowCount());
+  }
+
+  @Test
+  void willFlushWhenRowNumberEqualsFlushSize() throws SQLException, IOException {
+    BufferedWriter mockWriter = mock(BufferedWriter.class);
+    handler = new CsvPivotRowCallbackHandler(mockWriter, 2, List.of("office"), List.of("JAN-2025"));
+    when(resultSet.getString(1)).thenReturn("0P001", "0P002", "0P003");
+    when(resultSet.getInt(2)).thenReturn(1);
+    when(resultSet.getString(3)).thenReturn("1.00");
+
+    handler.processRow(resultSet);
+    handler.processRow(resultSet);
+    verify(mockWriter, never()).flush();
+
+    handler.processRow(resultSet);
+    verify(mockWriter, times(1)).flush();
+  }
+
+  @Test
+  void willThrowIfColumnNumberIsOutsideTheReport() throws SQLException {
+    when(resultSet.getString(1)).thenReturn("0P001");
+    when(resultSet.getString(2)).thenReturn("CIVIL");
+    when(resultSet.getInt(3)).thenReturn(4);
+
+    assertThrows(CsvCreationException.class, () -> handler.processRow(resultSet));
+  }
+
+  @Test
+  void willThrowIfResultSetIsNull() {
+    assertThrows(CsvCreationException.class, () -> handler.processRow(null));
+  }
+
+  @Test
+  void willThrowCsvCreationExceptionIfResultSetThrows() throws SQLException {
+    when(resultSet.getString(1)).thenThrow(SQLException.class);
+    assertThrows(CsvCreationException.class, () -> handler.processRow(resultSet));
+  }
+
+  private void processRow(String office, String area, int columnNumber, String value) throws SQLException {
+    when(resultSet.getString(1)).thenReturn(office);
+    when(resultSet.getString(2)).thenReturn(area);
+    when(resultSet.getInt(3)).thenReturn(columnNumber);
+    when(resultSet.getString(4)).thenReturn(value);
+    handler.processRow(resultSet);
+  }
+}
@@ -8,16 +8,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import org.mockito.Mock;
-import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
-import tools.jackson.core.exc.JacksonIOException;
-import tools.jackson.databind.ObjectWriter;
-import tools.jackson.databind.SequenceWriter;
-import tools.jackson.dataformat.csv.CsvMapper;
-import tools.jackson.dataformat.csv.CsvSchema;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvCreationException;
 
 import java.io.BufferedWriter;
@@ -26,15 +23,16 @@ import java.io.StringWriter;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Collections;
 
 @ExtendWith(MockitoExtension.class)
 public class CsvRowCallbackHandlerTest {
+  private static final String HEADER_ROW =
+      "column_1,column_2,column_3,column_4,column_5,column_6,column_7,column_8,column_9,column_10\n";
+
   private CsvRowCallbackHandler csvRowCallbackHandler;
   private BufferedWriter writer;
   private StringWriter stringWriter;
-  private Map<String, String> row;
 
   @Mock
   private ResultSet resultSet;
@@ -42,75 +40,57 @@ public class CsvRowCallbackHandlerTest {
   @Mock
   private ResultSetMetaData resultSetMetaData;
 
-  @Mock
-  private SequenceWriter sequenceWriter;
-
-  @Mock
-  private ObjectWriter objectWriter;
-
-  @Mock
-  private CsvMapper csvMapper;
-
-  private final Map<String, String> expectedDataRow = new LinkedHashMap<>();
-
   @BeforeEach
   void setup() {
-    row = new LinkedHashMap<>();
     stringWriter = new StringWriter();
     writer = new BufferedWriter(stringWriter);
-    csvRowCallbackHandler = new CsvRowCallbackHandler(writer, row, 10, csvMapper);
-    reset(sequenceWriter, resultSetMetaData);
-    for (int i = 1; i <= 10; i++) {
-      expectedDataRow.put("column_" + i, "data");
-    }
+    csvRowCallbackHandler = new CsvRowCallbackHandler(writer, 10);
   }
 
   @Test
-  void willSetupHeaderRowFirstTimeAround() throws SQLException {
-    setupResultSetData(1, "data");
-
-    when(csvMapper.writer(any(CsvSchema.class))).thenReturn(objectWriter);
-    when(objectWriter.writeValues(writer)).thenReturn(sequenceWriter);
+  void willWriteHeaderRowFirstTimeAround() throws SQLException, IOException {
+    setupResultSetData("data");
 
     csvRowCallbackHandler.processRow(resultSet);
-    verify(sequenceWriter).write(expectedDataRow);
+    writer.flush();
+
+    assertEquals(HEADER_ROW + "data,data,data,data,data,data,data,data,data,data\n", stringWriter.toString());
   }
 
   @Test
-  void buildsOutputForSubsequentRowsWithoutRebuildingSequenceWriter() throws SQLException {
-    buildFirstRowAndSchema();
-    var secondRowMap = new LinkedHashMap<String, String>();
-    setupResultSetData(10, "second_data_row");
-    for (int i = 1; i <= 10; i++) {
-      secondRowMap.put("column_" + i, "second_data_row");
-    }
+  void buildsOutputForSubsequentRowsWithoutReadingMetadataAgain() throws SQLException, IOException {
+    setupResultSetData("data");
     csvRowCallbackHandler.processRow(resultSet);
-    verify(sequenceWriter, times(1)).write(secondRowMap);
-    verify(csvMapper, times(0)).writer();
+    when(resultSet.getString(anyInt())).thenReturn("second_data_row");
 
+    csvRowCallbackHandler.processRow(resultSet);
+    writer.flush();
+
+    assertEquals(HEADER_ROW
+        + "data,data,data,data,data,data,data,data,data,data\n"
+        + "second_data_row,second_data_row,second_data_row,second_data_row,second_data_row,"
+        + "second_data_row,second_data_row,second_data_row,second_data_row,second_data_row\n", stringWriter.toString());
+    verify(resultSet, times(1)).getMetaData();
   }
 
   @Test
-  void willNotFlushBufferIfDataSizeIsSmallerThanBufferFlushValue() throws SQLException {
-    setupResultSetData(1, "data");
-
-    when(csvMapper.writer(any(CsvSchema.class))).thenReturn(objectWriter);
-    when(objectWriter.writeValues(writer)).thenReturn(sequenceWriter);
+  void willNotFlushBufferIfDataSizeIsSmallerThanBufferFlushValue() throws SQLException, IOException {
+    BufferedWriter mockWriter = mock(BufferedWriter.class);
+    CsvRowCallbackHandler csvRowCallbackHandler = new CsvRowCallbackHandler(mockWriter, 10);
+    setupResultSetData("data");
 
     csvRowCallbackHandler.processRow(resultSet);
-    verify(sequenceWriter, times(0)).flush();
+    verify(mockWriter, never()).flush();
   }
 
   @Test
   void willFlushWhenRowNumberEqualsFlushSize() throws SQLException, IOException {
-    CsvRowCallbackHandler csvRowCallbackHandler = new CsvRowCallbackHandler(writer, row, 1, csvMapper);
-    setupResultSetData(1, "data");
-
-    when(csvMapper.writer(any(CsvSchema.class))).thenReturn(objectWriter);
-    when(objectWriter.writeValues(writer)).thenReturn(sequenceWriter);
+    BufferedWriter mockWriter = mock(BufferedWriter.class);
+    CsvRowCallbackHandler csvRowCallbackHandler = new CsvRowCallbackHandler(mockWriter, 1);
+    setupResultSetData("data");
 
     csvRowCallbackHandler.processRow(resultSet);
-    verify(sequenceWriter, times(1)).flush();
+    verify(mockWriter, times(1)).flush();
   }
 
   @Test
@@ -125,12 +105,11 @@ public class CsvRowCallbackHandlerTest {
   }
 
   @Test
-  void willThrowCsvCreationExceptionIfWriterThrows() throws SQLException {
-    setupResultSetData(1, "data");
-
-    when(csvMapper.writer(any(CsvSchema.class))).thenReturn(objectWriter);
-    when(objectWriter.writeValues(writer)).thenReturn(sequenceWriter);
-    when(sequenceWriter.write(any())).thenThrow(JacksonIOException.class);
+  void willThrowCsvCreationExceptionIfWriterThrows() throws SQLException, IOException {
+    BufferedWriter mockWriter = mock(BufferedWriter.class);
+    CsvRowCallbackHandler csvRowCallbackHandler = new CsvRowCallbackHandler(mockWriter, 10);
+    setupResultSetData("data");
+    doThrow(IOException.class).when(mockWriter).write(any(char[].class), anyInt(), anyInt());
 
     assertThrows(CsvCreationException.class, () -> csvRowCallbackHandler.processRow(resultSet));
   }
@@ -142,18 +121,25 @@ public class CsvRowCallbackHandlerTest {
   }
 
   @Test
-  void willHandleCommaInData() throws SQLException {
-    var dataWithCommaMap = new LinkedHashMap<String, String>();
-    setupResultSetData(1, "Data, Mrs. S");
-    for (int i = 1; i <= 10; i++) {
-      dataWithCommaMap.put("column_" + i, "Data, Mrs. S");
-    }
+  void willHandleCommaInData() throws SQLException, IOException {
+    setupResultSetData("Data, Mrs. S");
+
+    csvRowCallbackHandler.processRow(resultSet);
+    writer.flush();
 
-    when(csvMapper.writer(any(CsvSchema.class))).thenReturn(objectWriter);
-    when(objectWriter.writeValues(writer)).thenReturn(sequenceWriter);
+    String quotedValue = "\"Data, Mrs. S\"";
+    assertEquals(HEADER_ROW + String.join(",", Collections.nCopies(10, quotedValue)) + "\n",
+        stringWriter.toString());
+  }
+
+  @Test
+  void willWriteNullValuesAsEmpty() throws SQLException, IOException {
+    setupResultSetData(null);
 
     csvRowCallbackHandler.processRow(resultSet);
-    verify(sequenceWriter).write(dataWithCommaMap);
+    writer.flush();
+
+    assertEquals(HEADER_ROW + ",,,,,,,,,\n", stringWriter.toString());
   }
 
   @Test
@@ -165,31 +151,16 @@ public class CsvRowCallbackHandlerTest {
 
   @Test
   void willIncrementCounterWhenRowsAreHandled() throws SQLException {
-    buildFirstRowAndSchema();
-    setupResultSetData(10, "second_data_row");
+    setupResultSetData("data");
+    csvRowCallbackHandler.processRow(resultSet);
     csvRowCallbackHandler.processRow(resultSet);
     assertEquals(2, csvRowCallbackHandler.getRowCount());
   }
 
-  private void setupResultSetData(int rowNo, String data) throws SQLException {
+  private void setupResultSetData(String data) throws SQLException {
     when(resultSet.getMetaData()).thenReturn(resultSetMetaData);
-    when(resultSet.getRow()).thenReturn(rowNo);
     when(resultSet.getString(anyInt())).thenReturn(data);
     when(resultSetMetaData.getColumnCount()).thenReturn(10);
-    for (int i = 1; i <= 10; i++) {
-      when(resultSetMetaData.getColumnName(i)).thenReturn("column_" + i);
-    }
-  }
-
-  // To process subsequent rows you need to process 1st row so it builds the headers etc
-  private void buildFirstRowAndSchema() throws SQLException {
-    setupResultSetData(1, "data");
-    when(csvMapper.writer(any(CsvSchema.class))).thenReturn(objectWriter);
-    when(objectWriter.writeValues(writer)).thenReturn(sequenceWriter);
-
-    csvRowCallbackHandler.processRow(resultSet);
-
-    // Resets verify counters
-    reset(sequenceWriter);
+    when(resultSetMetaData.getColumnName(anyInt())).thenAnswer(invocation -> "column_" + invocation.getArgument(0));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,121 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.SequenceWriter;
+import tools.jackson.dataformat.csv.CsvMapper;
+import tools.jackson.dataformat.csv.CsvSchema;
+
+/**
+ * Unit tests for {@link CsvRowEncoder}, checking its output is identical to the Jackson CSV writer it replaced.
+ */
+class CsvRowEncoderTest {
+
+  private static final List<String> HEADERS = List.of(
+      "Submission ID", "Office Account Number", "Client Surname", "Total Amount", "Notes", "Empty", "Missing");
+
+  @Test
+  void shouldEncodeSimpleValuesWithoutQuotes() throws IOException {
+    assertEquals("OA001,APR-2025,03/11/2025,8000.00\n", encode("OA001", "APR-2025", "03/11/2025", "8000.00"));
+  }
+
+  @Test
+  void shouldWriteNullAndEmptyValuesAsNothing() throws IOException {
+    assertEquals(",,x,\n", encode(null, "", "x", null));
+  }
+
+  @Test
+  void shouldQuoteValuesContainingSeparatorsQuotesSpacesAndLineBreaks() throws IOException {
+    assertEquals("\"John, Mr. S\",\"CRIME LOWER\",\"say \"\"hi\"\"\",\"a\nb\",\"tab\there\"\n",
+        encode("John, Mr. S", "CRIME LOWER", "say \"hi\"", "a\nb", "tab\there"));
+  }
+
+  @Test
+  void shouldQuoteValuesLongerThanTwentyFourCharacters() throws IOException {
+    assertEquals("abcdefghijklmnopqrstuvwx,\"abcdefghijklmnopqrstuvwxy\"\n",
+        encode("abcdefghijklmnopqrstuvwx", "abcdefghijklmnopqrstuvwxy"));
+  }
+
+  @Test
+  void shouldGrowBufferForVeryLongValues() throws IOException {
+    String longValue = "\"".repeat(10_000);
+    assertEquals("\"" + "\"\"".repeat(10_000) + "\"\n", encode(longValue));
+  }
+
+  @Test
+  void shouldMatchJacksonOutputForTypicalAndAwkwardValues() throws IOException {
+    List<String[]> rows = new ArrayList<>();
+    rows.add(new String[] {"22222222-2222-2222-2222-222222222222", "OA001", "Doe", "2500.00", "CRIME LOWER", "", null});
+    rows.add(new String[] {"id-2", "OA,002", "O'Brien", "-1.50", "line1\r\nline2", "", null});
+    rows.add(new String[] {"id-3", "\"quoted\"", "Zoë", "0", " leading space", "", null});
+
+    Random random = new Random(42);
+    char[] alphabet = "aZ09 ,\"\n\r\t-.'/\\;:é£".toCharArray();
+    for (int i = 0; i < 500; i++) {
+      String[] row = new String[HEADERS.size()];
+      for (int column = 0; column < row.length; column++) {
+        int length = random.nextInt(40) - 5;
+        if (length < 0) {
+          row[column] = length == -1 ? "" : null;
+          continue;
+        }
+        char[] value = new char[length];
+        for (int c = 0; c < length; c++) {
+          value[c] = alphabet[random.nextInt(alphabet.length)];
+        }
+        row[column] = new String(value);
+      }
+      rows.add(row);
+    }
+
+    assertEquals(encodeWithJackson(rows), encodeWithHeader(rows));
+  }
+
+  private static String encode(String... values) throws IOException {
+    StringWriter output = new StringWriter();
+    CsvRowEncoder encoder = new CsvRowEncoder(output);
+    for (String value : values) {
+      encoder.appendValue(value);
+    }
+    encoder.endRow();
+    return output.toString();
+  }
+
+  private static String encodeWithHeader(List<String[]> rows) throws IOException {
+    StringWriter output = new StringWriter();
+    CsvRowEncoder encoder = new CsvRowEncoder(output);
+    HEADERS.forEach(encoder::appendValue);
+    encoder.endRow();
+    for (String[] row : rows) {
+      Arrays.stream(row).forEach(encoder::appendValue);
+      encoder.endRow();
+    }
+    return output.toString();
+  }
+
+  private static String encodeWithJackson(List<String[]> rows) {
+    CsvSchema.Builder schemaBuilder = CsvSchema.builder().setUseHeader(true);
+    HEADERS.forEach(schemaBuilder::addColumn);
+
+    StringWriter output = new StringWriter();
+    try (SequenceWriter sequenceWriter = new CsvMapper().writer(schemaBuilder.build()).writeValues(output)) {
+      for (String[] row : rows) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int column = 0; column < HEADERS.size(); column++) {
+          values.put(HEADERS.get(column), row[column]);
+        }
+        sequenceWriter.write(values);
+      }
+    }
+    return output.toString();
+  }
+}
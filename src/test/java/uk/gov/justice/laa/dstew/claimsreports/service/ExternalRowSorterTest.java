@@ -0,0 +1,102 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link ExternalRowSorter}, sorting in memory and through sorted runs spilled to disk.
+ */
+class ExternalRowSorterTest {
+
+  @Test
+  void shouldSortInMemoryWhenTheRowsFitInOneRun() throws IOException {
+    try (ExternalRowSorter sorter = new ExternalRowSorter(1, Long.MAX_VALUE, 64)) {
+      sorter.add(new String[] {"c", "3"});
+      sorter.add(new String[] {"a", "1"});
+      sorter.add(new String[] {"b", "2"});
+
+      assertEquals(List.of("a", "b", "c"), firstValues(sorter));
+      assertEquals(0, sorter.getRunCount());
+    }
+  }
+
+  @Test
+  void shouldMergeSpilledRunsInKeyOrder() throws IOException {
+    List<String[]> rows = randomRows(500);
+    try (ExternalRowSorter sorter = new ExternalRowSorter(2, 1024, 64)) {
+      for (String[] row : rows) {
+        sorter.add(row);
+      }
+
+      assertEquals(expectedOrder(rows), firstValues(sorter));
+    }
+  }
+
+  @Test
+  void shouldMergeInSeveralPassesWhenThereAreMoreRunsThanTheFanIn() throws IOException {
+    List<String[]> rows = randomRows(500);
+    try (ExternalRowSorter sorter = new ExternalRowSorter(2, 256, 2)) {
+      for (String[] row : rows) {
+        sorter.add(row);
+      }
+
+      assertEquals(expectedOrder(rows), firstValues(sorter));
+    }
+  }
+
+  @Test
+  void shouldSortNullKeysLast() throws IOException {
+    try (ExternalRowSorter sorter = new ExternalRowSorter(1, 1, 64)) {
+      sorter.add(new String[] {"null", null});
+      sorter.add(new String[] {"b", "b"});
+      sorter.add(new String[] {"a", "a"});
+
+      assertEquals(List.of("a", "b", "null"), firstValues(sorter));
+    }
+  }
+
+  @Test
+  void shouldReadBackValuesFromRunsUnchanged() throws IOException {
+    String[] row = {null, "", "tab\there", "line\nbreak", "Ŵelsh £ €", "key"};
+    try (ExternalRowSorter sorter = new ExternalRowSorter(1, 1, 64)) {
+      sorter.add(row);
+      sorter.add(new String[] {"x", "x", "x", "x", "x", "later"});
+
+      List<String[]> sorted = new ArrayList<>();
+      assertEquals(2, sorter.writeSorted(sorted::add));
+      assertArrayEquals(row, sorted.get(0));
+    }
+  }
+
+  private static List<String> firstValues(ExternalRowSorter sorter) throws IOException {
+    List<String> values = new ArrayList<>();
+    sorter.writeSorted(row -> values.add(row[0]));
+    return values;
+  }
+
+  private static List<String[]> randomRows(int count) {
+    Random random = new Random(42);
+    List<String[]> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String office = "OA" + random.nextInt(20);
+      // Unique tie breaker, so the expected order is fully defined
+      String rowKey = String.format("%05d", i);
+      rows.add(new String[] {office + "-" + rowKey, office, rowKey});
+    }
+    return rows;
+  }
+
+  private static List<String> expectedOrder(List<String[]> rows) {
+    return rows.stream()
+        .sorted(Comparator.<String[], String>comparing(row -> row[1]).thenComparing(row -> row[2]))
+        .map(row -> row[0])
+        .toList();
+  }
+}
@@ -1,5 +1,7 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDate;
@@ -12,18 +14,27 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataAccessResourceFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import uk.gov.justice.laa.dstew.claimsreports.dto.ReplicationHealthReport;
+import uk.gov.justice.laa.dstew.claimsreports.service.ReplicationHealthCheckService.CountWatermark;
 import uk.gov.justice.laa.dstew.claimsreports.service.ReplicationHealthCheckService.ReplicationSummary;
+import uk.gov.justice.laa.dstew.claimsreports.service.ReplicationHealthCheckService.TableCounts;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class ReplicationHealthCheckServiceTest {
@@ -87,23 +98,14 @@ class ReplicationHealthCheckServiceTest {
         any(ResultSetExtractor.class), any(Object[].class)))
         .thenReturn(summaries);
 
-// Stub for count queries
-    when(jdbcTemplate.query(contains("WHERE created_on"),
+// Stub for count queries, both counts for a table come from one query
+    when(jdbcTemplate.query(contains("FILTER (WHERE created_on"),
         any(ResultSetExtractor.class), any(Object[].class)))
         .thenAnswer(invocation -> {
           String sql = invocation.getArgument(0);
-          if (sql.contains("table1")) return TABLE1_RECORD_COUNT;
-          if (sql.contains("table2")) return TABLE2_RECORD_COUNT;
-          return 0L;
-        });
-
-    when(jdbcTemplate.query(contains("WHERE updated_on"),
-        any(ResultSetExtractor.class), any(Object[].class)))
-        .thenAnswer(invocation -> {
-          String sql = invocation.getArgument(0);
-          if (sql.contains("table1")) return TABLE1_UPDATE_COUNT;
-          if (sql.contains("table2")) return TABLE2_UPDATE_COUNT;
-          return 0L;
+          if (sql.contains("table1")) return new TableCounts(TABLE1_RECORD_COUNT, TABLE1_UPDATE_COUNT);
+          if (sql.contains("table2")) return new TableCounts(TABLE2_RECORD_COUNT, TABLE2_UPDATE_COUNT);
+          return new TableCounts(0L, 0L);
         });
 
     // When
@@ -132,15 +134,10 @@ class ReplicationHealthCheckServiceTest {
     mockReplicationHealth(List.of("claims.table1"), LATEST_WAL_LSN);
 
 // Stub for count queries
-    when(jdbcTemplate.query(contains("WHERE created_on"),
-        any(ResultSetExtractor.class),
-        any(Object[].class)))
-        .thenReturn(TABLE1_RECORD_COUNT);
-
-    when(jdbcTemplate.query(contains("WHERE updated_on"),
+    when(jdbcTemplate.query(contains("FILTER (WHERE created_on"),
         any(ResultSetExtractor.class),
         any(Object[].class)))
-        .thenReturn(TABLE1_UPDATE_COUNT);
+        .thenReturn(new TableCounts(TABLE1_RECORD_COUNT, TABLE1_UPDATE_COUNT));
 
     ReplicationHealthReport report = service.checkReplicationHealth();
 
@@ -153,15 +150,132 @@ class ReplicationHealthCheckServiceTest {
     mockReplicationHealth(List.of("claims.table1"), MID_WAL_LSN);
 
     // mismatch: actual counts differ
-    when(jdbcTemplate.queryForObject(startsWith("SELECT count(*) FROM claims.table1"), eq(Long.class), any()))
-        .thenReturn(TABLE1_INCORRECT_RECORD_COUNT);
-    when(jdbcTemplate.queryForObject(contains("claims.table1 WHERE updated_on"), eq(Long.class), any(), any()))
-        .thenReturn(TABLE2_INCORRECT_RECORD_COUNT);
+    when(jdbcTemplate.query(contains("FROM claims.table1"), any(ResultSetExtractor.class), any(Object[].class)))
+        .thenReturn(new TableCounts(TABLE1_INCORRECT_RECORD_COUNT, TABLE2_INCORRECT_RECORD_COUNT));
+
+    ReplicationHealthReport report = service.checkReplicationHealth();
+
+    assertFalse(report.isHealthy());
+    assertTrue(report.summary().contains("Count mismatch — expected (10/2), actual (9/3)"));
+  }
+
+  @Test
+  void testCountsEachTableWithOneQuery() {
+    mockReplicationHealth(List.of("claims.table1", "claims.table2"), MID_WAL_LSN);
+    LocalDate summaryDate = LocalDate.now(clock).minusDays(1);
+    Map<String, ReplicationSummary> summaries = Map.of(
+        "claims.table1", new ReplicationSummary("claims.table1", TABLE1_RECORD_COUNT, TABLE1_UPDATE_COUNT, MID_WAL_LSN),
+        "claims.table2", new ReplicationSummary("claims.table2", TABLE2_RECORD_COUNT, TABLE2_UPDATE_COUNT, MID_WAL_LSN)
+    );
+    when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq(summaryDate))).thenReturn(summaries);
+    when(jdbcTemplate.query(contains("FILTER (WHERE created_on"), any(ResultSetExtractor.class), any(Object[].class)))
+        .thenAnswer(invocation -> {
+          String sql = invocation.getArgument(0);
+          return sql.contains("table1")
+              ? new TableCounts(TABLE1_RECORD_COUNT, TABLE1_UPDATE_COUNT)
+              : new TableCounts(TABLE2_RECORD_COUNT, TABLE2_UPDATE_COUNT);
+        });
+
+    ReplicationHealthReport report = service.checkReplicationHealth();
+
+    assertTrue(report.isHealthy());
+    Timestamp startOfDay = Timestamp.valueOf(summaryDate.atStartOfDay());
+    Timestamp endOfDay = Timestamp.valueOf(summaryDate.plusDays(1).atStartOfDay());
+    verify(jdbcTemplate, times(1)).query(contains("FROM claims.table1"), any(ResultSetExtractor.class),
+        eq(endOfDay), eq(startOfDay), eq(endOfDay));
+    verify(jdbcTemplate, times(1)).query(contains("FROM claims.table2"), any(ResultSetExtractor.class),
+        eq(endOfDay), eq(startOfDay), eq(endOfDay));
+  }
+
+  @Test
+  void testCountFailureIsThrown() {
+    mockReplicationHealth(List.of("claims.table1"), MID_WAL_LSN);
+    when(jdbcTemplate.query(contains("FROM claims.table1"), any(ResultSetExtractor.class), any(Object[].class)))
+        .thenThrow(new DataAccessResourceFailureException("Connection lost"));
+
+    assertThrows(DataAccessResourceFailureException.class, () -> service.checkReplicationHealth());
+  }
+
+  @Test
+  void testCountsOnlyRowsCreatedSinceWatermark() {
+    mockReplicationHealth(List.of("claims.table1"), MID_WAL_LSN);
+    LocalDate summaryDate = LocalDate.now(clock).minusDays(1);
+    Timestamp startOfDay = Timestamp.valueOf(summaryDate.atStartOfDay());
+    // Yesterday's check verified all but the two rows created during the summary day
+    mockCountWatermark(new CountWatermark("claims.table1", TABLE1_RECORD_COUNT - 2, startOfDay, summaryDate.minusDays(3)));
+    mockIncrementalCount(2L, TABLE1_UPDATE_COUNT);
+
+    ReplicationHealthReport report = service.checkReplicationHealth();
+
+    assertTrue(report.isHealthy());
+    verify(jdbcTemplate, never()).query(contains("FILTER (WHERE created_on"), any(ResultSetExtractor.class), any(Object[].class));
+    verify(jdbcTemplate).batchUpdate(contains("replication_count_watermark"), argThat((List<Object[]> rows) ->
+        rows.size() == 1
+            && rows.getFirst()[1].equals(TABLE1_RECORD_COUNT)
+            && rows.getFirst()[2].equals(Timestamp.valueOf(summaryDate.plusDays(1).atStartOfDay()))
+            && rows.getFirst()[3].equals(summaryDate.minusDays(3))));
+  }
+
+  @Test
+  void testRecountsWholeTableWhenIncrementalCountDrifts() {
+    mockReplicationHealth(List.of("claims.table1"), MID_WAL_LSN);
+    LocalDate summaryDate = LocalDate.now(clock).minusDays(1);
+    // The stored baseline is out by one, e.g. because a row was deleted since it was verified
+    mockCountWatermark(new CountWatermark("claims.table1", TABLE1_RECORD_COUNT - 3,
+        Timestamp.valueOf(summaryDate.atStartOfDay()), summaryDate.minusDays(1)));
+    mockIncrementalCount(2L, TABLE1_UPDATE_COUNT);
+    when(jdbcTemplate.query(contains("FILTER (WHERE created_on"), any(ResultSetExtractor.class), any(Object[].class)))
+        .thenReturn(new TableCounts(TABLE1_RECORD_COUNT, TABLE1_UPDATE_COUNT));
+
+    ReplicationHealthReport report = service.checkReplicationHealth();
+
+    assertTrue(report.isHealthy());
+    verify(jdbcTemplate).batchUpdate(contains("replication_count_watermark"), argThat((List<Object[]> rows) ->
+        rows.getFirst()[1].equals(TABLE1_RECORD_COUNT) && rows.getFirst()[3].equals(summaryDate)));
+  }
+
+  @Test
+  void testRecountsWholeTableWhenFullRecountIsDue() {
+    mockReplicationHealth(List.of("claims.table1"), MID_WAL_LSN);
+    LocalDate summaryDate = LocalDate.now(clock).minusDays(1);
+    mockCountWatermark(new CountWatermark("claims.table1", TABLE1_RECORD_COUNT - 2,
+        Timestamp.valueOf(summaryDate.atStartOfDay()), summaryDate.minusDays(7)));
+    when(jdbcTemplate.query(contains("FILTER (WHERE created_on"), any(ResultSetExtractor.class), any(Object[].class)))
+        .thenReturn(new TableCounts(TABLE1_RECORD_COUNT, TABLE1_UPDATE_COUNT));
+
+    ReplicationHealthReport report = service.checkReplicationHealth();
+
+    assertTrue(report.isHealthy());
+    verify(jdbcTemplate, never()).query(contains("created_on >= ?"), any(ResultSetExtractor.class), any(Object[].class));
+  }
+
+  @Test
+  void testDoesNotMoveWatermarkOnMismatch() {
+    mockReplicationHealth(List.of("claims.table1"), MID_WAL_LSN);
+    when(jdbcTemplate.query(contains("FROM claims.table1"), any(ResultSetExtractor.class), any(Object[].class)))
+        .thenReturn(new TableCounts(TABLE1_INCORRECT_RECORD_COUNT, TABLE1_UPDATE_COUNT));
 
     ReplicationHealthReport report = service.checkReplicationHealth();
 
     assertFalse(report.isHealthy());
-    assertTrue(report.summary().contains("Count mismatch"));
+    verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+  }
+
+  private void mockCountWatermark(CountWatermark watermark) {
+    when(jdbcTemplate.query(contains("FROM claims.replication_count_watermark"), any(ResultSetExtractor.class)))
+        .thenReturn(Map.of(watermark.tableName(), watermark));
+  }
+
+  private void mockIncrementalCount(long createdCount, long updatedCount) {
+    when(jdbcTemplate.query(contains("created_on >= ?"), any(ResultSetExtractor.class), any(Object[].class)))
+        .thenAnswer(invocation -> {
+          ResultSet resultSet = mock(ResultSet.class);
+          when(resultSet.next()).thenReturn(true);
+          when(resultSet.getLong("created_count")).thenReturn(createdCount);
+          when(resultSet.getLong("updated_count")).thenReturn(updatedCount);
+          ResultSetExtractor<?> extractor = invocation.getArgument(1);
+          return extractor.extractData(resultSet);
+        });
   }
 
   private void mockReplicationHealth(List<@NotNull String> publicationTables, String walLsn) {
@@ -2,9 +2,11 @@ package uk.gov.justice.laa.dstew.claimsreports.service;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.mockito.Mockito.*;
 
@@ -25,7 +27,7 @@ class Report000ServiceTest {
     jdbcTemplate = mock(JdbcTemplate.class);
     creationService = mock(CsvCreationService.class);
     s3ClientWrapper = mock(S3ClientWrapper.class);
-    service = new Report000Service(jdbcTemplate, s3ClientWrapper, creationService);
+    service = new Report000Service(jdbcTemplate, s3ClientWrapper, creationService, mock(SharedSnapshotService.class));
   }
 
   @Test
@@ -34,18 +36,56 @@ class Report000ServiceTest {
     service.refreshDataSource();
     // then
     verify(jdbcTemplate, times(1))
-        .execute("REFRESH MATERIALIZED VIEW claims.mvw_report_000");
+        .execute("REFRESH MATERIALIZED VIEW claims.mvw_report_000; ANALYZE claims.mvw_report_000");
     verifyNoMoreInteractions(jdbcTemplate);
   }
 
   @Test
-  void generateReport_shouldCallTheRightServicesWithTheRightValues(){
+  void refreshDataSource_ShouldRefreshConcurrentlyWhenConfigured() {
+    ReflectionTestUtils.setField(service, "refreshMode", RefreshMode.CONCURRENT);
 
-    service.generateReport();
+    service.refreshDataSource();
+
+    verify(jdbcTemplate, times(1))
+        .execute("REFRESH MATERIALIZED VIEW CONCURRENTLY claims.mvw_report_000; ANALYZE claims.mvw_report_000");
+    verifyNoMoreInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void refreshDataSource_ShouldMaintainTableIncrementallyWhenConfigured() {
+    ReflectionTestUtils.setField(service, "refreshMode", RefreshMode.INCREMENTAL);
+    ReflectionTestUtils.setField(service, "fullRebuildIntervalDays", 14);
+
+    service.refreshDataSource();
+
+    verify(jdbcTemplate, times(1)).execute("SELECT claims.refresh_report000(14)");
+    verifyNoMoreInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void exportReport_shouldReadIncrementalTableWithoutInternalColumnsWhenConfigured() {
+    ReflectionTestUtils.setField(service, "refreshMode", RefreshMode.INCREMENTAL);
+    when(jdbcTemplate.queryForList(contains("pg_attribute"), eq(String.class), eq("claims.report_000")))
+        .thenReturn(List.of("Submission ID", "sort_submission_period", "row_key", "claim_id", "bulk_submission_created_on"));
+
+    service.uploadReport(service.exportReport());
+
+    verify(creationService).buildCsvFromData(
+        startsWith("SELECT \"Submission ID\" FROM claims.report_000 ORDER BY"), any(BufferedWriter.class), any());
+  }
+
+  @Test
+  void exportReport_shouldCallTheRightServicesWithTheRightValues(){
+
+    when(jdbcTemplate.queryForList(contains("pg_attribute"), eq(String.class), eq("claims.mvw_report_000")))
+        .thenReturn(List.of("Submission ID", "Office Account Number", "sort_submission_period", "row_key"));
+
+    service.uploadReport(service.exportReport());
 
+    // The internal sort key is used for ordering but left out of the report
     verify(creationService).buildCsvFromData(
-        eq("SELECT * FROM claims.mvw_report_000 "
-            + "ORDER BY  to_char(to_date(\"Submission Period\", 'MON-YYYY'), 'YYYYMM') NULLS LAST,"
+        eq("SELECT \"Submission ID\", \"Office Account Number\" FROM claims.mvw_report_000 "
+            + "ORDER BY  sort_submission_period NULLS LAST,"
             + "    \"Office Account Number\","
             + "    \"Line Number\""),
         any(BufferedWriter.class),
@@ -1,17 +1,21 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
 
 /**
@@ -29,7 +33,7 @@ class Report012ServiceTest {
     jdbcTemplate = mock(JdbcTemplate.class);
     creationService = mock(CsvCreationService.class);
     s3ClientWrapper = mock(S3ClientWrapper.class);
-    service = new Report012Service(jdbcTemplate, s3ClientWrapper, creationService);
+    service = new Report012Service(jdbcTemplate, s3ClientWrapper, creationService, mock(SharedSnapshotService.class));
   }
 
   @Test
@@ -38,19 +42,34 @@ class Report012ServiceTest {
     service.refreshDataSource();
     // then
     verify(jdbcTemplate, times(1))
-        .execute("REFRESH MATERIALIZED VIEW claims.mvw_report_012");
+        .execute("REFRESH MATERIALIZED VIEW claims.mvw_report_012; ANALYZE claims.mvw_report_012");
     verifyNoMoreInteractions(jdbcTemplate);
   }
 
   @Test
-  void generateReport_shouldCallTheRightServicesWithTheRightValues(){
+  void refreshDataSource_ShouldRefreshConcurrentlyWhenConfigured() {
+    ReflectionTestUtils.setField(service, "refreshMode", RefreshMode.CONCURRENT);
 
-    service.generateReport();
+    service.refreshDataSource();
+
+    verify(jdbcTemplate, times(1))
+        .execute("REFRESH MATERIALIZED VIEW CONCURRENTLY claims.mvw_report_012; ANALYZE claims.mvw_report_012");
+    verifyNoMoreInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void exportReport_shouldCallTheRightServicesWithTheRightValues(){
+
+    when(jdbcTemplate.queryForList(contains("pg_attribute"), eq(String.class), eq("claims.mvw_report_012")))
+        .thenReturn(List.of("Provider office account number", "Submission month", "sort_submission_month", "row_key"));
+
+    service.uploadReport(service.exportReport());
 
+    // The internal sort key is used for ordering but left out of the report
     verify(creationService).buildCsvFromData(
-        eq("SELECT * FROM claims.mvw_report_012 "
+        eq("SELECT \"Provider office account number\", \"Submission month\" FROM claims.mvw_report_012 "
             + "ORDER BY  \"Provider office account number\","
-            + "    to_char(to_date(\"Submission month\", 'MON-YYYY'), 'YYYYMM'),"
+            + "    sort_submission_month,"
             + "    \"Area of law\""),
         any(BufferedWriter.class),
         any()
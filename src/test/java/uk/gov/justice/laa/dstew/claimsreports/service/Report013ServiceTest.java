@@ -1,17 +1,23 @@
 package uk.gov.justice.laa.dstew.claimsreports.service;
 
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.argThat;
+import static org.mockito.Mockito.contains;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 import uk.gov.justice.laa.dstew.claimsreports.service.s3.S3ClientWrapper;
 
 /**
@@ -29,7 +35,7 @@ class Report013ServiceTest {
     jdbcTemplate = mock(JdbcTemplate.class);
     creationService = mock(CsvCreationService.class);
     s3ClientWrapper = mock(S3ClientWrapper.class);
-    service = new Report013Service(jdbcTemplate, s3ClientWrapper, creationService);
+    service = new Report013Service(jdbcTemplate, s3ClientWrapper, creationService, mock(SharedSnapshotService.class));
   }
 
   @Test
@@ -43,9 +49,49 @@ class Report013ServiceTest {
   }
 
   @Test
-  void generateReport_shouldCallTheRightServicesWithTheRightValues(){
+  void refreshDataSource_ShouldBuildLoggedShadowTableWhenShadowSwapConfigured() {
+    ReflectionTestUtils.setField(service, "refreshMode", RefreshMode.SHADOW_SWAP);
+    when(jdbcTemplate.queryForList(contains("pg_class"), eq(String.class), eq("claims.report_013")))
+        .thenReturn(List.of("r"));
 
-    service.generateReport();
+    service.refreshDataSource();
+
+    verify(jdbcTemplate).execute("DROP TABLE IF EXISTS claims.report_013_shadow");
+    verify(jdbcTemplate).execute("SELECT claims.build_report013('claims.report_013_shadow')");
+    verify(jdbcTemplate, never()).execute("ALTER TABLE claims.report_013_shadow SET LOGGED");
+    verify(jdbcTemplate).execute("ANALYZE claims.report_013_shadow");
+    verify(jdbcTemplate).execute("DROP TABLE claims.report_013; ALTER TABLE claims.report_013_shadow RENAME TO report_013");
+    verify(jdbcTemplate, never()).execute("SELECT claims.refresh_report013()");
+  }
+
+  @Test
+  void refreshDataSource_ShouldNotBuildTableWhenPivotEngineConfigured() {
+    ReflectionTestUtils.setField(service, "exportEngine", ExportEngine.PIVOT);
+
+    service.refreshDataSource();
+
+    verifyNoMoreInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void exportReport_shouldPivotMonthlyTotalsWhenPivotEngineConfigured() {
+    ReflectionTestUtils.setField(service, "exportEngine", ExportEngine.PIVOT);
+
+    service.uploadReport(service.exportReport());
+
+    verify(creationService).pivotCsvFromData(argThat(pivotQuery ->
+            pivotQuery.keyHeaders().equals(List.of("Provider Office Account Number", "Area of Law"))
+                && pivotQuery.columnsQuery().contains("claims.vw_report_013_periods")
+                && pivotQuery.valuesQuery().contains("claims.vw_report_013_monthly_totals")),
+        any(BufferedWriter.class), eq("REPORT013"));
+    verify(creationService, never()).buildCsvFromData(any(), any(), any());
+    verify(s3ClientWrapper).uploadFile(any(File.class), eq("report_013.csv"));
+  }
+
+  @Test
+  void exportReport_shouldCallTheRightServicesWithTheRightValues(){
+
+    service.uploadReport(service.exportReport());
 
     verify(creationService).buildCsvFromData(
         eq("SELECT * FROM claims.report_013"
@@ -0,0 +1,133 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Unit tests for {@link ReportRunStateService}.
+ */
+class ReportRunStateServiceTest {
+
+  private static final String TABLE_STATS_SQL = "FROM pg_stat_user_tables";
+  private static final String SCHEMA_VERSION_SQL = "FROM claims.flyway_schema_history";
+  private static final String RUN_STATE_SQL = "FROM claims.report_run_state";
+
+  private JdbcTemplate jdbcTemplate;
+  private AbstractReportService reportService;
+  private ReportRunStateService service;
+
+  @BeforeEach
+  void setUp() {
+    jdbcTemplate = mock(JdbcTemplate.class);
+    reportService = mock(AbstractReportService.class);
+    when(reportService.getReportName()).thenReturn("REPORT999");
+    when(reportService.getSourceTables()).thenReturn(List.of("claims.claim", "claims.submission"));
+    service = new ReportRunStateService(jdbcTemplate);
+  }
+
+  @Test
+  void captureChangeMarker_shouldCombineSchemaVersionAndTableCounters() {
+    when(jdbcTemplate.queryForList(contains(TABLE_STATS_SQL), eq(String.class), any(Object[].class)))
+        .thenReturn(List.of("claims.claim=10/8", "claims.submission=4/4"));
+    when(jdbcTemplate.queryForObject(contains(SCHEMA_VERSION_SQL), eq(String.class))).thenReturn("19");
+
+    assertEquals("schema=19;claims.claim=10/8;claims.submission=4/4", service.captureChangeMarker(reportService));
+  }
+
+  @Test
+  void captureChangeMarker_shouldIncludeReportSpecificMarker() {
+    when(reportService.getChangeMarkerSql()).thenReturn("SELECT count(*) FROM claims.bulk_submission");
+    when(jdbcTemplate.queryForList(contains(TABLE_STATS_SQL), eq(String.class), any(Object[].class)))
+        .thenReturn(List.of("claims.claim=10/8", "claims.submission=4/4"));
+    when(jdbcTemplate.queryForObject(contains(SCHEMA_VERSION_SQL), eq(String.class))).thenReturn("19");
+    when(jdbcTemplate.queryForObject("SELECT count(*) FROM claims.bulk_submission", String.class)).thenReturn("3");
+
+    assertEquals("schema=19;claims.claim=10/8;claims.submission=4/4;report=3", service.captureChangeMarker(reportService));
+  }
+
+  @Test
+  void captureChangeMarker_shouldReturnNullWhenReportHasNoSourceTables() {
+    when(reportService.getSourceTables()).thenReturn(List.of());
+
+    assertNull(service.captureChangeMarker(reportService));
+    verifyNoInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void captureChangeMarker_shouldReturnNullWhenTableStatisticsAreMissing() {
+    when(jdbcTemplate.queryForList(contains(TABLE_STATS_SQL), eq(String.class), any(Object[].class)))
+        .thenReturn(List.of("claims.claim=10/8"));
+
+    assertNull(service.captureChangeMarker(reportService));
+  }
+
+  @Test
+  void captureChangeMarker_shouldReturnNullWhenQueryFails() {
+    when(jdbcTemplate.queryForList(contains(TABLE_STATS_SQL), eq(String.class), any(Object[].class)))
+        .thenThrow(new DataAccessResourceFailureException("Connection lost"));
+
+    assertNull(service.captureChangeMarker(reportService));
+  }
+
+  @Test
+  void isUnchanged_shouldReturnTrueWhenMarkerMatchesLastBuild() {
+    when(jdbcTemplate.queryForList(contains(RUN_STATE_SQL), eq(String.class), eq("REPORT999")))
+        .thenReturn(List.of("marker"));
+
+    assertTrue(service.isUnchanged(reportService, "marker"));
+  }
+
+  @Test
+  void isUnchanged_shouldReturnFalseWhenMarkerHasMoved() {
+    when(jdbcTemplate.queryForList(contains(RUN_STATE_SQL), eq(String.class), eq("REPORT999")))
+        .thenReturn(List.of("old-marker"));
+
+    assertFalse(service.isUnchanged(reportService, "marker"));
+  }
+
+  @Test
+  void isUnchanged_shouldReturnFalseWhenReportHasNeverBeenBuilt() {
+    when(jdbcTemplate.queryForList(contains(RUN_STATE_SQL), eq(String.class), eq("REPORT999")))
+        .thenReturn(List.of());
+
+    assertFalse(service.isUnchanged(reportService, "marker"));
+  }
+
+  @Test
+  void isUnchanged_shouldReturnFalseWithoutMarker() {
+    assertFalse(service.isUnchanged(reportService, null));
+    verifyNoInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void recordSuccessfulBuild_shouldUpsertLedger() {
+    service.recordSuccessfulBuild(reportService, "marker");
+
+    verify(jdbcTemplate).update(contains("INSERT INTO claims.report_run_state"), eq("REPORT999"), eq("marker"));
+  }
+
+  @Test
+  void recordSuccessfulBuild_shouldNotThrowWhenLedgerUpdateFails() {
+    doThrow(new DataAccessResourceFailureException("Connection lost"))
+        .when(jdbcTemplate).update(anyString(), any(Object[].class));
+
+    service.recordSuccessfulBuild(reportService, "marker");
+  }
+}
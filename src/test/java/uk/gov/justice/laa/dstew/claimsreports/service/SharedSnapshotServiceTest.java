@@ -0,0 +1,94 @@
+package uk.gov.justice.laa.dstew.claimsreports.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Unit tests for {@link SharedSnapshotService}.
+ */
+class SharedSnapshotServiceTest {
+
+  private static final String SNAPSHOT_ID = "00000003-0000001B-1";
+
+  private Connection connection;
+  private JdbcTemplate jdbcTemplate;
+  private SharedSnapshotService service;
+
+  @BeforeEach
+  void setUp() throws SQLException {
+    DataSource dataSource = mock(DataSource.class);
+    connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    ResultSet resultSet = mock(ResultSet.class);
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.executeQuery("SELECT pg_export_snapshot()")).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true);
+    when(resultSet.getString(1)).thenReturn(SNAPSHOT_ID);
+    jdbcTemplate = mock(JdbcTemplate.class);
+    service = new SharedSnapshotService(dataSource);
+  }
+
+  @Test
+  void open_shouldExportTheSnapshotOfARepeatableReadTransaction() throws SQLException {
+    assertEquals(SNAPSHOT_ID, service.open());
+
+    assertEquals(SNAPSHOT_ID, service.getSnapshotId());
+    verify(connection).setAutoCommit(false);
+    verify(connection).setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+  }
+
+  @Test
+  void open_shouldFailWhenASnapshotIsAlreadyOpen() {
+    service.open();
+
+    assertThrows(IllegalStateException.class, () -> service.open());
+  }
+
+  @Test
+  void importInto_shouldSetTheTransactionToTheSharedSnapshot() {
+    service.open();
+
+    service.importInto(jdbcTemplate);
+
+    InOrder inOrder = inOrder(jdbcTemplate);
+    inOrder.verify(jdbcTemplate).execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+    inOrder.verify(jdbcTemplate).execute("SET TRANSACTION SNAPSHOT '" + SNAPSHOT_ID + "'");
+  }
+
+  @Test
+  void importInto_shouldDoNothingWhenNoSnapshotIsOpen() {
+    service.importInto(jdbcTemplate);
+
+    verifyNoInteractions(jdbcTemplate);
+  }
+
+  @Test
+  void close_shouldEndTheCoordinatingTransaction() throws SQLException {
+    service.open();
+
+    service.close();
+
+    assertNull(service.getSnapshotId());
+    verify(connection).rollback();
+    verify(connection).close();
+    service.importInto(jdbcTemplate);
+    verifyNoInteractions(jdbcTemplate);
+  }
+}
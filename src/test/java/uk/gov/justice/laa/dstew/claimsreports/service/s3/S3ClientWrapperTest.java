@@ -4,24 +4,39 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.NoSuchBucketException;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 import uk.gov.justice.laa.dstew.claimsreports.exception.CsvUploadException;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -87,6 +102,94 @@ class S3ClientWrapperTest {
     assertThrows(CsvUploadException.class, () -> s3ClientWrapper.uploadFile(badFile, "filename.csv"));
   }
 
+  @SneakyThrows
+  @Test
+  void uploadFile_shouldUploadFileAboveThresholdInParts(@TempDir Path tempDir) {
+    File largeReport = createLargeReport(tempDir);
+    Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+    when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+        .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+        .thenAnswer(invocation -> {
+          // Part buffers are reused, so the body has to be read while the part is being uploaded
+          UploadPartRequest request = invocation.getArgument(0);
+          uploadedParts.put(request.partNumber(), getRequestBodyBytes(invocation.getArgument(1)));
+          return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        });
+
+    newMultipartWrapper().uploadFile(largeReport, "filename.csv");
+
+    verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    var reassembled = new ByteArrayOutputStream();
+    for (int partNumber = 1; partNumber <= 3; partNumber++) {
+      reassembled.write(uploadedParts.get(partNumber));
+    }
+    assertArrayEquals(Files.readAllBytes(largeReport.toPath()), reassembled.toByteArray());
+
+    var captorComplete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+    verify(s3Client).completeMultipartUpload(captorComplete.capture());
+    assertEquals("reports/filename.csv", captorComplete.getValue().key());
+    assertEquals("upload-1", captorComplete.getValue().uploadId());
+    assertEquals(List.of(1, 2, 3), captorComplete.getValue().multipartUpload().parts().stream()
+        .map(CompletedPart::partNumber)
+        .toList());
+  }
+
+  @SneakyThrows
+  @Test
+  void uploadFile_shouldRetryFailedPartWithoutRestartingUpload(@TempDir Path tempDir) {
+    File largeReport = createLargeReport(tempDir);
+    when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+        .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+        .thenThrow(S3Exception.builder().message("Slow down").build())
+        .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+
+    newMultipartWrapper().uploadFile(largeReport, "filename.csv");
+
+    verify(s3Client, times(4)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+    verify(s3Client).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+    verify(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+  }
+
+  @SneakyThrows
+  @Test
+  void uploadFile_shouldAbortMultipartUploadWhenPartKeepsFailing(@TempDir Path tempDir) {
+    File largeReport = createLargeReport(tempDir);
+    when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+        .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+        .thenThrow(S3Exception.builder().message("Part failed").build());
+
+    var wrapper = newMultipartWrapper();
+    assertThrows(S3Exception.class, () -> wrapper.uploadFile(largeReport, "filename.csv"));
+
+    verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+  }
+
+  private S3ClientWrapper newMultipartWrapper() {
+    return new S3ClientWrapper(s3Client, "bucket",
+        new S3UploadSettings(S3UploadSettings.MIN_PART_SIZE_BYTES, 2, S3UploadSettings.MIN_PART_SIZE_BYTES, 2));
+  }
+
+  @SneakyThrows
+  private File createLargeReport(Path tempDir) {
+    // Just over two parts, so the upload is split into two full parts and a short last one
+    var contents = new StringBuilder("Line Number,Description\n");
+    for (int i = 0; contents.length() < S3UploadSettings.MIN_PART_SIZE_BYTES * 2 + 100; i++) {
+      contents.append(i).append(",Description ").append(i).append('\n');
+    }
+    Path report = tempDir.resolve("largeReport.csv");
+    Files.writeString(report, contents);
+    return report.toFile();
+  }
+
+  @SneakyThrows
+  private byte[] getRequestBodyBytes(RequestBody requestBody) {
+    return requestBody.contentStreamProvider().newStream().readAllBytes();
+  }
+
   @SneakyThrows
   private String getRequestBodyContents(RequestBody requestBody) {
     var outputStream = new ByteArrayOutputStream();
@@ -0,0 +1,182 @@
+package uk.gov.justice.laa.dstew.claimsreports.service.s3;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import uk.gov.justice.laa.dstew.claimsreports.exception.CsvUploadException;
+
+@ExtendWith(MockitoExtension.class)
+class S3MultipartUploadStreamTest {
+
+  private static final int PART_SIZE = S3UploadSettings.MIN_PART_SIZE_BYTES;
+
+  @Mock
+  private S3Client s3Client;
+
+  private S3MultipartUploadStream newStream() {
+    return new S3MultipartUploadStream(s3Client, "bucket", "reports/report.csv", new S3UploadSettings(PART_SIZE, 2, PART_SIZE, 1));
+  }
+
+  @SneakyThrows
+  @Test
+  void shouldUseSinglePutWhenReportFitsInOnePart() {
+    S3MultipartUploadStream stream = newStream();
+    stream.write("a,b\n1,2\n".getBytes());
+    stream.close();
+    stream.complete();
+
+    var captorRequestBody = ArgumentCaptor.forClass(RequestBody.class);
+    verify(s3Client).putObject(any(PutObjectRequest.class), captorRequestBody.capture());
+    assertEquals("a,b\n1,2\n", new String(getRequestBodyContents(captorRequestBody.getValue())));
+    verify(s3Client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+  }
+
+  @SneakyThrows
+  @Test
+  void shouldUploadPartsAndCompleteInPartOrder() {
+    when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+        .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+        .thenAnswer(invocation -> {
+          UploadPartRequest request = invocation.getArgument(0);
+          return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+        });
+
+    byte[] data = new byte[PART_SIZE * 2 + 100];
+    Arrays.fill(data, (byte) 'x');
+    S3MultipartUploadStream stream = newStream();
+    stream.write(data);
+    stream.close();
+    stream.complete();
+
+    var captorPartRequest = ArgumentCaptor.forClass(UploadPartRequest.class);
+    verify(s3Client, times(3)).uploadPart(captorPartRequest.capture(), any(RequestBody.class));
+    assertEquals(List.of((long) PART_SIZE, (long) PART_SIZE, 100L), captorPartRequest.getAllValues().stream()
+        .sorted((first, second) -> Integer.compare(first.partNumber(), second.partNumber()))
+        .map(UploadPartRequest::contentLength)
+        .toList());
+
+    var captorComplete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+    verify(s3Client).completeMultipartUpload(captorComplete.capture());
+    assertEquals("upload-1", captorComplete.getValue().uploadId());
+    assertEquals(List.of(1, 2, 3), captorComplete.getValue().multipartUpload().parts().stream()
+        .map(CompletedPart::partNumber)
+        .toList());
+    assertEquals(data.length, stream.getBytesWritten());
+  }
+
+  @SneakyThrows
+  @Test
+  void shouldAbortUploadWhenPartFails() {
+    when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+        .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+        .thenThrow(S3Exception.builder().message("Part failed").build());
+
+    S3MultipartUploadStream stream = newStream();
+    stream.write(new byte[PART_SIZE + 1]);
+
+    CsvUploadException exception = assertThrows(CsvUploadException.class, stream::complete);
+    assertInstanceOf(S3Exception.class, exception.getCause());
+    verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+  }
+
+  @SneakyThrows
+  @Test
+  void shouldAbortStartedUploadAndRejectFurtherWrites() {
+    when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+        .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    // The part may be cancelled before it is sent
+    lenient().when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+        .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+
+    S3MultipartUploadStream stream = newStream();
+    stream.write(new byte[PART_SIZE + 1]);
+    stream.abort();
+
+    verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    assertThrows(IOException.class, () -> stream.write(1));
+  }
+
+  @SneakyThrows
+  @Test
+  void shouldWaitForPartsInFlightBeforeAbortingUpload() {
+    when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+        .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    CountDownLatch partStarted = new CountDownLatch(1);
+    AtomicBoolean partStopped = new AtomicBoolean();
+    when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+        .thenAnswer(invocation -> {
+          partStarted.countDown();
+          try {
+            Thread.sleep(30_000);
+            return UploadPartResponse.builder().eTag("etag").build();
+          } finally {
+            partStopped.set(true);
+          }
+        });
+    AtomicBoolean partStoppedBeforeAbort = new AtomicBoolean();
+    when(s3Client.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+        .thenAnswer(invocation -> {
+          partStoppedBeforeAbort.set(partStopped.get());
+          return null;
+        });
+
+    S3MultipartUploadStream stream = newStream();
+    stream.write(new byte[PART_SIZE + 1]);
+    assertTrue(partStarted.await(10, TimeUnit.SECONDS));
+    stream.abort();
+
+    verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    assertTrue(partStoppedBeforeAbort.get());
+  }
+
+  @Test
+  void shouldNotCallS3WhenAbortingBeforeAnyPartIsFull() {
+    S3MultipartUploadStream stream = newStream();
+    stream.abort();
+
+    verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+  }
+
+  @SneakyThrows
+  private byte[] getRequestBodyContents(RequestBody requestBody) {
+    var outputStream = new ByteArrayOutputStream();
+    requestBody.contentStreamProvider().newStream().transferTo(outputStream);
+    return outputStream.toByteArray();
+  }
+}